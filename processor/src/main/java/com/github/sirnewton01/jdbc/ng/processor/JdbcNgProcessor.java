@@ -0,0 +1,565 @@
+package com.github.sirnewton01.jdbc.ng.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates concrete implementations of JDBC-NG statement and result set
+ *  interfaces at compile time. The generated classes call the
+ *  {@link java.sql.PreparedStatement} and {@link java.sql.ResultSet} typed
+ *  methods directly so that there is no reflective dispatch or argument array
+ *  allocation, which the JIT can inline into the caller.
+ *
+ * Statement interfaces are discovered through their {@code @Statement} or
+ *  {@code @Pos} annotations. An interface with no positional arguments needs
+ *  a {@code @Statement} annotation to be picked up. Interfaces that are
+ *  private, that need the proxy for result caching, list arguments or
+ *  close(), or that have methods the generator doesn't understand are skipped
+ *  and JdbcNg.generate() falls back to the reflective proxy for them.
+ *
+ * The generated class is placed in the same package as the interface. Its name
+ *  is the interface's binary name within the package with '$' replaced by '_'
+ *  and a &quot;_JdbcNg&quot; suffix.
+ */
+@SupportedAnnotationTypes({"com.github.sirnewton01.jdbc.ng.Statement", "com.github.sirnewton01.jdbc.ng.Pos"})
+public class JdbcNgProcessor extends AbstractProcessor {
+    static final String SUFFIX = "_JdbcNg";
+
+    private static final String POS = "com.github.sirnewton01.jdbc.ng.Pos";
+    private static final String PREFETCH = "com.github.sirnewton01.jdbc.ng.Prefetch";
+    private static final String FLYWEIGHT = "com.github.sirnewton01.jdbc.ng.Flyweight";
+    private static final String JDBC_NG = "com.github.sirnewton01.jdbc.ng.JdbcNg";
+    private static final String JDBC_NG_RESULT_SET = "com.github.sirnewton01.jdbc.ng.JdbcNgResultSet";
+    private static final String COLUMN_INDEXES = "com.github.sirnewton01.jdbc.ng.ColumnIndexes";
+    private static final String RESULT_CACHE = "com.github.sirnewton01.jdbc.ng.ResultCache";
+    private static final String SINGLE_FLIGHT = "com.github.sirnewton01.jdbc.ng.SingleFlight";
+    private static final String SQL_EXCEPTION = "java.sql.SQLException";
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+	return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+	Set<TypeElement> interfaces = new LinkedHashSet<>();
+
+	for (TypeElement annotation: annotations) {
+	    for (Element e: roundEnv.getElementsAnnotatedWith(annotation)) {
+		Element type = e.getKind() == ElementKind.METHOD ? e.getEnclosingElement() : e;
+		if (type.getKind() == ElementKind.INTERFACE) {
+		    interfaces.add((TypeElement) type);
+		}
+	    }
+	}
+
+	for (TypeElement aInterface: interfaces) {
+	    try {
+		generateStatement(aInterface);
+	    } catch (IOException ex) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write generated class: " + ex.getMessage(), aInterface);
+	    }
+	}
+
+	// Leave the annotations for other processors
+	return false;
+    }
+
+    private void generateStatement(TypeElement aInterface) throws IOException {
+	String implName = implementationName(aInterface);
+	if (generated.contains(implName)) {
+	    return;
+	}
+
+	if (!isAccessible(aInterface)) {
+	    note(aInterface, "is private, it will use the proxy");
+	    return;
+	}
+	String proxyReason = requiresProxy(aInterface);
+	if (proxyReason != null) {
+	    note(aInterface, proxyReason + ", it will use the proxy");
+	    return;
+	}
+
+	List<String> methods = new ArrayList<>();
+	List<TypeElement> resultSets = new ArrayList<>();
+
+	for (ExecutableElement m: abstractMethods(aInterface)) {
+	    String body = statementMethodBody(aInterface, m, resultSets);
+	    if (body == null) {
+		note(aInterface, "has an unsupported method " + m.getSimpleName() + ", it will use the proxy");
+		return;
+	    }
+	    methods.add(method(m, body));
+	}
+
+	List<String> resultSetBodies = new ArrayList<>();
+	for (TypeElement resultSet: resultSets) {
+	    String source = resultSetSource(resultSet);
+	    if (source == null) {
+		note(aInterface, "returns an unsupported result set " + resultSet.getQualifiedName() + ", it will use the proxy");
+		return;
+	    }
+	    resultSetBodies.add(source);
+	}
+
+	for (int i = 0; i < resultSets.size(); i++) {
+	    String rsImplName = implementationName(resultSets.get(i));
+	    if (generated.add(rsImplName)) {
+		write(rsImplName, resultSetBodies.get(i), resultSets.get(i));
+	    }
+	}
+
+	StringBuilder source = new StringBuilder();
+	header(source, aInterface, implName);
+	source.append("    private final java.sql.PreparedStatement pstmt;\n\n");
+	source.append("    public ").append(simpleName(implName)).append("(java.sql.PreparedStatement pstmt) {\n");
+	source.append("        this.pstmt = pstmt;\n");
+	source.append("    }\n");
+	for (String m: methods) {
+	    source.append('\n').append(m);
+	}
+	source.append("}\n");
+
+	generated.add(implName);
+	write(implName, source.toString(), aInterface);
+    }
+
+    /**
+     * Why the interface needs the proxy even if each of its methods could be
+     *  generated, or null if it doesn't. These are the same rules as the
+     *  runtime's JdbcNg.requiresProxy(), which skips generated classes for
+     *  such interfaces anyway.
+     */
+    private String requiresProxy(TypeElement aInterface) {
+	if (hasAnnotation(aInterface, RESULT_CACHE) || hasAnnotation(aInterface, SINGLE_FLIGHT)) {
+	    return "caches its results";
+	}
+	for (ExecutableElement m: abstractMethods(aInterface)) {
+	    if (positionOf(m) != null && m.getParameters().size() == 1 && isList(m.getParameters().get(0).asType())) {
+		return "has the list argument " + m.getSimpleName();
+	    }
+	    if (m.getSimpleName().contentEquals("close") && m.getParameters().isEmpty()) {
+		return "can be closed";
+	    }
+	}
+	return null;
+    }
+
+    private boolean isList(TypeMirror type) {
+	if (type.getKind() == TypeKind.ARRAY) {
+	    String name = type.toString();
+	    return !name.equals("byte[]") && !name.equals("char[]");
+	}
+	TypeElement collection = processingEnv.getElementUtils().getTypeElement("java.util.Collection");
+	return type.getKind() == TypeKind.DECLARED && processingEnv.getTypeUtils().isAssignable(
+		processingEnv.getTypeUtils().erasure(type),
+		processingEnv.getTypeUtils().erasure(collection.asType()));
+    }
+
+    private String statementMethodBody(TypeElement aInterface, ExecutableElement m, List<TypeElement> resultSets) {
+	if (!m.getTypeParameters().isEmpty()) {
+	    return null;
+	}
+
+	String name = m.getSimpleName().toString();
+	TypeKind returnKind = m.getReturnType().getKind();
+	Integer pos = positionOf(m);
+
+	if (pos != null) {
+	    if (m.getParameters().size() != 1 || returnKind != TypeKind.VOID) {
+		return null;
+	    }
+	    return setter(m.getParameters().get(0).asType(), pos, "p0");
+	}
+
+	if (!m.getParameters().isEmpty()) {
+	    return null;
+	}
+
+	switch (name) {
+	    case "execute":
+		if (returnKind == TypeKind.VOID) {
+		    return written("pstmt.execute()", aInterface) + ";";
+		}
+		return returnKind == TypeKind.BOOLEAN ? "return " + written("pstmt.execute()", aInterface) + ";" : null;
+	    case "executeUpdate":
+		if (returnKind == TypeKind.VOID) {
+		    return written("pstmt.executeUpdate()", aInterface) + ";";
+		}
+		return returnKind == TypeKind.INT ? "return " + written("pstmt.executeUpdate()", aInterface) + ";" : null;
+	    case "addBatch":
+		return returnKind == TypeKind.VOID ? "pstmt.addBatch();" : null;
+	    case "executeBatch":
+		return m.getReturnType().toString().equals("int[]") ? "return " + written("pstmt.executeBatch()", aInterface) + ";" : null;
+	    case "executeLargeBatch":
+		return m.getReturnType().toString().equals("long[]") ? "return " + written("pstmt.executeLargeBatch()", aInterface) + ";" : null;
+	    case "executeQuery":
+		if (returnKind != TypeKind.DECLARED || hasAnnotation(m, PREFETCH) || hasAnnotation(m, FLYWEIGHT)) {
+		    return null;
+		}
+		TypeElement resultSet = (TypeElement) ((DeclaredType) m.getReturnType()).asElement();
+		if (resultSet.getKind() != ElementKind.INTERFACE || !isAccessible(resultSet) || !extendsResultSet(resultSet)) {
+		    return null;
+		}
+		if (!resultSets.contains(resultSet)) {
+		    resultSets.add(resultSet);
+		}
+		return "return new " + implementationName(resultSet) + "(" + JDBC_NG + ".opened(pstmt, pstmt.executeQuery()));";
+	    default:
+		return null;
+	}
+    }
+
+    /**
+     * Wraps a call that may write so that the result caches of the tables the
+     *  interface writes are invalidated.
+     */
+    private static String written(String call, TypeElement aInterface) {
+	return JDBC_NG + ".written(" + call + ", " + aInterface.getQualifiedName() + ".class, pstmt)";
+    }
+
+    private String resultSetSource(TypeElement resultSet) {
+	String implName = implementationName(resultSet);
+	List<String> columns = new ArrayList<>();
+	List<String> methods = new ArrayList<>();
+
+	for (ExecutableElement m: abstractMethods(resultSet)) {
+	    String name = m.getSimpleName().toString();
+	    if (!m.getTypeParameters().isEmpty() || !m.getParameters().isEmpty()) {
+		return null;
+	    }
+
+	    String body;
+	    if (name.equals("next")) {
+		body = "return rs.next();";
+	    } else if (name.equals("close")) {
+		body = "rs.close();";
+	    } else if (name.startsWith("get") && name.length() > 3 && m.getReturnType().getKind() != TypeKind.VOID) {
+		String column = name.substring(3);
+		body = getter(m.getReturnType(), "c" + columns.size());
+		columns.add(column.substring(0, 1).toLowerCase() + column.substring(1));
+	    } else {
+		return null;
+	    }
+	    methods.add(method(m, body));
+	}
+
+	StringBuilder source = new StringBuilder();
+	header(source, resultSet, implName);
+	source.append("    private static final String[] COLUMN_NAMES = {");
+	for (int i = 0; i < columns.size(); i++) {
+	    source.append(i == 0 ? "\"" : ", \"").append(columns.get(i)).append('"');
+	}
+	source.append("};\n");
+	source.append("    private static final ").append(COLUMN_INDEXES).append(" COLUMNS = new ").append(COLUMN_INDEXES).append("(COLUMN_NAMES);\n\n");
+	source.append("    private final java.sql.ResultSet rs;\n");
+	for (int i = 0; i < columns.size(); i++) {
+	    source.append("    private final int c").append(i).append(";\n");
+	}
+	source.append('\n');
+	source.append("    public ").append(simpleName(implName)).append("(java.sql.ResultSet rs) throws java.sql.SQLException {\n");
+	source.append("        this.rs = rs;\n");
+	source.append("        int[] columns = COLUMNS.resolve(rs);\n");
+	for (int i = 0; i < columns.size(); i++) {
+	    source.append("        this.c").append(i).append(" = columns[").append(i).append("];\n");
+	}
+	source.append("    }\n");
+	for (String m: methods) {
+	    source.append('\n').append(m);
+	}
+	source.append("}\n");
+
+	return source.toString();
+    }
+
+    private static String setter(TypeMirror type, int pos, String value) {
+	switch (type.getKind()) {
+	    case INT:
+		return "pstmt.setInt(" + pos + ", " + value + ");";
+	    case LONG:
+		return "pstmt.setLong(" + pos + ", " + value + ");";
+	    case SHORT:
+		return "pstmt.setShort(" + pos + ", " + value + ");";
+	    case BYTE:
+		return "pstmt.setByte(" + pos + ", " + value + ");";
+	    case DOUBLE:
+		return "pstmt.setDouble(" + pos + ", " + value + ");";
+	    case FLOAT:
+		return "pstmt.setFloat(" + pos + ", " + value + ");";
+	    case BOOLEAN:
+		return "pstmt.setBoolean(" + pos + ", " + value + ");";
+	    case ARRAY:
+		if (type.toString().equals("byte[]")) {
+		    return "pstmt.setBytes(" + pos + ", " + value + ");";
+		}
+		break;
+	    case DECLARED:
+		switch (erasure(type)) {
+		    case "java.lang.Integer":
+			return nullable(pos, value, "INTEGER", "pstmt.setInt(" + pos + ", " + value + ");");
+		    case "java.lang.Long":
+			return nullable(pos, value, "BIGINT", "pstmt.setLong(" + pos + ", " + value + ");");
+		    case "java.lang.Short":
+			return nullable(pos, value, "SMALLINT", "pstmt.setShort(" + pos + ", " + value + ");");
+		    case "java.lang.Byte":
+			return nullable(pos, value, "TINYINT", "pstmt.setByte(" + pos + ", " + value + ");");
+		    case "java.lang.Double":
+			return nullable(pos, value, "DOUBLE", "pstmt.setDouble(" + pos + ", " + value + ");");
+		    case "java.lang.Float":
+			return nullable(pos, value, "REAL", "pstmt.setFloat(" + pos + ", " + value + ");");
+		    case "java.lang.Boolean":
+			return nullable(pos, value, "BOOLEAN", "pstmt.setBoolean(" + pos + ", " + value + ");");
+		    case "java.lang.String":
+			return "pstmt.setString(" + pos + ", " + value + ");";
+		    case "java.math.BigDecimal":
+			return "pstmt.setBigDecimal(" + pos + ", " + value + ");";
+		    case "java.sql.Date":
+			return "pstmt.setDate(" + pos + ", " + value + ");";
+		    case "java.sql.Time":
+			return "pstmt.setTime(" + pos + ", " + value + ");";
+		    case "java.sql.Timestamp":
+			return "pstmt.setTimestamp(" + pos + ", " + value + ");";
+		    default:
+			break;
+		}
+		break;
+	    default:
+		break;
+	}
+
+	return "pstmt.setObject(" + pos + ", " + value + ");";
+    }
+
+    private static String nullable(int pos, String value, String sqlType, String set) {
+	return "if (" + value + " == null) {\n"
+		+ "            pstmt.setNull(" + pos + ", java.sql.Types." + sqlType + ");\n"
+		+ "        } else {\n"
+		+ "            " + set + "\n"
+		+ "        }";
+    }
+
+    private static String getter(TypeMirror type, String column) {
+	switch (type.getKind()) {
+	    case INT:
+		return "return rs.getInt(" + column + ");";
+	    case LONG:
+		return "return rs.getLong(" + column + ");";
+	    case SHORT:
+		return "return rs.getShort(" + column + ");";
+	    case BYTE:
+		return "return rs.getByte(" + column + ");";
+	    case DOUBLE:
+		return "return rs.getDouble(" + column + ");";
+	    case FLOAT:
+		return "return rs.getFloat(" + column + ");";
+	    case BOOLEAN:
+		return "return rs.getBoolean(" + column + ");";
+	    case ARRAY:
+		if (type.toString().equals("byte[]")) {
+		    return "return rs.getBytes(" + column + ");";
+		}
+		break;
+	    case DECLARED:
+		switch (erasure(type)) {
+		    case "java.lang.Integer":
+			return wasNull("int", "rs.getInt(" + column + ")");
+		    case "java.lang.Long":
+			return wasNull("long", "rs.getLong(" + column + ")");
+		    case "java.lang.Short":
+			return wasNull("short", "rs.getShort(" + column + ")");
+		    case "java.lang.Byte":
+			return wasNull("byte", "rs.getByte(" + column + ")");
+		    case "java.lang.Double":
+			return wasNull("double", "rs.getDouble(" + column + ")");
+		    case "java.lang.Float":
+			return wasNull("float", "rs.getFloat(" + column + ")");
+		    case "java.lang.Boolean":
+			return wasNull("boolean", "rs.getBoolean(" + column + ")");
+		    case "java.lang.String":
+			return "return rs.getString(" + column + ");";
+		    case "java.math.BigDecimal":
+			return "return rs.getBigDecimal(" + column + ");";
+		    case "java.sql.Date":
+			return "return rs.getDate(" + column + ");";
+		    case "java.sql.Time":
+			return "return rs.getTime(" + column + ");";
+		    case "java.sql.Timestamp":
+			return "return rs.getTimestamp(" + column + ");";
+		    default:
+			break;
+		}
+		break;
+	    default:
+		break;
+	}
+
+	return "return (" + type + ") rs.getObject(" + column + ");";
+    }
+
+    private static String wasNull(String primitive, String read) {
+	return primitive + " value = " + read + ";\n"
+		+ "        return rs.wasNull() ? null : value;";
+    }
+
+    /**
+     * Emits an implementation of the method. Methods that don't declare
+     *  SQLException wrap it in an UndeclaredThrowableException, which is what
+     *  the proxy does.
+     */
+    private String method(ExecutableElement m, String body) {
+	StringBuilder method = new StringBuilder();
+	method.append("    @Override\n");
+	method.append("    public ").append(m.getReturnType()).append(' ').append(m.getSimpleName()).append('(');
+	for (int i = 0; i < m.getParameters().size(); i++) {
+	    if (i > 0) {
+		method.append(", ");
+	    }
+	    method.append(m.getParameters().get(i).asType()).append(" p").append(i);
+	}
+	method.append(')');
+
+	boolean throwsSqlException = false;
+	for (int i = 0; i < m.getThrownTypes().size(); i++) {
+	    TypeMirror thrown = m.getThrownTypes().get(i);
+	    method.append(i == 0 ? " throws " : ", ").append(thrown);
+	    throwsSqlException |= processingEnv.getTypeUtils().isAssignable(
+		    processingEnv.getElementUtils().getTypeElement(SQL_EXCEPTION).asType(), thrown);
+	}
+	method.append(" {\n");
+
+	if (throwsSqlException) {
+	    method.append("        ").append(body).append('\n');
+	} else {
+	    method.append("        try {\n");
+	    method.append("            ").append(body.replace("\n", "\n    ")).append('\n');
+	    method.append("        } catch (java.sql.SQLException ex) {\n");
+	    method.append("            throw new java.lang.reflect.UndeclaredThrowableException(ex);\n");
+	    method.append("        }\n");
+	}
+	method.append("    }\n");
+
+	return method.toString();
+    }
+
+    private void header(StringBuilder source, TypeElement aInterface, String implName) {
+	String pkg = packageName(implName);
+	if (!pkg.isEmpty()) {
+	    source.append("package ").append(pkg).append(";\n\n");
+	}
+	source.append("/**\n");
+	source.append(" * Generated by ").append(getClass().getName()).append(" for ").append(aInterface.getQualifiedName()).append(".\n");
+	source.append(" */\n");
+	source.append(isPublic(aInterface) ? "public " : "").append("final class ").append(simpleName(implName));
+	source.append(" implements ").append(aInterface.getQualifiedName()).append(" {\n");
+    }
+
+    private void write(String implName, String source, TypeElement origin) throws IOException {
+	try (PrintWriter writer = new PrintWriter(processingEnv.getFiler().createSourceFile(implName, origin).openWriter())) {
+	    writer.print(source);
+	}
+    }
+
+    private void note(TypeElement aInterface, String message) {
+	processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, aInterface.getQualifiedName() + " " + message, aInterface);
+    }
+
+    private List<ExecutableElement> abstractMethods(TypeElement aInterface) {
+	List<ExecutableElement> methods = new ArrayList<>();
+	for (ExecutableElement m: ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(aInterface))) {
+	    if (m.getModifiers().contains(Modifier.ABSTRACT)) {
+		methods.add(m);
+	    }
+	}
+	return methods;
+    }
+
+    private Integer positionOf(ExecutableElement m) {
+	for (AnnotationMirror annotation: m.getAnnotationMirrors()) {
+	    if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(POS)) {
+		for (AnnotationValue value: annotation.getElementValues().values()) {
+		    return (Integer) value.getValue();
+		}
+	    }
+	}
+	return null;
+    }
+
+    private boolean hasAnnotation(Element e, String annotationName) {
+	for (AnnotationMirror annotation: e.getAnnotationMirrors()) {
+	    if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    private boolean extendsResultSet(TypeElement resultSet) {
+	TypeElement jdbcNgResultSet = processingEnv.getElementUtils().getTypeElement(JDBC_NG_RESULT_SET);
+	return jdbcNgResultSet != null && processingEnv.getTypeUtils().isAssignable(
+		processingEnv.getTypeUtils().erasure(resultSet.asType()),
+		processingEnv.getTypeUtils().erasure(jdbcNgResultSet.asType()));
+    }
+
+    private String implementationName(TypeElement aInterface) {
+	String binaryName = processingEnv.getElementUtils().getBinaryName(aInterface).toString();
+	PackageElement pkg = processingEnv.getElementUtils().getPackageOf(aInterface);
+	String prefix = pkg.isUnnamed() ? "" : pkg.getQualifiedName() + ".";
+	return prefix + binaryName.substring(prefix.length()).replace('$', '_') + SUFFIX;
+    }
+
+    private static boolean isAccessible(TypeElement type) {
+	for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+	    if (e.getModifiers().contains(Modifier.PRIVATE)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private static boolean isPublic(TypeElement type) {
+	for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+	    if (!e.getModifiers().contains(Modifier.PUBLIC)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private static String erasure(TypeMirror type) {
+	return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+    }
+
+    private static String packageName(String qualifiedName) {
+	int dot = qualifiedName.lastIndexOf('.');
+	return dot < 0 ? "" : qualifiedName.substring(0, dot);
+    }
+
+    private static String simpleName(String qualifiedName) {
+	return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+    }
+}
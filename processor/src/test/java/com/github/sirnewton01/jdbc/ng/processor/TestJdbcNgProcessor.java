@@ -0,0 +1,154 @@
+package com.github.sirnewton01.jdbc.ng.processor;
+
+import com.github.sirnewton01.jdbc.ng.JdbcNg;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class TestJdbcNgProcessor {
+    
+    private Connection conn;
+    
+    @BeforeAll
+    public void setup() throws ClassNotFoundException, InstantiationException, IllegalAccessException, SQLException {
+	String driver = "org.apache.derby.jdbc.EmbeddedDriver";
+	Class.forName(driver).newInstance();
+	
+	conn = DriverManager.getConnection("jdbc:derby:memory:processorDB;create=true", new Properties());
+    }
+    
+    private static void write(Path dir, String name, String... lines) throws IOException {
+	Path file = dir.resolve(name);
+	Files.createDirectories(file.getParent());
+	Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Compiles sample interfaces with the processor and runs the classes it
+     *  generated through JdbcNg.generate().
+     */
+    @Test
+    public void testGenerate() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE SAMPLE1 (ID INT, NAME VARCHAR(26))");
+	}
+	
+	Path sources = Files.createTempDirectory("jdbcng-sources");
+	Path classes = Files.createTempDirectory("jdbcng-classes");
+	write(sources, "sample/sample1insertstmt.java",
+		"package sample;",
+		"import com.github.sirnewton01.jdbc.ng.Pos;",
+		"public interface sample1insertstmt {",
+		"    @Pos(1) public void setId(int id);",
+		"    @Pos(2) public void setName(String name);",
+		"    public int executeUpdate();",
+		"}");
+	write(sources, "sample/sample1getstmt.java",
+		"package sample;",
+		"import com.github.sirnewton01.jdbc.ng.Pos;",
+		"public interface sample1getstmt {",
+		"    @Pos(1) public void setMinId(int minId);",
+		"    public sample1getrs executeQuery();",
+		"}");
+	write(sources, "sample/sample1getrs.java",
+		"package sample;",
+		"public interface sample1getrs extends com.github.sirnewton01.jdbc.ng.JdbcNgResultSet {",
+		"    public int getId();",
+		"    public String getName();",
+		"}");
+	write(sources, "sample/sample1reversestmt.java",
+		"package sample;",
+		"import com.github.sirnewton01.jdbc.ng.Pos;",
+		"public interface sample1reversestmt {",
+		"    @Pos(1) public void setMinId(int minId);",
+		"    public sample1getrs executeQuery();",
+		"}");
+	write(sources, "sample/sample1cachedstmt.java",
+		"package sample;",
+		"import com.github.sirnewton01.jdbc.ng.Pos;",
+		"@com.github.sirnewton01.jdbc.ng.ResultCache",
+		"public interface sample1cachedstmt {",
+		"    @Pos(1) public void setMinId(int minId);",
+		"    public sample1getrs executeQuery();",
+		"}");
+	write(classes, "sample/sample1insertstmt.sql", "INSERT INTO SAMPLE1 (ID, NAME) VALUES (?, ?)");
+	write(classes, "sample/sample1getstmt.sql", "SELECT ID, NAME FROM SAMPLE1 WHERE ID >= ? ORDER BY ID");
+	write(classes, "sample/sample1reversestmt.sql", "SELECT NAME, ID FROM SAMPLE1 WHERE ID >= ? ORDER BY ID");
+	write(classes, "sample/sample1cachedstmt.sql", "SELECT ID, NAME FROM SAMPLE1 WHERE ID >= ? ORDER BY ID");
+	
+	JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+	try (StandardJavaFileManager files = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+	    Iterable<? extends JavaFileObject> units = files.getJavaFileObjects(
+		    sources.resolve("sample/sample1insertstmt.java").toFile(),
+		    sources.resolve("sample/sample1getstmt.java").toFile(),
+		    sources.resolve("sample/sample1getrs.java").toFile(),
+		    sources.resolve("sample/sample1reversestmt.java").toFile(),
+		    sources.resolve("sample/sample1cachedstmt.java").toFile());
+	    JavaCompiler.CompilationTask task = compiler.getTask(null, files, null,
+		    Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", classes.toString()),
+		    null, units);
+	    task.setProcessors(Collections.singletonList(new JdbcNgProcessor()));
+	    assertTrue(task.call());
+	}
+	assertTrue(Files.exists(classes.resolve("sample/sample1insertstmt" + JdbcNgProcessor.SUFFIX + ".class")));
+	assertTrue(Files.exists(classes.resolve("sample/sample1getstmt" + JdbcNgProcessor.SUFFIX + ".class")));
+	assertTrue(Files.exists(classes.resolve("sample/sample1reversestmt" + JdbcNgProcessor.SUFFIX + ".class")));
+	// Result caching needs the proxy
+	assertFalse(Files.exists(classes.resolve("sample/sample1cachedstmt" + JdbcNgProcessor.SUFFIX + ".class")));
+	
+	try (URLClassLoader loader = new URLClassLoader(new URL[] {classes.toUri().toURL()}, getClass().getClassLoader())) {
+	    Class<?> insertInterface = loader.loadClass("sample.sample1insertstmt");
+	    Object insert = JdbcNg.generate(conn, insertInterface);
+	    assertEquals("sample.sample1insertstmt" + JdbcNgProcessor.SUFFIX, insert.getClass().getName());
+	    for (int i = 0; i < 3; i++) {
+		insertInterface.getMethod("setId", int.class).invoke(insert, i);
+		insertInterface.getMethod("setName", String.class).invoke(insert, "name" + i);
+		assertEquals(1, insertInterface.getMethod("executeUpdate").invoke(insert));
+	    }
+	    
+	    Class<?> getInterface = loader.loadClass("sample.sample1getstmt");
+	    Class<?> rsInterface = loader.loadClass("sample.sample1getrs");
+	    Object get = JdbcNg.generate(conn, getInterface);
+	    assertEquals("sample.sample1getstmt" + JdbcNgProcessor.SUFFIX, get.getClass().getName());
+	    getInterface.getMethod("setMinId", int.class).invoke(get, 1);
+	    try (AutoCloseable rs = (AutoCloseable) getInterface.getMethod("executeQuery").invoke(get)) {
+		for (int id = 1; id < 3; id++) {
+		    assertTrue((Boolean) rsInterface.getMethod("next").invoke(rs));
+		    assertEquals(id, rsInterface.getMethod("getId").invoke(rs));
+		    assertEquals("name" + id, rsInterface.getMethod("getName").invoke(rs));
+		}
+		assertFalse((Boolean) rsInterface.getMethod("next").invoke(rs));
+	    }
+	    
+	    // The same result set with its columns in the other order
+	    Class<?> reverseInterface = loader.loadClass("sample.sample1reversestmt");
+	    Object reverse = JdbcNg.generate(conn, reverseInterface);
+	    reverseInterface.getMethod("setMinId", int.class).invoke(reverse, 0);
+	    try (AutoCloseable rs = (AutoCloseable) reverseInterface.getMethod("executeQuery").invoke(reverse)) {
+		assertTrue((Boolean) rsInterface.getMethod("next").invoke(rs));
+		assertEquals(0, rsInterface.getMethod("getId").invoke(rs));
+		assertEquals("name0", rsInterface.getMethod("getName").invoke(rs));
+	    }
+	}
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs the asynchronous methods of bound statement handles. The tasks run on
+ *  an executor owned by JDBC-NG with a bounded queue unless another executor
+ *  is configured. The number of tasks of a statement interface that run at
+ *  once can be limited. Tasks over the limit wait in a bounded queue of the
+ *  interface rather than taking up executor threads.
+ *
+ * The limits use a ReentrantLock rather than a monitor so that virtual
+ *  threads submitting tasks aren't pinned to their carrier threads.
+ */
+final class AsyncExecution {
+    static final int QUEUE_CAPACITY = 1024;
+
+    private static final ClassValue<Limiter> LIMITERS = new ClassValue<Limiter>() {
+	@Override
+	protected Limiter computeValue(Class<?> type) {
+	    return new Limiter();
+	}
+    };
+
+    private static volatile Executor executor = defaultExecutor();
+
+    private AsyncExecution() {
+    }
+
+    /**
+     * A blocking JDBC task.
+     */
+    interface Task<T> {
+	T call() throws SQLException;
+    }
+
+    static void setExecutor(Executor newExecutor) {
+	executor = newExecutor == null ? defaultExecutor() : newExecutor;
+    }
+
+    static void setConcurrency(Class<?> aInterface, int maxConcurrency) {
+	if (maxConcurrency < 1) {
+	    throw new IllegalArgumentException("The concurrency must be at least 1.");
+	}
+	LIMITERS.get(aInterface).setLimit(maxConcurrency);
+    }
+
+    /**
+     * Submits the task for the interface. The future fails with a
+     *  {@link RejectedExecutionException} if the queues are full.
+     */
+    static <T> CompletableFuture<T> submit(Class<?> aInterface, Task<T> task) {
+	Job<T> job = new Job<>(LIMITERS.get(aInterface), task);
+	job.limiter.submit(job);
+	return job.future;
+    }
+
+    /**
+     * Runs each task on a new virtual thread on Java 21 or later. A thread
+     *  per task needs no queue, so only the per-interface limits bound the
+     *  number of tasks.
+     *
+     * @return false if virtual threads aren't available
+     */
+    static boolean useVirtualThreads() {
+	try {
+	    executor = (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+	    return true;
+	} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
+	    return false;
+	}
+    }
+
+    private static Executor defaultExecutor() {
+	int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+	final AtomicInteger count = new AtomicInteger();
+	ThreadFactory threadFactory = runnable -> {
+	    Thread thread = new Thread(runnable, "jdbc-ng-async-" + count.incrementAndGet());
+	    thread.setDaemon(true);
+	    return thread;
+	};
+
+	ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), threadFactory);
+	pool.allowCoreThreadTimeOut(true);
+	return pool;
+    }
+
+    private static final class Job<T> implements Runnable {
+	final Limiter limiter;
+	final Task<T> task;
+	final CompletableFuture<T> future = new CompletableFuture<>();
+
+	Job(Limiter limiter, Task<T> task) {
+	    this.limiter = limiter;
+	    this.task = task;
+	}
+
+	@Override
+	public void run() {
+	    try {
+		future.complete(task.call());
+	    } catch (Throwable ex) {
+		future.completeExceptionally(ex);
+	    } finally {
+		limiter.release();
+	    }
+	}
+    }
+
+    /**
+     * Limits the running tasks of an interface.
+     */
+    private static final class Limiter {
+	private final ReentrantLock lock = new ReentrantLock();
+	private final ArrayDeque<Job<?>> waiting = new ArrayDeque<>();
+	private int limit = Integer.MAX_VALUE;
+	private int running;
+
+	void setLimit(int limit) {
+	    lock.lock();
+	    try {
+		this.limit = limit;
+	    } finally {
+		lock.unlock();
+	    }
+	}
+
+	void submit(Job<?> job) {
+	    lock.lock();
+	    try {
+		if (running >= limit) {
+		    if (waiting.size() >= QUEUE_CAPACITY) {
+			job.future.completeExceptionally(new RejectedExecutionException("Too many tasks are waiting for the statement."));
+		    } else {
+			waiting.add(job);
+		    }
+		    return;
+		}
+		running++;
+	    } finally {
+		lock.unlock();
+	    }
+	    dispatch(job);
+	}
+
+	void release() {
+	    Job<?> next;
+	    lock.lock();
+	    try {
+		next = running <= limit ? waiting.poll() : null;
+		if (next == null) {
+		    running--;
+		}
+	    } finally {
+		lock.unlock();
+	    }
+	    if (next != null) {
+		dispatch(next);
+	    }
+	}
+
+	private void dispatch(Job<?> job) {
+	    try {
+		executor.execute(job);
+	    } catch (RejectedExecutionException ex) {
+		job.future.completeExceptionally(ex);
+		release();
+	    }
+	}
+    }
+}
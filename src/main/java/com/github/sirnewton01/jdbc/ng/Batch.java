@@ -0,0 +1,46 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Configures how an executeAll method splits its rows into JDBC batches. A
+ *  batch is sent when it reaches either the number of rows or the approximate
+ *  number of bytes of argument data.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Batch {
+    /**
+     * The maximum number of rows in a batch.
+     */
+    public int rows() default 1000;
+
+    /**
+     * The approximate maximum size of the arguments in a batch, or 0 for no
+     *  limit.
+     */
+    public long bytes() default 0;
+
+    /**
+     * Commit after this many batches when the connection isn't in auto-commit
+     *  mode, along with the remaining rows at the end. The default of 0 leaves
+     *  the transaction to the caller.
+     */
+    public int commitEvery() default 0;
+
+    /**
+     * Rewrite an INSERT ... VALUES (?, ...) statement to insert several rows
+     *  at once. Each batch is spread across one statement per bucket size,
+     *  which are prepared once per connection like any other statement.
+     */
+    public boolean multiRow() default false;
+
+    /**
+     * The number of rows of each multi-row statement. A single row statement
+     *  is always added for the remainder.
+     */
+    public int[] buckets() default {1, 8, 64, 256};
+}
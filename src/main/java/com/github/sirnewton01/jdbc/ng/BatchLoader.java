@@ -0,0 +1,223 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.sql.DataSource;
+
+/**
+ * Looks up rows by key for many callers with few queries. The keys given to
+ *  {@link #load(java.lang.Object) } within a short window are gathered and
+ *  looked up with one query, and each caller's future completes with the row
+ *  of its key. See {@link JdbcNg#loader(javax.sql.DataSource, java.lang.Class) }.
+ *
+ * The statement interface has a single positional argument setter for the key
+ *  and an executeQuery method that returns a List of rows. Its argument is
+ *  the list of an IN predicate, such as {@code WHERE ID IN (?)}, which is
+ *  rewritten to take the keys with {@link InList}. The rows are matched to the
+ *  keys by the column named by the setter, so setId() matches on the ID column.
+ *  The window and the most keys in a query are set by {@link Coalesce}.
+ *
+ * The queries run on the asynchronous executor, see
+ *  {@link JdbcNg#setAsyncExecutor(java.util.concurrent.Executor) }. The waiting
+ *  keys are guarded by a ReentrantLock rather than a monitor so that virtual
+ *  threads calling load() aren't pinned to their carrier threads.
+ *
+ * @param <K> the type of the keys
+ * @param <R> the row type
+ */
+public final class BatchLoader<K, R> {
+    private final DataSource dataSource;
+    private final Class<?> aInterface;
+    private final Class<?> rowType;
+    private final String keyColumn;
+    private final JdbcAccessors.ParameterSetter keySetter;
+    private final JdbcAccessors.ColumnGetter keyGetter;
+    private final long windowNanos;
+    private final int maxKeys;
+    private final String[] bucketStatements;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by the lock
+    private Map<Object, CompletableFuture<R>> waiting = new LinkedHashMap<>();
+    private ScheduledFuture<?> timer;
+
+    BatchLoader(DataSource dataSource, Class<?> aInterface, String sql) {
+	Method setter = null;
+	Method executeQuery = null;
+	for (Method m: aInterface.getMethods()) {
+	    if (m.getAnnotation(Pos.class) != null) {
+		if (setter != null) {
+		    throw new IllegalArgumentException("Interface " + aInterface.getName() + " must have a single positional argument for the key to be loaded in batches.");
+		}
+		setter = m;
+	    } else if (m.getName().equals("executeQuery") && m.getParameterCount() == 0) {
+		executeQuery = m;
+	    }
+	}
+	if (setter == null || setter.getParameterCount() != 1) {
+	    throw new IllegalArgumentException("Interface " + aInterface.getName() + " has no positional argument setter for the key.");
+	}
+	if (executeQuery == null) {
+	    throw new IllegalArgumentException("Interface " + aInterface.getName() + " has no executeQuery method.");
+	}
+	if (InList.placeholders(sql).length != 1) {
+	    throw new IllegalArgumentException("Statement of " + aInterface.getName() + " must have a single positional argument for the key.");
+	}
+
+	Coalesce coalesce = aInterface.getAnnotation(Coalesce.class);
+	this.dataSource = dataSource;
+	this.aInterface = aInterface;
+	this.rowType = JdbcNg.listRowType(executeQuery);
+	this.keyColumn = ResultSetDispatch.columnName(setter);
+	this.keySetter = JdbcAccessors.setterFor(setter.getParameterTypes()[0]);
+	this.keyGetter = JdbcAccessors.getterFor(setter.getParameterTypes()[0]);
+	this.windowNanos = TimeUnit.MILLISECONDS.toNanos(coalesce == null ? 1 : coalesce.windowMillis());
+	this.maxKeys = coalesce == null ? 256 : coalesce.maxKeys();
+	if (maxKeys < 1) {
+	    throw new IllegalArgumentException("The most keys in a query must be at least 1.");
+	}
+
+	// One statement for each power of two up to the most keys
+	int buckets = Integer.numberOfTrailingZeros(InList.bucket(maxKeys)) + 1;
+	bucketStatements = new String[buckets];
+	for (int i = 0; i < buckets; i++) {
+	    bucketStatements[i] = InList.expand(sql, new int[] {0, 1 << i});
+	}
+    }
+
+    /**
+     * Returns a future of the row with the key, or of null if there is none.
+     *  Callers that load the same key before its query runs share the future.
+     */
+    public CompletableFuture<R> load(K key) {
+	if (key == null) {
+	    return CompletableFuture.completedFuture(null);
+	}
+
+	Map<Object, CompletableFuture<R>> full = null;
+	CompletableFuture<R> future;
+	lock.lock();
+	try {
+	    future = waiting.get(key);
+	    if (future != null) {
+		return future;
+	    }
+	    future = new CompletableFuture<>();
+	    waiting.put(key, future);
+	    if (waiting.size() >= maxKeys) {
+		full = takeWaiting();
+	    } else if (timer == null) {
+		timer = Timer.INSTANCE.schedule(this::dispatch, windowNanos, TimeUnit.NANOSECONDS);
+	    }
+	} finally {
+	    lock.unlock();
+	}
+
+	if (full != null) {
+	    submit(full);
+	}
+	return future;
+    }
+
+    /**
+     * Looks up the waiting keys now rather than at the end of the window.
+     */
+    public void dispatch() {
+	Map<Object, CompletableFuture<R>> keys;
+	lock.lock();
+	try {
+	    keys = takeWaiting();
+	} finally {
+	    lock.unlock();
+	}
+	if (!keys.isEmpty()) {
+	    submit(keys);
+	}
+    }
+
+    private Map<Object, CompletableFuture<R>> takeWaiting() {
+	Map<Object, CompletableFuture<R>> keys = waiting;
+	waiting = new LinkedHashMap<>();
+	if (timer != null) {
+	    timer.cancel(false);
+	    timer = null;
+	}
+	return keys;
+    }
+
+    private void submit(Map<Object, CompletableFuture<R>> keys) {
+	AsyncExecution.submit(aInterface, () -> query(new ArrayList<>(keys.keySet()))).whenComplete((rows, ex) -> {
+	    for (Map.Entry<Object, CompletableFuture<R>> entry: keys.entrySet()) {
+		if (ex != null) {
+		    entry.getValue().completeExceptionally(ex);
+		} else {
+		    entry.getValue().complete(rows.get(entry.getKey()));
+		}
+	    }
+	});
+    }
+
+    /**
+     * Runs the statement of the smallest bucket that holds the keys, with the
+     *  last key repeated to fill it, and returns the first row of each key.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Object, R> query(List<Object> keys) throws SQLException {
+	int bucket = InList.bucket(keys.size());
+	String sql = bucketStatements[Integer.numberOfTrailingZeros(bucket)];
+	Map<Object, R> rows = new HashMap<>();
+
+	try (Connection conn = dataSource.getConnection()) {
+	    PreparedStatement pstmt = StatementCache.checkout(conn, sql);
+	    try {
+		for (int position = 1; position <= bucket; position++) {
+		    keySetter.set(pstmt, position, keys.get(Math.min(position, keys.size()) - 1));
+		}
+		try (ResultSet rs = pstmt.executeQuery()) {
+		    int column = ResultSetDispatch.findColumn(rs.getMetaData(), keyColumn);
+		    if (column == 0) {
+			throw new SQLException("Column " + keyColumn + " is not in the result set.");
+		    }
+		    ResultSetDispatch.RowReader reader = ResultSetDispatch.rowReader(aInterface.getClassLoader(), rowType, rs);
+		    while (rs.next()) {
+			Object key = keyGetter.get(rs, column);
+			R row = (R) reader.read();
+			rows.putIfAbsent(key, row);
+		    }
+		}
+	    } finally {
+		StatementCache.checkin(conn, pstmt);
+	    }
+	}
+	return rows;
+    }
+
+    /**
+     * The thread that ends the windows. It only hands the queries to the
+     *  asynchronous executor, so one is enough for all of the loaders.
+     */
+    private static final class Timer {
+	static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, runnable -> {
+	    Thread thread = new Thread(runnable, "jdbc-ng-loader");
+	    thread.setDaemon(true);
+	    return thread;
+	});
+
+	static {
+	    INSTANCE.setRemoveOnCancelPolicy(true);
+	}
+    }
+}
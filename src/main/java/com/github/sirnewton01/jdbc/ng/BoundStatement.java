@@ -0,0 +1,492 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+
+/**
+ * Handler of a statement interface that is bound to a {@link DataSource}
+ *  instead of a connection. The handle can be shared by threads. The positional
+ *  arguments set by a thread are collected in that thread's binder until the
+ *  statement is executed. Executing borrows a connection from the data source
+ *  and a cached statement for the connection, binds the arguments and returns
+ *  the connection when it's done. For executeQuery() the connection is
+ *  returned when the result set is closed and for executeStream() when the
+ *  stream is closed. Rows added with addBatch() are
+ *  also collected for the thread and sent together by executeBatch(), which
+ *  interfaces with list arguments can't have since their statement depends on
+ *  the sizes of each row's lists. executeAll() sends all of its rows over a
+ *  single borrowed connection.
+ *
+ * Cached statements are kept for as long as the borrowed connection stays
+ *  open, so they're only reused when the data source hands out the same open
+ *  connection again. A pool that hands out a new logical connection each time
+ *  and closes it when it's returned takes the connection's statements with
+ *  it, and caching them across borrows is left to the pool's own statement
+ *  pooling.
+ *
+ * The asynchronous executeAsync(), executeUpdateAsync(), executeBatchAsync()
+ *  and executeQueryAsync() methods take the calling thread's arguments and
+ *  return a CompletableFuture right away. The connection is borrowed and the
+ *  statement executed by a task of {@link AsyncExecution}. executeQueryAsync()
+ *  completes with a list of row objects copied from the result set.
+ *  executeQueryPublisher() returns a Flow.Publisher of copied rows instead.
+ */
+final class BoundStatement implements InvocationHandler {
+    private static final Object UNSET = new Object();
+
+    private static final ClassValue<Table> TABLES = new ClassValue<Table>() {
+	@Override
+	protected Table computeValue(Class<?> type) {
+	    return new Table(type);
+	}
+    };
+
+    private final DataSource dataSource;
+    private final Class<?> aInterface;
+    private final String sql;
+    private final Table table;
+    private final ThreadLocal<Binder> binders = new ThreadLocal<>();
+
+    BoundStatement(DataSource dataSource, Class<?> aInterface, String sql) {
+	this.dataSource = dataSource;
+	this.aInterface = aInterface;
+	this.sql = sql;
+	this.table = TABLES.get(aInterface);
+	if (table.lists != null && table.batchMethod != null) {
+	    throw new IllegalArgumentException("Interface " + aInterface.getName() + " has list arguments, so its statement depends on each row and it can't have the batch method "
+		    + table.batchMethod.getName() + " when it's bound to a DataSource.");
+	}
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+	Action action = table.actions.get(method);
+
+	if (action == null) {
+	    return null;
+	}
+
+	return action.invoke(this, proxy, args);
+    }
+
+    /**
+     * An action performed by a bound handle for a single method of the
+     *  statement interface.
+     */
+    private interface Action {
+	Object invoke(BoundStatement handle, Object proxy, Object[] args) throws SQLException;
+    }
+
+    private Binder binder() {
+	Binder binder = binders.get();
+	if (binder == null) {
+	    binder = new Binder(table.setters.length);
+	    binders.set(binder);
+	}
+	return binder;
+    }
+
+    /**
+     * Takes the current thread's arguments so that the next invocation starts
+     *  with an empty binder.
+     */
+    private Binder takeBinder() {
+	Binder binder = binder();
+	binders.remove();
+	return binder;
+    }
+
+    /**
+     * Checks out the statement on the connection and binds the arguments. With
+     *  list arguments the statement depends on the sizes of the lists. The
+     *  statement has to be checked back in.
+     */
+    private PreparedStatement prepare(Connection conn, Object[] values) throws SQLException {
+	if (table.lists != null) {
+	    return table.lists.prepare(conn, sql, values, UNSET);
+	}
+	PreparedStatement pstmt = StatementCache.checkout(conn, sql);
+	try {
+	    bind(pstmt, values);
+	} catch (SQLException | RuntimeException ex) {
+	    StatementCache.checkin(conn, pstmt);
+	    throw ex;
+	}
+	return pstmt;
+    }
+
+    /**
+     * Gives the borrowed connection back. When that closes it, its cached
+     *  statements are closed with it rather than kept for a connection that
+     *  won't be handed out again.
+     */
+    private static void release(Connection conn) throws SQLException {
+	try {
+	    conn.close();
+	} finally {
+	    if (conn.isClosed()) {
+		StatementCache.close(conn);
+	    }
+	}
+    }
+
+    private void bind(PreparedStatement pstmt, Object[] values) throws SQLException {
+	for (int position = 1; position < values.length; position++) {
+	    if (values[position] != UNSET) {
+		table.setters[position].set(pstmt, position, values[position]);
+	    }
+	}
+    }
+
+    private Object execute(Binder binder, boolean update) throws SQLException {
+	Connection conn = dataSource.getConnection();
+	try {
+	    PreparedStatement pstmt = prepare(conn, binder.values);
+	    try {
+		Object result = update ? pstmt.executeUpdate() : pstmt.execute();
+		TableTags.written(aInterface, conn);
+		return result;
+	    } finally {
+		StatementCache.checkin(conn, pstmt);
+	    }
+	} finally {
+	    release(conn);
+	}
+    }
+
+    private Object executeBatch(Binder binder, boolean large) throws SQLException {
+	Connection conn = dataSource.getConnection();
+	try {
+	    PreparedStatement pstmt = prepare(conn, binder.values);
+	    try {
+		for (Object[] values: binder.batch) {
+		    bind(pstmt, values);
+		    pstmt.addBatch();
+		}
+		Object result = large ? pstmt.executeLargeBatch() : pstmt.executeBatch();
+		TableTags.written(aInterface, conn);
+		return result;
+	    } finally {
+		StatementCache.checkin(conn, pstmt);
+	    }
+	} finally {
+	    release(conn);
+	}
+    }
+
+    private Object executeAll(BulkExecutor bulk, Object rows) throws SQLException {
+	takeBinder();
+	Connection conn = dataSource.getConnection();
+	try {
+	    PreparedStatement pstmt = StatementCache.checkout(conn, sql);
+	    try {
+		Object result = bulk.execute(pstmt, rows);
+		TableTags.written(aInterface, conn);
+		return result;
+	    } finally {
+		StatementCache.checkin(conn, pstmt);
+	    }
+	} finally {
+	    release(conn);
+	}
+    }
+
+    /**
+     * Reads all of the rows of the query into a list of row objects, giving
+     *  the connection back before the list is returned.
+     */
+    private List<Object> executeQueryList(Binder binder, Class<?> rowType) throws SQLException {
+	Connection conn = dataSource.getConnection();
+	try {
+	    PreparedStatement pstmt = prepare(conn, binder.values);
+	    try (ResultSet rs = pstmt.executeQuery()) {
+		return ResultSetDispatch.readAll(aInterface.getClassLoader(), rowType, rs);
+	    } finally {
+		StatementCache.checkin(conn, pstmt);
+	    }
+	} finally {
+	    release(conn);
+	}
+    }
+
+    /**
+     * Answers the query from the cache or a query of the same arguments that is
+     *  already running, only borrowing a connection when there is neither.
+     */
+    private Object executeCachedQuery(QueryResultCache cache) throws SQLException {
+	Binder binder = takeBinder();
+	return cache.execute(binder.values, () -> {
+	    Connection conn = dataSource.getConnection();
+	    try {
+		PreparedStatement pstmt = prepare(conn, binder.values);
+		try (ResultSet rs = pstmt.executeQuery()) {
+		    return cache.read(rs);
+		} finally {
+		    StatementCache.checkin(conn, pstmt);
+		}
+	    } finally {
+		release(conn);
+	    }
+	});
+    }
+
+    private ColumnarResult<?> executeColumnar(Class<?> rowInterface) throws SQLException {
+	Binder binder = takeBinder();
+	Connection conn = dataSource.getConnection();
+	try {
+	    PreparedStatement pstmt = prepare(conn, binder.values);
+	    try (ResultSet rs = pstmt.executeQuery()) {
+		return ColumnarResult.read(rowInterface, rs);
+	    } finally {
+		StatementCache.checkin(conn, pstmt);
+	    }
+	} finally {
+	    release(conn);
+	}
+    }
+
+    private Object executeStream(Class<?> rowInterface) throws SQLException {
+	Binder binder = takeBinder();
+	Connection conn = dataSource.getConnection();
+	ResultSet rs;
+	try {
+	    rs = executeQuery(conn, binder.values);
+	} catch (SQLException | RuntimeException ex) {
+	    conn.close();
+	    throw ex;
+	}
+	return RowStream.stream(aInterface.getClassLoader(), rowInterface, rs, conn);
+    }
+
+    /**
+     * Publishes the rows of the query with the arguments of the binder. Each
+     *  subscription borrows its own connection until its result set is closed.
+     */
+    private Object executeQueryPublisher(final Binder binder, Class<?> rowInterface) {
+	return RowPublisher.create(aInterface, rowInterface, new RowPublisher.Source() {
+	    @Override
+	    public Connection connect() throws SQLException {
+		return dataSource.getConnection();
+	    }
+
+	    @Override
+	    public ResultSet executeQuery(Connection conn) throws SQLException {
+		return BoundStatement.this.executeQuery(conn, binder.values);
+	    }
+
+	    @Override
+	    public void release(Connection conn) throws SQLException {
+		conn.close();
+	    }
+	});
+    }
+
+    /**
+     * Runs the query for a result set that is read after this returns. The
+     *  statement is checked back in once the result set is unreachable, since
+     *  reading it needs the statement to stay open.
+     */
+    private ResultSet executeQuery(Connection conn, Object[] values) throws SQLException {
+	PreparedStatement pstmt = prepare(conn, values);
+	ResultSet rs;
+	try {
+	    rs = pstmt.executeQuery();
+	} catch (SQLException | RuntimeException ex) {
+	    StatementCache.checkin(conn, pstmt);
+	    throw ex;
+	}
+	StatementCache.checkinWhenUnreachable(rs, conn, pstmt);
+	return rs;
+    }
+
+    private Object executeQuery(Class<?> resultSetInterface, Prefetch prefetch, boolean flyweight) throws SQLException {
+	Binder binder = takeBinder();
+	Connection conn = dataSource.getConnection();
+	try {
+	    ResultSet rs = executeQuery(conn, binder.values);
+	    if (prefetch != null) {
+		return PrefetchResultSet.generate(aInterface.getClassLoader(), aInterface, resultSetInterface, rs, conn, prefetch.value());
+	    }
+	    if (flyweight) {
+		return FlyweightResultSet.generate(aInterface.getClassLoader(), resultSetInterface, rs, conn);
+	    }
+	    return JdbcNg.generateResultSetProxy(aInterface.getClassLoader(), resultSetInterface, rs, conn);
+	} catch (SQLException | RuntimeException ex) {
+	    conn.close();
+	    throw ex;
+	}
+    }
+
+    /**
+     * A thread's positional arguments and the rows it has added to the batch.
+     *  As with a PreparedStatement the arguments are kept when a row is added.
+     */
+    private static final class Binder {
+	final Object[] values;
+	final List<Object[]> batch = new ArrayList<>();
+
+	Binder(int size) {
+	    values = new Object[size];
+	    Arrays.fill(values, UNSET);
+	}
+    }
+
+    /**
+     * The actions and typed argument setters for a statement interface,
+     *  analysed once per interface.
+     */
+    private static final class Table {
+	final Map<Method, Action> actions;
+	final JdbcAccessors.ParameterSetter[] setters;
+	final ListArguments lists;
+	final Method batchMethod;
+
+	Table(Class<?> aInterface) {
+	    Map<Method, Action> table = new HashMap<>();
+	    lists = ListArguments.forInterface(aInterface);
+	    Method batch = null;
+	    int maxPosition = 0;
+
+	    for (Method m: aInterface.getMethods()) {
+		Pos pos = m.getAnnotation(Pos.class);
+		if (pos != null) {
+		    maxPosition = Math.max(maxPosition, pos.value());
+		}
+	    }
+	    setters = new JdbcAccessors.ParameterSetter[maxPosition + 1];
+
+	    for (Method m: aInterface.getMethods()) {
+		Pos pos = m.getAnnotation(Pos.class);
+
+		// Positional argument setter method
+		if (pos != null) {
+		    final int position = pos.value();
+		    setters[position] = JdbcAccessors.setterFor(m.getParameterCount() == 1 ? m.getParameterTypes()[0] : Object.class);
+		    table.put(m, (handle, proxy, args) -> {
+			handle.binder().values[position] = args[0];
+			return null;
+		    });
+		    continue;
+		}
+
+		switch (m.getName()) {
+		    case "executeQuery":
+			final QueryResultCache cache = QueryResultCache.forInterface(aInterface);
+			if (cache != null && cache.isQuery(m)) {
+			    table.put(m, (handle, proxy, args) -> handle.executeCachedQuery(cache));
+			    break;
+			}
+			if (m.getReturnType() == List.class) {
+			    final Class<?> listedRows = JdbcNg.listRowType(m);
+			    table.put(m, (handle, proxy, args) -> handle.executeQueryList(handle.takeBinder(), listedRows));
+			    break;
+			}
+			final Class<?> resultSetInterface = m.getReturnType();
+			final Prefetch prefetch = m.getAnnotation(Prefetch.class);
+			final boolean flyweight = m.getAnnotation(Flyweight.class) != null;
+			table.put(m, (handle, proxy, args) -> handle.executeQuery(resultSetInterface, prefetch, flyweight));
+			break;
+		    case "execute":
+			table.put(m, (handle, proxy, args) -> handle.execute(handle.takeBinder(), false));
+			break;
+		    case "executeUpdate":
+			table.put(m, (handle, proxy, args) -> handle.execute(handle.takeBinder(), true));
+			break;
+		    case "addBatch":
+			batch = m;
+			table.put(m, (handle, proxy, args) -> {
+			    Binder binder = handle.binder();
+			    binder.batch.add(binder.values.clone());
+			    return null;
+			});
+			break;
+		    case "executeBatch":
+			batch = m;
+			table.put(m, (handle, proxy, args) -> handle.executeBatch(handle.takeBinder(), false));
+			break;
+		    case "executeLargeBatch":
+			batch = m;
+			table.put(m, (handle, proxy, args) -> handle.executeBatch(handle.takeBinder(), true));
+			break;
+		    case "executeAll":
+			if (BulkExecutor.isExecuteAll(m)) {
+			    final BulkExecutor bulk = new BulkExecutor(aInterface, m);
+			    table.put(m, (handle, proxy, args) -> handle.executeAll(bulk, args[0]));
+			}
+			break;
+		    case "executeStream":
+			final Class<?> streamedRows = JdbcNg.streamRowType(m);
+			table.put(m, (handle, proxy, args) -> handle.executeStream(streamedRows));
+			break;
+		    case "executeColumnar":
+			final Class<?> columnarRows = JdbcNg.columnarRowInterface(m);
+			table.put(m, (handle, proxy, args) -> handle.executeColumnar(columnarRows));
+			break;
+		    case "executeQueryPublisher":
+			if (RowPublisher.isPublisher(m.getReturnType())) {
+			    final Class<?> publishedRows = JdbcNg.publisherRowType(m);
+			    table.put(m, (handle, proxy, args) -> handle.executeQueryPublisher(handle.takeBinder(), publishedRows));
+			}
+			break;
+		    case "executeAsync":
+			table.put(m, (handle, proxy, args) -> {
+			    Binder binder = handle.takeBinder();
+			    return AsyncExecution.submit(aInterface, () -> handle.execute(binder, false));
+			});
+			break;
+		    case "executeUpdateAsync":
+			table.put(m, (handle, proxy, args) -> {
+			    Binder binder = handle.takeBinder();
+			    return AsyncExecution.submit(aInterface, () -> handle.execute(binder, true));
+			});
+			break;
+		    case "executeBatchAsync":
+			batch = m;
+			table.put(m, (handle, proxy, args) -> {
+			    Binder binder = handle.takeBinder();
+			    return AsyncExecution.submit(aInterface, () -> handle.executeBatch(binder, false));
+			});
+			break;
+		    case "executeQueryAsync":
+			final Class<?> rowInterface = JdbcNg.asyncRowType(m);
+			table.put(m, (handle, proxy, args) -> {
+			    Binder binder = handle.takeBinder();
+			    return AsyncExecution.submit(aInterface, () -> handle.executeQueryList(binder, rowInterface));
+			});
+			break;
+		    default:
+			break;
+		}
+	    }
+
+	    // Handles are meant to be held and shared, so they need the Object methods
+	    try {
+		table.put(Object.class.getMethod("hashCode"), (handle, proxy, args) -> System.identityHashCode(proxy));
+		table.put(Object.class.getMethod("equals", Object.class), (handle, proxy, args) -> proxy == args[0]);
+		table.put(Object.class.getMethod("toString"), (handle, proxy, args) -> "Bound " + handle.aInterface.getName());
+	    } catch (NoSuchMethodException ex) {
+		throw new IllegalStateException(ex);
+	    }
+
+	    for (int position = 1; position < setters.length; position++) {
+		if (setters[position] == null) {
+		    setters[position] = JdbcAccessors.setterFor(Object.class);
+		}
+	    }
+
+	    actions = Collections.unmodifiableMap(table);
+	    batchMethod = batch;
+	}
+    }
+}
@@ -0,0 +1,471 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Executes an executeAll method, which takes an {@link Iterable} or
+ *  {@link Stream} of row objects. The row object's methods with a {@link Pos}
+ *  annotation supply the positional arguments, so it can be an interface with
+ *  annotated getters or a record with annotated components. The rows are sent
+ *  in JDBC batches sized by the method's {@link Batch} annotation. In the
+ *  multi-row mode each batch is spread across INSERT statements rewritten to
+ *  insert a fixed number of rows each, so that drivers that run every batch
+ *  entry separately make fewer round trips.
+ */
+final class BulkExecutor {
+    private static final Logger LOGGER = Logger.getLogger(BulkExecutor.class.getName());
+
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<RowBinder> ROW_BINDERS = new ClassValue<RowBinder>() {
+	@Override
+	protected RowBinder computeValue(Class<?> type) {
+	    return new RowBinder(type);
+	}
+    };
+
+    private final Class<?> aInterface;
+    private final int batchRows;
+    private final long batchBytes;
+    private final int commitEvery;
+    private final int[] buckets;
+    private final Class<?> returnType;
+    private volatile String[] bucketStatements;
+
+    BulkExecutor(Class<?> aInterface, Method executeAll) {
+	Batch batch = executeAll.getAnnotation(Batch.class);
+	this.aInterface = aInterface;
+	batchRows = batch == null ? 1000 : Math.max(1, batch.rows());
+	batchBytes = batch == null ? 0 : batch.bytes();
+	commitEvery = batch == null ? 0 : batch.commitEvery();
+	buckets = batch == null || !batch.multiRow() ? null : buckets(batch.buckets());
+	returnType = executeAll.getReturnType();
+    }
+
+    /**
+     * Sorts the bucket sizes from largest to smallest, making sure that there
+     *  is a single row bucket for the remainder.
+     */
+    private static int[] buckets(int[] sizes) {
+	TreeSet<Integer> sorted = new TreeSet<>(Collections.reverseOrder());
+	sorted.add(1);
+	for (int size: sizes) {
+	    if (size < 1) {
+		throw new IllegalArgumentException("Batch bucket sizes must be positive.");
+	    }
+	    sorted.add(size);
+	}
+	int[] result = new int[sorted.size()];
+	int i = 0;
+	for (int size: sorted) {
+	    result[i++] = size;
+	}
+	return result;
+    }
+
+    static boolean isExecuteAll(Method m) {
+	return m.getName().equals("executeAll") && m.getParameterCount() == 1
+		&& (Iterable.class.isAssignableFrom(m.getParameterTypes()[0]) || Stream.class.isAssignableFrom(m.getParameterTypes()[0]));
+    }
+
+    /**
+     * Sends the rows to the prepared statement and returns the result in the
+     *  form that the executeAll method declares.
+     */
+    Object execute(PreparedStatement pstmt, Object rows) throws SQLException {
+	long start = System.nanoTime();
+	Connection conn = StatementCache.connection(pstmt);
+	Batcher batcher = buckets == null ? new SingleRowBatcher(pstmt) : new MultiRowBatcher(conn, pstmt);
+	boolean commit = commitEvery > 0 && !conn.getAutoCommit();
+
+	long rowCount = 0;
+	long updateCount = 0;
+	int batches = 0;
+	int commits = 0;
+	int uncommitted = 0;
+	int batchSize = 0;
+	long batchSizeBytes = 0;
+
+	// Rows of a failed row source mustn't be sent by the next executeAll
+	try {
+	    Iterator<?> it = rows instanceof Stream ? ((Stream<?>) rows).iterator() : ((Iterable<?>) rows).iterator();
+	    while (it.hasNext()) {
+		Object row = it.next();
+		batchSizeBytes += batcher.add(ROW_BINDERS.get(row.getClass()), row);
+		batchSize++;
+		rowCount++;
+
+		if (batchSize >= batchRows || (batchBytes > 0 && batchSizeBytes >= batchBytes)) {
+		    updateCount += batcher.flush();
+		    batches++;
+		    uncommitted++;
+		    batchSize = 0;
+		    batchSizeBytes = 0;
+
+		    if (commit && uncommitted == commitEvery) {
+			TableTags.written(aInterface, conn);
+			TableTags.commit(conn);
+			commits++;
+			uncommitted = 0;
+		    }
+		}
+	    }
+
+	    if (batchSize > 0) {
+		updateCount += batcher.flush();
+		batches++;
+		uncommitted++;
+	    }
+	} catch (SQLException | RuntimeException ex) {
+	    batcher.clear();
+	    throw ex;
+	}
+	if (commit && uncommitted > 0) {
+	    TableTags.written(aInterface, conn);
+	    TableTags.commit(conn);
+	    commits++;
+	}
+
+	BulkResult result = new BulkResult(rowCount, updateCount, batches, commits, System.nanoTime() - start);
+	LOGGER.log(Level.FINE, "executeAll sent {0}", result);
+
+	if (returnType == BulkResult.class) {
+	    return result;
+	} else if (returnType == Long.TYPE || returnType == Long.class) {
+	    return updateCount;
+	} else if (returnType == Integer.TYPE || returnType == Integer.class) {
+	    return (int) updateCount;
+	}
+	return null;
+    }
+
+    /**
+     * The statement text for each bucket, rewritten once from the interface's
+     *  statement.
+     */
+    private String[] bucketStatements() throws SQLException {
+	String[] statements = bucketStatements;
+	if (statements == null) {
+	    String sql;
+	    try {
+		sql = JdbcNg.loadStatementText(aInterface);
+	    } catch (IOException ex) {
+		throw new SQLException(ex);
+	    }
+	    statements = new String[buckets.length];
+	    for (int i = 0; i < buckets.length; i++) {
+		statements[i] = buckets[i] == 1 ? sql : multiRowValues(sql, buckets[i]);
+	    }
+	    bucketStatements = statements;
+	}
+	return statements;
+    }
+
+    /**
+     * Rewrites an INSERT ... VALUES (?, ...) statement so that it inserts the
+     *  given number of rows, each with its own copy of the VALUES row.
+     *
+     * @throws IllegalArgumentException the statement doesn't end with a single
+     *  VALUES row
+     */
+    static String multiRowValues(String sql, int rows) {
+	int valuesEnd = -1;
+	char quote = 0;
+	for (int i = 0; i < sql.length(); i++) {
+	    char c = sql.charAt(i);
+	    if (quote != 0) {
+		if (c == quote) {
+		    quote = 0;
+		}
+	    } else if (c == '\'' || c == '"') {
+		quote = c;
+	    } else if (sql.regionMatches(true, i, "VALUES", 0, 6)
+		    && (i == 0 || !Character.isJavaIdentifierPart(sql.charAt(i - 1)))
+		    && (i + 6 == sql.length() || !Character.isJavaIdentifierPart(sql.charAt(i + 6)))) {
+		valuesEnd = i + 6;
+	    }
+	}
+	if (valuesEnd == -1) {
+	    throw new IllegalArgumentException("Statement has no VALUES clause to rewrite into multiple rows.");
+	}
+
+	int open = valuesEnd;
+	while (open < sql.length() && Character.isWhitespace(sql.charAt(open))) {
+	    open++;
+	}
+	if (open == sql.length() || sql.charAt(open) != '(') {
+	    throw new IllegalArgumentException("Statement VALUES clause doesn't start with a row.");
+	}
+
+	int close = -1;
+	int depth = 0;
+	quote = 0;
+	for (int i = open; i < sql.length() && close == -1; i++) {
+	    char c = sql.charAt(i);
+	    if (quote != 0) {
+		if (c == quote) {
+		    quote = 0;
+		}
+	    } else if (c == '\'' || c == '"') {
+		quote = c;
+	    } else if (c == '(') {
+		depth++;
+	    } else if (c == ')' && --depth == 0) {
+		close = i;
+	    }
+	}
+	if (close == -1 || !sql.substring(close + 1).trim().isEmpty()) {
+	    throw new IllegalArgumentException("Statement must end with a single VALUES row to be rewritten into multiple rows.");
+	}
+
+	String row = sql.substring(open, close + 1);
+	StringBuilder result = new StringBuilder(open + (row.length() + 2) * rows);
+	result.append(sql, 0, open).append(row);
+	for (int i = 1; i < rows; i++) {
+	    result.append(", ").append(row);
+	}
+	return result.toString();
+    }
+
+    private static long sum(int[] counts) {
+	long sum = 0;
+	for (int count: counts) {
+	    sum += count == java.sql.Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+	}
+	return sum;
+    }
+
+    private static long sizeOf(Object[] values) {
+	long size = 0;
+	for (Object value: values) {
+	    if (value == null) {
+		size += 1;
+	    } else if (value instanceof CharSequence) {
+		size += 2L * ((CharSequence) value).length();
+	    } else if (value instanceof byte[]) {
+		size += ((byte[]) value).length;
+	    } else {
+		size += 8;
+	    }
+	}
+	return size;
+    }
+
+    /**
+     * Collects rows into the statement batches until they're flushed.
+     */
+    private interface Batcher {
+	/**
+	 * Adds the row and returns its approximate size.
+	 */
+	long add(RowBinder binder, Object row) throws SQLException;
+
+	/**
+	 * Sends the collected rows and returns the number of affected rows.
+	 */
+	long flush() throws SQLException;
+
+	/**
+	 * Drops the rows that haven't been sent.
+	 */
+	void clear() throws SQLException;
+    }
+
+    private static final class SingleRowBatcher implements Batcher {
+	private final PreparedStatement pstmt;
+
+	SingleRowBatcher(PreparedStatement pstmt) {
+	    this.pstmt = pstmt;
+	}
+
+	@Override
+	public long add(RowBinder binder, Object row) throws SQLException {
+	    Object[] values = binder.values(row);
+	    binder.bind(pstmt, 0, values);
+	    pstmt.addBatch();
+	    return sizeOf(values);
+	}
+
+	@Override
+	public long flush() throws SQLException {
+	    return sum(pstmt.executeBatch());
+	}
+
+	@Override
+	public void clear() throws SQLException {
+	    pstmt.clearBatch();
+	}
+    }
+
+    /**
+     * Holds the rows of a batch and spreads them across the multi-row
+     *  statements, largest bucket first, when the batch is flushed.
+     */
+    private final class MultiRowBatcher implements Batcher {
+	private final Connection conn;
+	private final PreparedStatement single;
+	private final List<RowBinder> binders = new ArrayList<>();
+	private final List<Object[]> rows = new ArrayList<>();
+
+	MultiRowBatcher(Connection conn, PreparedStatement single) {
+	    this.conn = conn;
+	    this.single = single;
+	}
+
+	@Override
+	public long add(RowBinder binder, Object row) {
+	    Object[] values = binder.values(row);
+	    binders.add(binder);
+	    rows.add(values);
+	    return sizeOf(values);
+	}
+
+	@Override
+	public long flush() throws SQLException {
+	    String[] statements = bucketStatements();
+	    long updateCount = 0;
+	    int next = 0;
+
+	    for (int b = 0; b < buckets.length; b++) {
+		int bucket = buckets[b];
+		if (rows.size() - next < bucket) {
+		    continue;
+		}
+
+		PreparedStatement pstmt = bucket == 1 ? single : StatementCache.checkout(conn, statements[b]);
+		try {
+		    while (rows.size() - next >= bucket) {
+			int offset = 0;
+			for (int r = 0; r < bucket; r++, next++) {
+			    offset += binders.get(next).bind(pstmt, offset, rows.get(next));
+			}
+			pstmt.addBatch();
+		    }
+		    updateCount += sum(pstmt.executeBatch());
+		} finally {
+		    if (pstmt != single) {
+			StatementCache.checkin(conn, pstmt);
+		    }
+		}
+	    }
+
+	    binders.clear();
+	    rows.clear();
+	    return updateCount;
+	}
+
+	@Override
+	public void clear() throws SQLException {
+	    binders.clear();
+	    rows.clear();
+	    single.clearBatch();
+	}
+    }
+
+    /**
+     * The positional argument accessors of a row class.
+     */
+    private static final class RowBinder {
+	private final int[] positions;
+	private final MethodHandle[] accessors;
+	private final JdbcAccessors.ParameterSetter[] setters;
+	private final int width;
+
+	RowBinder(Class<?> rowClass) {
+	    List<Method> methods = new ArrayList<>();
+	    for (Method m: rowClass.getMethods()) {
+		if (m.getParameterCount() == 0 && positionOf(rowClass, m) != null) {
+		    methods.add(m);
+		}
+	    }
+	    if (methods.isEmpty()) {
+		throw new IllegalArgumentException("Row class " + rowClass.getName() + " has no @Pos methods.");
+	    }
+
+	    positions = new int[methods.size()];
+	    accessors = new MethodHandle[methods.size()];
+	    setters = new JdbcAccessors.ParameterSetter[methods.size()];
+	    int maxPosition = 0;
+
+	    for (int i = 0; i < methods.size(); i++) {
+		Method m = methods.get(i);
+		positions[i] = positionOf(rowClass, m).value();
+		maxPosition = Math.max(maxPosition, positions[i]);
+		setters[i] = JdbcAccessors.setterFor(m.getReturnType());
+		try {
+		    m.setAccessible(true);
+		    accessors[i] = MethodHandles.lookup().unreflect(m).asType(ACCESSOR_TYPE);
+		} catch (IllegalAccessException | RuntimeException ex) {
+		    throw new IllegalArgumentException("Unable to access " + m + " of row class " + rowClass.getName(), ex);
+		}
+	    }
+	    width = maxPosition;
+	}
+
+	/**
+	 * Reads the row's positional arguments.
+	 */
+	Object[] values(Object row) {
+	    Object[] values = new Object[accessors.length];
+	    for (int i = 0; i < accessors.length; i++) {
+		try {
+		    values[i] = (Object) accessors[i].invokeExact(row);
+		} catch (RuntimeException | Error ex) {
+		    throw ex;
+		} catch (Throwable ex) {
+		    throw new UndeclaredThrowableException(ex);
+		}
+	    }
+	    return values;
+	}
+
+	/**
+	 * Binds the row's arguments after the given number of arguments of the
+	 *  preceding rows in the statement and returns the row's argument count.
+	 */
+	int bind(PreparedStatement pstmt, int offset, Object[] values) throws SQLException {
+	    for (int i = 0; i < values.length; i++) {
+		setters[i].set(pstmt, offset + positions[i], values[i]);
+	    }
+	    return width;
+	}
+
+	/**
+	 * The annotation can be on the method itself or, for row objects that
+	 *  implement an annotated interface, on the interface's method.
+	 */
+	private static Pos positionOf(Class<?> rowClass, Method m) {
+	    Pos pos = m.getAnnotation(Pos.class);
+	    if (pos != null) {
+		return pos;
+	    }
+	    for (Class<?> i: rowClass.getInterfaces()) {
+		try {
+		    pos = i.getMethod(m.getName()).getAnnotation(Pos.class);
+		    if (pos != null) {
+			return pos;
+		    }
+		} catch (NoSuchMethodException ex) {
+		    // Not from this interface
+		}
+	    }
+	    return null;
+	}
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of an executeAll method. An executeAll method can return this
+ *  instead of the number of affected rows to report its throughput.
+ */
+public final class BulkResult {
+    private final long rows;
+    private final long updateCount;
+    private final int batches;
+    private final int commits;
+    private final long elapsedNanos;
+
+    public BulkResult(long rows, long updateCount, int batches, int commits, long elapsedNanos) {
+	this.rows = rows;
+	this.updateCount = updateCount;
+	this.batches = batches;
+	this.commits = commits;
+	this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * The number of rows that were sent to the database.
+     */
+    public long getRows() {
+	return rows;
+    }
+
+    /**
+     * The number of rows that the database reported as affected. Rows that
+     *  the driver reports with {@link java.sql.Statement#SUCCESS_NO_INFO} are
+     *  counted as one row.
+     */
+    public long getUpdateCount() {
+	return updateCount;
+    }
+
+    public int getBatches() {
+	return batches;
+    }
+
+    public int getCommits() {
+	return commits;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+	return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public double getRowsPerSecond() {
+	return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+	return rows + " rows in " + batches + " batches, " + String.format("%.0f", getRowsPerSecond()) + " rows/s";
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.sirnewton01.jdbc.ng;
+
+/**
+ * A snapshot of the counters of one of the JDBC-NG caches so that it can be
+ *  confirmed that the cache is effective.
+ */
+public final class CacheStatistics {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long size;
+
+    public CacheStatistics(long hits, long misses, long evictions, long size) {
+	this.hits = hits;
+	this.misses = misses;
+	this.evictions = evictions;
+	this.size = size;
+    }
+
+    public long getHits() {
+	return hits;
+    }
+
+    public long getMisses() {
+	return misses;
+    }
+
+    public long getEvictions() {
+	return evictions;
+    }
+
+    /**
+     * The number of entries in the cache when the snapshot was taken.
+     */
+    public long getSize() {
+	return size;
+    }
+
+    /**
+     * The fraction of lookups that were hits, or 0 if there were no lookups.
+     */
+    public double getHitRate() {
+	long lookups = hits + misses;
+	return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+	return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size;
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * How a {@link BatchLoader} of the interface gathers keys into one query. The
+ *  keys given to it within the window after the first one are looked up
+ *  together, or sooner if there are as many as the maximum.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Coalesce {
+    /**
+     * How long the first key waits for others, in milliseconds.
+     */
+    public long windowMillis() default 1;
+
+    /**
+     * The most keys in one query. The statement is prepared with the powers
+     *  of two up to this many keys.
+     */
+    public int maxKeys() default 256;
+}
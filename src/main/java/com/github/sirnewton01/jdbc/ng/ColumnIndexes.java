@@ -0,0 +1,107 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the column names of a row type to the column indexes of a result
+ *  set. The same row type may be returned by statements whose columns are in
+ *  a different order, so the indexes are kept for each shape of result set,
+ *  the column labels in order, rather than for the row type. The labels of
+ *  each result set are compared with those of the previous one, so a row type
+ *  that is always read from the same statement doesn't search the labels or
+ *  allocate again.
+ *
+ * This is public for the classes generated by the jdbc-ng-processor.
+ */
+public final class ColumnIndexes {
+    // Row types read from more shapes than this resolve the rest every time
+    private static final int MAX_SHAPES = 64;
+
+    private final String[] columnNames;
+    private final Map<List<String>, int[]> shapes = new ConcurrentHashMap<>();
+    private volatile Shape last;
+
+    /**
+     * @param columnNames the column name of each slot of the row type
+     */
+    public ColumnIndexes(String... columnNames) {
+	this.columnNames = columnNames.clone();
+    }
+
+    /**
+     * Returns the column index for each slot in the result set. Slots without
+     *  a matching column are given index 0 and fail when they are read.
+     */
+    public int[] resolve(ResultSet rs) throws SQLException {
+	ResultSetMetaData metaData = rs.getMetaData();
+	int count = metaData.getColumnCount();
+	Shape shape = last;
+	if (shape != null && shape.matches(metaData, count)) {
+	    return shape.indexes;
+	}
+
+	String[] labels = new String[count];
+	for (int i = 0; i < count; i++) {
+	    labels[i] = metaData.getColumnLabel(i + 1);
+	}
+	List<String> key = Arrays.asList(labels);
+	int[] indexes = shapes.get(key);
+	if (indexes == null) {
+	    indexes = new int[columnNames.length];
+	    for (int slot = 0; slot < columnNames.length; slot++) {
+		indexes[slot] = findColumn(labels, columnNames[slot]);
+	    }
+	    if (shapes.size() < MAX_SHAPES) {
+		shapes.put(key, indexes);
+	    }
+	}
+
+	last = new Shape(labels, indexes);
+	return indexes;
+    }
+
+    /**
+     * Finds the index of the column whose label matches the name, with the
+     *  rules of {@link ResultSetDispatch#findColumn(java.sql.ResultSetMetaData, java.lang.String) }.
+     */
+    private static int findColumn(String[] labels, String columnName) {
+	for (int i = 0; i < labels.length; i++) {
+	    if (labels[i].replace('.', '_').equalsIgnoreCase(columnName)) {
+		return i + 1;
+	    }
+	}
+
+	return 0;
+    }
+
+    /**
+     * The column labels of a result set and the indexes resolved from them.
+     */
+    private static final class Shape {
+	final String[] labels;
+	final int[] indexes;
+
+	Shape(String[] labels, int[] indexes) {
+	    this.labels = labels;
+	    this.indexes = indexes;
+	}
+
+	boolean matches(ResultSetMetaData metaData, int count) throws SQLException {
+	    if (count != labels.length) {
+		return false;
+	    }
+	    for (int i = 0; i < count; i++) {
+		if (!labels[i].equals(metaData.getColumnLabel(i + 1))) {
+		    return false;
+		}
+	    }
+	    return true;
+	}
+    }
+}
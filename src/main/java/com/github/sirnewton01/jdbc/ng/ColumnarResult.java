@@ -0,0 +1,426 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All of the rows of a query held in memory by column, returned by an
+ *  executeColumnar() method. Numeric and boolean columns are stored in
+ *  primitive arrays with a bitmap of the rows that are SQL NULL, and String
+ *  columns are dictionary encoded so that repeated values are stored once.
+ *  This takes a fraction of the memory of a list of row objects and scanning
+ *  a column reads consecutive memory.
+ *
+ * The rows are read through the row interface's getters, either with a view
+ *  of a single row from {@link #get(int)} or with a {@link #cursor()} that is
+ *  moved with the row interface's next() method. Views are cheap and the
+ *  result can be read by any number of threads. A cursor's forEachParallel()
+ *  method gives the remaining rows to a consumer of the row interface.
+ *
+ * @param <R> the row interface
+ */
+public final class ColumnarResult<R> {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Class<R> rowInterface;
+    private final ResultSetDispatch dispatch;
+    private final Column[] columns;
+    private final int size;
+
+    private ColumnarResult(Class<R> rowInterface, ResultSetDispatch dispatch, Column[] columns, int size) {
+	this.rowInterface = rowInterface;
+	this.dispatch = dispatch;
+	this.columns = columns;
+	this.size = size;
+    }
+
+    /**
+     * Reads the remaining rows of the result set. The result set isn't closed.
+     */
+    static <R> ColumnarResult<R> read(Class<R> rowInterface, ResultSet rs) throws SQLException {
+	ResultSetDispatch dispatch = ResultSetDispatch.forInterface(rowInterface);
+	int[] indexes = dispatch.columnIndexes(rs);
+	Column[] columns = new Column[dispatch.slotCount()];
+	for (int slot = 0; slot < columns.length; slot++) {
+	    columns[slot] = indexes[slot] == 0 ? null : Column.forType(dispatch.slotType(slot), INITIAL_CAPACITY);
+	}
+
+	int size = 0;
+	int capacity = INITIAL_CAPACITY;
+	while (rs.next()) {
+	    if (size == capacity) {
+		capacity = capacity * 2;
+		for (Column column: columns) {
+		    if (column != null) {
+			column.resize(capacity);
+		    }
+		}
+	    }
+	    for (int slot = 0; slot < columns.length; slot++) {
+		if (columns[slot] != null) {
+		    columns[slot].read(rs, indexes[slot], size);
+		}
+	    }
+	    size++;
+	}
+
+	for (Column column: columns) {
+	    if (column != null) {
+		column.resize(size);
+		column.seal();
+	    }
+	}
+	return new ColumnarResult<>(rowInterface, dispatch, columns, size);
+    }
+
+    /**
+     * The number of rows.
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * A view of the row at the index.
+     */
+    public R get(int index) {
+	if (index < 0 || index >= size) {
+	    throw new IndexOutOfBoundsException("Row " + index + " of " + size);
+	}
+	return view(index);
+    }
+
+    /**
+     * A view that is positioned before the first row and moves to the next
+     *  row when the row interface's next() method is called.
+     */
+    public R cursor() {
+	return view(-1);
+    }
+
+    private R view(int index) {
+	return rowInterface.cast(Proxy.newProxyInstance(rowInterface.getClassLoader(), new Class[] {rowInterface}, new View(index)));
+    }
+
+    @Override
+    public String toString() {
+	return "ColumnarResult of " + size + " " + rowInterface.getSimpleName() + " rows";
+    }
+
+    private final class View implements InvocationHandler {
+	private int index;
+
+	View(int index) {
+	    this.index = index;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+	    int slot = dispatch.slotOf(method);
+	    if (slot != -1) {
+		if (index < 0 || index >= size) {
+		    throw new IllegalStateException("The cursor isn't positioned on a row.");
+		}
+		if (columns[slot] == null) {
+		    throw new IllegalStateException("Column " + dispatch.slotColumnName(slot) + " is not in the result set.");
+		}
+		return columns[slot].get(index);
+	    }
+
+	    if (ParallelRows.isForEachParallel(method)) {
+		if (ParallelRows.rowInterface(method, rowInterface) != rowInterface) {
+		    throw new UnsupportedOperationException("Columnar rows can only be given to a consumer of the row interface.");
+		}
+		ParallelRows.forEach(() -> index + 1 < size ? view(++index) : null, args);
+		return null;
+	    }
+
+	    switch (method.getName()) {
+		case "next":
+		    if (index < size) {
+			index++;
+		    }
+		    return index < size;
+		case "hashCode":
+		    return System.identityHashCode(proxy);
+		case "equals":
+		    return proxy == args[0];
+		case "toString":
+		    return rowInterface.getSimpleName() + " row " + index;
+		default:
+		    return null;
+	    }
+	}
+    }
+
+    /**
+     * The values of one column. Rows that are SQL NULL are marked in a bitmap
+     *  that is only created when there is one. Getters with primitive return
+     *  types get the value JDBC gives for NULL instead, like the result set
+     *  getters.
+     */
+    abstract static class Column {
+	private final boolean nullable;
+	private BitSet nulls;
+
+	Column(Class<?> type) {
+	    this.nullable = !type.isPrimitive();
+	}
+
+	static Column forType(Class<?> type, int capacity) {
+	    if (type == Integer.TYPE || type == Integer.class) {
+		return new IntColumn(type, capacity, Integer::valueOf);
+	    } else if (type == Short.TYPE || type == Short.class) {
+		return new IntColumn(type, capacity, value -> (short) value);
+	    } else if (type == Byte.TYPE || type == Byte.class) {
+		return new IntColumn(type, capacity, value -> (byte) value);
+	    } else if (type == Long.TYPE || type == Long.class) {
+		return new LongColumn(type, capacity);
+	    } else if (type == Double.TYPE || type == Double.class) {
+		return new DoubleColumn(type, capacity);
+	    } else if (type == Float.TYPE || type == Float.class) {
+		return new FloatColumn(type, capacity);
+	    } else if (type == Boolean.TYPE || type == Boolean.class) {
+		return new BooleanColumn(type);
+	    } else if (type == String.class) {
+		return new StringColumn(type, capacity);
+	    }
+	    return new ObjectColumn(type, capacity);
+	}
+
+	final void read(ResultSet rs, int column, int row) throws SQLException {
+	    readValue(rs, column, row);
+	    if (nullable && rs.wasNull()) {
+		if (nulls == null) {
+		    nulls = new BitSet();
+		}
+		nulls.set(row);
+	    }
+	}
+
+	final Object get(int row) {
+	    return nulls != null && nulls.get(row) ? null : value(row);
+	}
+
+	abstract void readValue(ResultSet rs, int column, int row) throws SQLException;
+
+	abstract Object value(int row);
+
+	abstract void resize(int capacity);
+
+	/**
+	 * Drops anything only needed while reading.
+	 */
+	void seal() {
+	}
+    }
+
+    private interface IntBoxer {
+	Object box(int value);
+    }
+
+    private static final class IntColumn extends Column {
+	private final IntBoxer boxer;
+	private int[] values;
+
+	IntColumn(Class<?> type, int capacity, IntBoxer boxer) {
+	    super(type);
+	    this.boxer = boxer;
+	    this.values = new int[capacity];
+	}
+
+	@Override
+	void readValue(ResultSet rs, int column, int row) throws SQLException {
+	    values[row] = rs.getInt(column);
+	}
+
+	@Override
+	Object value(int row) {
+	    return boxer.box(values[row]);
+	}
+
+	@Override
+	void resize(int capacity) {
+	    values = Arrays.copyOf(values, capacity);
+	}
+    }
+
+    private static final class LongColumn extends Column {
+	private long[] values;
+
+	LongColumn(Class<?> type, int capacity) {
+	    super(type);
+	    this.values = new long[capacity];
+	}
+
+	@Override
+	void readValue(ResultSet rs, int column, int row) throws SQLException {
+	    values[row] = rs.getLong(column);
+	}
+
+	@Override
+	Object value(int row) {
+	    return values[row];
+	}
+
+	@Override
+	void resize(int capacity) {
+	    values = Arrays.copyOf(values, capacity);
+	}
+    }
+
+    private static final class DoubleColumn extends Column {
+	private double[] values;
+
+	DoubleColumn(Class<?> type, int capacity) {
+	    super(type);
+	    this.values = new double[capacity];
+	}
+
+	@Override
+	void readValue(ResultSet rs, int column, int row) throws SQLException {
+	    values[row] = rs.getDouble(column);
+	}
+
+	@Override
+	Object value(int row) {
+	    return values[row];
+	}
+
+	@Override
+	void resize(int capacity) {
+	    values = Arrays.copyOf(values, capacity);
+	}
+    }
+
+    private static final class FloatColumn extends Column {
+	private float[] values;
+
+	FloatColumn(Class<?> type, int capacity) {
+	    super(type);
+	    this.values = new float[capacity];
+	}
+
+	@Override
+	void readValue(ResultSet rs, int column, int row) throws SQLException {
+	    values[row] = rs.getFloat(column);
+	}
+
+	@Override
+	Object value(int row) {
+	    return values[row];
+	}
+
+	@Override
+	void resize(int capacity) {
+	    values = Arrays.copyOf(values, capacity);
+	}
+    }
+
+    private static final class BooleanColumn extends Column {
+	private final BitSet values = new BitSet();
+
+	BooleanColumn(Class<?> type) {
+	    super(type);
+	}
+
+	@Override
+	void readValue(ResultSet rs, int column, int row) throws SQLException {
+	    values.set(row, rs.getBoolean(column));
+	}
+
+	@Override
+	Object value(int row) {
+	    return values.get(row);
+	}
+
+	@Override
+	void resize(int capacity) {
+	    // The bitmap grows by itself
+	}
+    }
+
+    /**
+     * Dictionary encoded strings. Each row has the index of its value in the
+     *  dictionary of distinct values.
+     */
+    private static final class StringColumn extends Column {
+	private final List<String> dictionary = new ArrayList<>();
+	private Map<String, Integer> codes = new HashMap<>();
+	private int[] values;
+	private String[] decoded;
+
+	StringColumn(Class<?> type, int capacity) {
+	    super(type);
+	    this.values = new int[capacity];
+	}
+
+	@Override
+	void readValue(ResultSet rs, int column, int row) throws SQLException {
+	    String value = rs.getString(column);
+	    if (value == null) {
+		values[row] = -1;
+		return;
+	    }
+	    Integer code = codes.get(value);
+	    if (code == null) {
+		code = dictionary.size();
+		dictionary.add(value);
+		codes.put(value, code);
+	    }
+	    values[row] = code;
+	}
+
+	@Override
+	Object value(int row) {
+	    int code = values[row];
+	    return code == -1 ? null : decoded[code];
+	}
+
+	@Override
+	void resize(int capacity) {
+	    values = Arrays.copyOf(values, capacity);
+	}
+
+	@Override
+	void seal() {
+	    decoded = dictionary.toArray(new String[dictionary.size()]);
+	    codes = null;
+	}
+    }
+
+    private static final class ObjectColumn extends Column {
+	private final JdbcAccessors.ColumnGetter getter;
+	private Object[] values;
+
+	ObjectColumn(Class<?> type, int capacity) {
+	    super(type);
+	    this.getter = JdbcAccessors.getterFor(type);
+	    this.values = new Object[capacity];
+	}
+
+	@Override
+	void readValue(ResultSet rs, int column, int row) throws SQLException {
+	    values[row] = getter.get(rs, column);
+	}
+
+	@Override
+	Object value(int row) {
+	    return values[row];
+	}
+
+	@Override
+	void resize(int capacity) {
+	    values = Arrays.copyOf(values, capacity);
+	}
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Reads the rows of an executeQuery method through a single reused row
+ *  buffer. Each column of the current row is decoded at most once, the first
+ *  time its getter is called, and later calls for the same row return the
+ *  decoded value without going back to the driver. No objects are created for
+ *  the rows, so values must be copied out if they are needed after next().
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Flyweight {
+}
@@ -0,0 +1,79 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Handler of a result set interface for an executeQuery method with the
+ *  {@link Flyweight} annotation. The values of the current row are kept in a
+ *  buffer that is reused for every row. Each slot records the number of the
+ *  row it was decoded for, so moving to the next row only bumps the row number
+ *  instead of clearing the buffer.
+ */
+final class FlyweightResultSet implements InvocationHandler {
+    private final ResultSetDispatch dispatch;
+    private final ResultSet rs;
+    private final int[] columns;
+    private final Connection borrowed;
+    private final Object[] values;
+    private final long[] decodedRow;
+    private long row;
+
+    private FlyweightResultSet(Class<?> resultSetInterface, ResultSet rs, Connection borrowed) throws SQLException {
+	this.dispatch = ResultSetDispatch.forInterface(resultSetInterface);
+	this.rs = rs;
+	this.columns = dispatch.columnIndexes(rs);
+	this.borrowed = borrowed;
+	this.values = new Object[dispatch.slotCount()];
+	this.decodedRow = new long[values.length];
+	Arrays.fill(decodedRow, -1);
+    }
+
+    /**
+     * Returns the result set interface reading the result set, closing the
+     *  borrowed connection, if there is one, with it.
+     */
+    static Object generate(ClassLoader loader, Class<?> resultSetInterface, ResultSet rs, Connection borrowed) throws SQLException {
+	return Proxy.newProxyInstance(loader, new Class[] {resultSetInterface}, new FlyweightResultSet(resultSetInterface, rs, borrowed));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+	int slot = dispatch.slotOf(method);
+	if (slot != -1) {
+	    if (decodedRow[slot] != row) {
+		values[slot] = dispatch.readSlot(rs, columns, slot);
+		decodedRow[slot] = row;
+	    }
+	    return values[slot];
+	}
+
+	switch (method.getName()) {
+	    case "next":
+		row++;
+		return rs.next();
+	    case "close":
+		try {
+		    rs.close();
+		} finally {
+		    if (borrowed != null) {
+			borrowed.close();
+		    }
+		}
+		return null;
+	    case "hashCode":
+		return System.identityHashCode(proxy);
+	    case "equals":
+		return proxy == args[0];
+	    case "toString":
+		return "Flyweight " + method.getDeclaringClass().getName();
+	    default:
+		return dispatch.invoke(rs, columns, method, args);
+	}
+    }
+}
@@ -0,0 +1,494 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Spins implementations of statement and result set interfaces at runtime as
+ *  hidden classes. The generated classes keep the prepared statement, result
+ *  set and resolved column indexes in final fields and call the typed JDBC
+ *  methods directly so that the JIT can inline the getters and setters into
+ *  the caller.
+ *
+ * This needs {@code MethodHandles.Lookup.defineHiddenClass} (Java 15) and the
+ *  optional ASM dependency, which callers must check for before using this
+ *  class. When hidden classes aren't available, the interface has methods
+ *  that can't be generated, or the interface's package can't be accessed,
+ *  no implementation is returned and the caller falls back to the proxy.
+ */
+final class HiddenClassGenerator {
+    private static final Logger LOGGER = Logger.getLogger(HiddenClassGenerator.class.getName());
+
+    private static final String PSTMT = Type.getInternalName(PreparedStatement.class);
+    private static final String RS = Type.getInternalName(ResultSet.class);
+    private static final String FUNCTION = Type.getInternalName(Function.class);
+    private static final String SQL_EXCEPTION = Type.getInternalName(SQLException.class);
+    private static final String UNDECLARED = Type.getInternalName(UndeclaredThrowableException.class);
+    private static final String JDBC_NG = Type.getInternalName(JdbcNg.class);
+
+    private static final Map<Class<?>, Accessor> ACCESSORS = new HashMap<>();
+    private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<>();
+
+    static {
+	WRAPPERS.put(Integer.class, Integer.TYPE);
+	WRAPPERS.put(Long.class, Long.TYPE);
+	WRAPPERS.put(Short.class, Short.TYPE);
+	WRAPPERS.put(Byte.class, Byte.TYPE);
+	WRAPPERS.put(Double.class, Double.TYPE);
+	WRAPPERS.put(Float.class, Float.TYPE);
+	WRAPPERS.put(Boolean.class, Boolean.TYPE);
+
+	accessor(Integer.TYPE, "Int", Types.INTEGER);
+	accessor(Long.TYPE, "Long", Types.BIGINT);
+	accessor(Short.TYPE, "Short", Types.SMALLINT);
+	accessor(Byte.TYPE, "Byte", Types.TINYINT);
+	accessor(Double.TYPE, "Double", Types.DOUBLE);
+	accessor(Float.TYPE, "Float", Types.REAL);
+	accessor(Boolean.TYPE, "Boolean", Types.BOOLEAN);
+	accessor(String.class, "String", Types.VARCHAR);
+	accessor(BigDecimal.class, "BigDecimal", Types.DECIMAL);
+	accessor(java.sql.Date.class, "Date", Types.DATE);
+	accessor(java.sql.Time.class, "Time", Types.TIME);
+	accessor(java.sql.Timestamp.class, "Timestamp", Types.TIMESTAMP);
+	accessor(byte[].class, "Bytes", Types.VARBINARY);
+    }
+
+    private static final Optional<Definer> DEFINER = Definer.lookup();
+
+    private static final ClassValue<Optional<Function<PreparedStatement, Object>>> STATEMENTS = new ClassValue<Optional<Function<PreparedStatement, Object>>>() {
+	@Override
+	protected Optional<Function<PreparedStatement, Object>> computeValue(Class<?> type) {
+	    if (!DEFINER.isPresent()) {
+		return Optional.empty();
+	    }
+
+	    try {
+		return Optional.ofNullable(generateStatement(DEFINER.get(), type));
+	    } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+		LOGGER.log(Level.FINE, "Unable to generate a hidden class for " + type.getName() + ", using the proxy", ex);
+		return Optional.empty();
+	    }
+	}
+    };
+
+    private HiddenClassGenerator() {
+    }
+
+    /**
+     * Returns a factory creating the hidden class implementation of the
+     *  statement interface from its prepared statement, if one could be made.
+     */
+    static Optional<Function<PreparedStatement, Object>> forInterface(Class<?> aInterface) {
+	return STATEMENTS.get(aInterface);
+    }
+
+    private static Function<PreparedStatement, Object> generateStatement(Definer definer, Class<?> aInterface) throws ReflectiveOperationException {
+	String className = Type.getInternalName(aInterface) + "$JdbcNg";
+	ClassWriter cw = classWriter(className, aInterface);
+	Function<ResultSet, Object> resultSetFactory = null;
+	Class<?> writer = TableTags.writes(aInterface).isEmpty() ? null : aInterface;
+
+	cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "pstmt", "L" + PSTMT + ";", null, null).visitEnd();
+	cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "resultSets", "L" + FUNCTION + ";", null, null).visitEnd();
+
+	MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(L" + PSTMT + ";L" + FUNCTION + ";)V", null, null);
+	init.visitCode();
+	init.visitVarInsn(Opcodes.ALOAD, 0);
+	init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+	init.visitVarInsn(Opcodes.ALOAD, 0);
+	init.visitVarInsn(Opcodes.ALOAD, 1);
+	init.visitFieldInsn(Opcodes.PUTFIELD, className, "pstmt", "L" + PSTMT + ";");
+	init.visitVarInsn(Opcodes.ALOAD, 0);
+	init.visitVarInsn(Opcodes.ALOAD, 2);
+	init.visitFieldInsn(Opcodes.PUTFIELD, className, "resultSets", "L" + FUNCTION + ";");
+	init.visitInsn(Opcodes.RETURN);
+	init.visitMaxs(0, 0);
+	init.visitEnd();
+
+	for (Method m: abstractMethods(aInterface)) {
+	    Pos pos = m.getAnnotation(Pos.class);
+	    MethodVisitor mv = method(cw, m);
+	    Label end = tryStart(mv, m);
+
+	    if (pos != null) {
+		if (m.getParameterCount() != 1 || m.getReturnType() != Void.TYPE) {
+		    return null;
+		}
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitFieldInsn(Opcodes.GETFIELD, className, "pstmt", "L" + PSTMT + ";");
+		setter(mv, m.getParameterTypes()[0], pos.value());
+		mv.visitInsn(Opcodes.RETURN);
+	    } else if (m.getParameterCount() != 0) {
+		return null;
+	    } else if (m.getName().equals("execute") && (m.getReturnType() == Boolean.TYPE || m.getReturnType() == Void.TYPE)) {
+		execute(mv, className, "execute", "()Z", m.getReturnType(), writer);
+	    } else if (m.getName().equals("executeUpdate") && (m.getReturnType() == Integer.TYPE || m.getReturnType() == Void.TYPE)) {
+		execute(mv, className, "executeUpdate", "()I", m.getReturnType(), writer);
+	    } else if (m.getName().equals("addBatch") && m.getReturnType() == Void.TYPE) {
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitFieldInsn(Opcodes.GETFIELD, className, "pstmt", "L" + PSTMT + ";");
+		mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, PSTMT, "addBatch", "()V", true);
+		mv.visitInsn(Opcodes.RETURN);
+	    } else if (m.getName().equals("executeBatch") && m.getReturnType() == int[].class) {
+		execute(mv, className, "executeBatch", "()[I", m.getReturnType(), writer);
+	    } else if (m.getName().equals("executeLargeBatch") && m.getReturnType() == long[].class) {
+		execute(mv, className, "executeLargeBatch", "()[J", m.getReturnType(), writer);
+	    } else if (m.getName().equals("executeQuery") && m.getReturnType().isInterface() && JdbcNgResultSet.class.isAssignableFrom(m.getReturnType())
+		    && m.getAnnotation(Prefetch.class) == null && m.getAnnotation(Flyweight.class) == null) {
+		if (resultSetFactory != null) {
+		    return null;
+		}
+		resultSetFactory = generateResultSet(definer, m.getReturnType());
+		if (resultSetFactory == null) {
+		    return null;
+		}
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitFieldInsn(Opcodes.GETFIELD, className, "resultSets", "L" + FUNCTION + ";");
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitFieldInsn(Opcodes.GETFIELD, className, "pstmt", "L" + PSTMT + ";");
+		mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, PSTMT, "executeQuery", "()L" + RS + ";", true);
+		mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, FUNCTION, "apply", "(Ljava/lang/Object;)Ljava/lang/Object;", true);
+		mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(m.getReturnType()));
+		mv.visitInsn(Opcodes.ARETURN);
+	    } else {
+		return null;
+	    }
+
+	    tryEnd(mv, end);
+	}
+	cw.visitEnd();
+
+	MethodHandle constructor = definer.define(aInterface, cw.toByteArray(), MethodType.methodType(void.class, PreparedStatement.class, Function.class));
+	final Function<ResultSet, Object> resultSets = resultSetFactory;
+	return pstmt -> {
+	    try {
+		if (resultSets == null) {
+		    return constructor.invoke(pstmt, resultSets);
+		}
+		// The statement stays leased while the result set is open
+		Function<ResultSet, Object> opened = rs -> resultSets.apply(JdbcNg.opened(pstmt, rs));
+		return constructor.invoke(pstmt, opened);
+	    } catch (RuntimeException | Error ex) {
+		throw ex;
+	    } catch (Throwable ex) {
+		throw new UndeclaredThrowableException(ex);
+	    }
+	};
+    }
+
+    private static Function<ResultSet, Object> generateResultSet(Definer definer, Class<?> resultSetInterface) throws ReflectiveOperationException {
+	String className = Type.getInternalName(resultSetInterface) + "$JdbcNg";
+	ClassWriter cw = classWriter(className, resultSetInterface);
+	List<Method> getters = new ArrayList<>();
+
+	cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "rs", "L" + RS + ";", null, null).visitEnd();
+
+	for (Method m: abstractMethods(resultSetInterface)) {
+	    MethodVisitor mv = method(cw, m);
+	    Label end = tryStart(mv, m);
+
+	    if (m.getParameterCount() != 0) {
+		return null;
+	    } else if (m.getName().equals("next") && m.getReturnType() == Boolean.TYPE) {
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitFieldInsn(Opcodes.GETFIELD, className, "rs", "L" + RS + ";");
+		mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, RS, "next", "()Z", true);
+		mv.visitInsn(Opcodes.IRETURN);
+	    } else if (m.getName().equals("close") && m.getReturnType() == Void.TYPE) {
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitFieldInsn(Opcodes.GETFIELD, className, "rs", "L" + RS + ";");
+		mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, RS, "close", "()V", true);
+		mv.visitInsn(Opcodes.RETURN);
+	    } else if (ResultSetDispatch.isGetter(m) && m.getReturnType() != Void.TYPE) {
+		String column = "c" + getters.size();
+		getters.add(m);
+		cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, column, "I", null, null).visitEnd();
+
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitFieldInsn(Opcodes.GETFIELD, className, "rs", "L" + RS + ";");
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitFieldInsn(Opcodes.GETFIELD, className, column, "I");
+		getter(mv, className, m.getReturnType());
+	    } else {
+		return null;
+	    }
+
+	    tryEnd(mv, end);
+	}
+
+	MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(L" + RS + ";[I)V", null, null);
+	init.visitCode();
+	init.visitVarInsn(Opcodes.ALOAD, 0);
+	init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+	init.visitVarInsn(Opcodes.ALOAD, 0);
+	init.visitVarInsn(Opcodes.ALOAD, 1);
+	init.visitFieldInsn(Opcodes.PUTFIELD, className, "rs", "L" + RS + ";");
+	for (int i = 0; i < getters.size(); i++) {
+	    init.visitVarInsn(Opcodes.ALOAD, 0);
+	    init.visitVarInsn(Opcodes.ALOAD, 2);
+	    init.visitLdcInsn(i);
+	    init.visitInsn(Opcodes.IALOAD);
+	    init.visitFieldInsn(Opcodes.PUTFIELD, className, "c" + i, "I");
+	}
+	init.visitInsn(Opcodes.RETURN);
+	init.visitMaxs(0, 0);
+	init.visitEnd();
+	cw.visitEnd();
+
+	// Columns are resolved with the same rules, and cache, as the proxy
+	final ResultSetDispatch dispatch = ResultSetDispatch.forInterface(resultSetInterface);
+	final MethodHandle constructor = definer.define(resultSetInterface, cw.toByteArray(), MethodType.methodType(void.class, ResultSet.class, int[].class));
+	return rs -> {
+	    try {
+		return constructor.invoke(rs, dispatch.columnIndexes(rs));
+	    } catch (RuntimeException | Error ex) {
+		throw ex;
+	    } catch (Throwable ex) {
+		throw new UndeclaredThrowableException(ex);
+	    }
+	};
+    }
+
+    private static void execute(MethodVisitor mv, String className, String name, String descriptor, Class<?> returnType, Class<?> writer) {
+	mv.visitVarInsn(Opcodes.ALOAD, 0);
+	mv.visitFieldInsn(Opcodes.GETFIELD, className, "pstmt", "L" + PSTMT + ";");
+	mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, PSTMT, name, descriptor, true);
+	if (writer != null) {
+	    // JdbcNg.written(result, aInterface, pstmt) returns the result
+	    String result = descriptor.substring(2);
+	    mv.visitLdcInsn(Type.getType(writer));
+	    mv.visitVarInsn(Opcodes.ALOAD, 0);
+	    mv.visitFieldInsn(Opcodes.GETFIELD, className, "pstmt", "L" + PSTMT + ";");
+	    mv.visitMethodInsn(Opcodes.INVOKESTATIC, JDBC_NG, "written", "(" + result + "Ljava/lang/Class;L" + PSTMT + ";)" + result, false);
+	}
+	if (returnType == Void.TYPE) {
+	    mv.visitInsn(Opcodes.POP);
+	    mv.visitInsn(Opcodes.RETURN);
+	} else {
+	    mv.visitInsn(Type.getType(returnType).getOpcode(Opcodes.IRETURN));
+	}
+    }
+
+    /**
+     * Emits the typed setter call for the first parameter, with the prepared
+     *  statement on the stack.
+     */
+    private static void setter(MethodVisitor mv, Class<?> type, int position) {
+	Accessor accessor = ACCESSORS.get(type);
+	Class<?> primitive = primitiveOf(type);
+
+	if (accessor == null && primitive != null) {
+	    // Wrapper types bind SQL NULL for null
+	    Label notNull = new Label();
+	    Label done = new Label();
+	    accessor = ACCESSORS.get(primitive);
+
+	    mv.visitVarInsn(Opcodes.ALOAD, 1);
+	    mv.visitJumpInsn(Opcodes.IFNONNULL, notNull);
+	    mv.visitLdcInsn(position);
+	    mv.visitLdcInsn(accessor.sqlType);
+	    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, PSTMT, "setNull", "(II)V", true);
+	    mv.visitJumpInsn(Opcodes.GOTO, done);
+	    mv.visitLabel(notNull);
+	    mv.visitLdcInsn(position);
+	    mv.visitVarInsn(Opcodes.ALOAD, 1);
+	    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(type), primitive.getName() + "Value", "()" + Type.getDescriptor(primitive), false);
+	    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, PSTMT, "set" + accessor.name, "(I" + Type.getDescriptor(primitive) + ")V", true);
+	    mv.visitLabel(done);
+	    return;
+	}
+
+	mv.visitLdcInsn(position);
+	if (accessor == null) {
+	    mv.visitVarInsn(Opcodes.ALOAD, 1);
+	    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, PSTMT, "setObject", "(ILjava/lang/Object;)V", true);
+	} else {
+	    mv.visitVarInsn(Type.getType(type).getOpcode(Opcodes.ILOAD), 1);
+	    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, PSTMT, "set" + accessor.name, "(I" + Type.getDescriptor(type) + ")V", true);
+	}
+    }
+
+    /**
+     * Emits the typed getter call and return, with the result set and the
+     *  column index on the stack.
+     */
+    private static void getter(MethodVisitor mv, String className, Class<?> type) {
+	Accessor accessor = ACCESSORS.get(type);
+	Class<?> primitive = primitiveOf(type);
+
+	if (accessor == null && primitive != null) {
+	    // Wrapper types return null when the column was SQL NULL
+	    Label notNull = new Label();
+	    Type primitiveType = Type.getType(primitive);
+	    accessor = ACCESSORS.get(primitive);
+
+	    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, RS, "get" + accessor.name, "(I)" + primitiveType.getDescriptor(), true);
+	    mv.visitVarInsn(primitiveType.getOpcode(Opcodes.ISTORE), 1);
+	    mv.visitVarInsn(Opcodes.ALOAD, 0);
+	    mv.visitFieldInsn(Opcodes.GETFIELD, className, "rs", "L" + RS + ";");
+	    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, RS, "wasNull", "()Z", true);
+	    mv.visitJumpInsn(Opcodes.IFEQ, notNull);
+	    mv.visitInsn(Opcodes.ACONST_NULL);
+	    mv.visitInsn(Opcodes.ARETURN);
+	    mv.visitLabel(notNull);
+	    mv.visitVarInsn(primitiveType.getOpcode(Opcodes.ILOAD), 1);
+	    mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(type), "valueOf", "(" + primitiveType.getDescriptor() + ")" + Type.getDescriptor(type), false);
+	    mv.visitInsn(Opcodes.ARETURN);
+	} else if (accessor == null) {
+	    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, RS, "getObject", "(I)Ljava/lang/Object;", true);
+	    mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
+	    mv.visitInsn(Opcodes.ARETURN);
+	} else {
+	    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, RS, "get" + accessor.name, "(I)" + Type.getDescriptor(type), true);
+	    mv.visitInsn(Type.getType(type).getOpcode(Opcodes.IRETURN));
+	}
+    }
+
+    private static ClassWriter classWriter(String className, Class<?> aInterface) {
+	ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+	    @Override
+	    protected String getCommonSuperClass(String type1, String type2) {
+		// The only merged frames hold JDK types, avoid loading classes here
+		return type1.equals(type2) ? type1 : "java/lang/Object";
+	    }
+	};
+	cw.visit(Opcodes.V1_8, Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null, "java/lang/Object", new String[] {Type.getInternalName(aInterface)});
+	return cw;
+    }
+
+    private static MethodVisitor method(ClassWriter cw, Method m) {
+	String[] exceptions = new String[m.getExceptionTypes().length];
+	for (int i = 0; i < exceptions.length; i++) {
+	    exceptions[i] = Type.getInternalName(m.getExceptionTypes()[i]);
+	}
+	MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, m.getName(), Type.getMethodDescriptor(m), null, exceptions);
+	mv.visitCode();
+	return mv;
+    }
+
+    /**
+     * Methods that don't declare SQLException wrap it in an
+     *  UndeclaredThrowableException, which is what the proxy does. Returns the
+     *  label of the handler, or null if the method declares SQLException.
+     */
+    private static Label tryStart(MethodVisitor mv, Method m) {
+	for (Class<?> exception: m.getExceptionTypes()) {
+	    if (exception.isAssignableFrom(SQLException.class)) {
+		return null;
+	    }
+	}
+
+	Label start = new Label();
+	Label handler = new Label();
+	mv.visitTryCatchBlock(start, handler, handler, SQL_EXCEPTION);
+	mv.visitLabel(start);
+	return handler;
+    }
+
+    private static void tryEnd(MethodVisitor mv, Label handler) {
+	if (handler != null) {
+	    mv.visitLabel(handler);
+	    mv.visitTypeInsn(Opcodes.NEW, UNDECLARED);
+	    mv.visitInsn(Opcodes.DUP_X1);
+	    mv.visitInsn(Opcodes.SWAP);
+	    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, UNDECLARED, "<init>", "(Ljava/lang/Throwable;)V", false);
+	    mv.visitInsn(Opcodes.ATHROW);
+	}
+	mv.visitMaxs(0, 0);
+	mv.visitEnd();
+    }
+
+    private static List<Method> abstractMethods(Class<?> aInterface) {
+	List<Method> methods = new ArrayList<>();
+	for (Method m: aInterface.getMethods()) {
+	    if (Modifier.isAbstract(m.getModifiers())) {
+		methods.add(m);
+	    }
+	}
+	return methods;
+    }
+
+    private static Class<?> primitiveOf(Class<?> wrapper) {
+	return WRAPPERS.get(wrapper);
+    }
+
+    private static void accessor(Class<?> type, String name, int sqlType) {
+	ACCESSORS.put(type, new Accessor(name, sqlType));
+    }
+
+    /**
+     * The suffix of the typed PreparedStatement setter and ResultSet getter for
+     *  a Java type and the SQL type used to bind null.
+     */
+    private static final class Accessor {
+	final String name;
+	final int sqlType;
+
+	Accessor(String name, int sqlType) {
+	    this.name = name;
+	    this.sqlType = sqlType;
+	}
+    }
+
+    /**
+     * Defines hidden classes through the Java 15 lookup methods, which are
+     *  called reflectively because the library is compiled for Java 8.
+     */
+    private static final class Definer {
+	private final Method privateLookupIn;
+	private final Method defineHiddenClass;
+	private final Object noOptions;
+
+	private Definer(Method privateLookupIn, Method defineHiddenClass, Object noOptions) {
+	    this.privateLookupIn = privateLookupIn;
+	    this.defineHiddenClass = defineHiddenClass;
+	    this.noOptions = noOptions;
+	}
+
+	static Optional<Definer> lookup() {
+	    try {
+		Class<?> classOption = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+		Object noOptions = Array.newInstance(classOption, 0);
+		return Optional.of(new Definer(
+			MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class),
+			MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, Boolean.TYPE, noOptions.getClass()),
+			noOptions));
+	    } catch (ClassNotFoundException | NoSuchMethodException ex) {
+		return Optional.empty();
+	    }
+	}
+
+	/**
+	 * Defines the class in the package of the interface and returns its
+	 *  constructor.
+	 */
+	MethodHandle define(Class<?> aInterface, byte[] bytes, MethodType constructorType) throws ReflectiveOperationException {
+	    MethodHandles.Lookup lookup = (MethodHandles.Lookup) privateLookupIn.invoke(null, aInterface, MethodHandles.lookup());
+	    MethodHandles.Lookup hidden = (MethodHandles.Lookup) defineHiddenClass.invoke(lookup, bytes, true, noOptions);
+	    return hidden.findConstructor(hidden.lookupClass(), constructorType);
+	}
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites a positional argument of the SQL text into a list of them, such as
+ *  the one of {@code WHERE ID IN (?)}. Lists are only prepared in power of two
+ *  sizes, with the last value repeated to fill the rest, so that an interface
+ *  has a few different statements that each stay in the statement caches.
+ */
+final class InList {
+    private InList() {
+    }
+
+    /**
+     * The size of the statement for a list of values, the next power of two.
+     */
+    static int bucket(int size) {
+	if (size < 1) {
+	    throw new IllegalArgumentException("A list needs at least one value.");
+	}
+	return size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    /**
+     * The offsets of the positional argument markers in the SQL text, leaving
+     *  out the ones in string literals, quoted identifiers and comments.
+     */
+    static int[] placeholders(String sql) {
+	List<Integer> offsets = new ArrayList<>();
+	char quote = 0;
+	for (int i = 0; i < sql.length(); i++) {
+	    char c = sql.charAt(i);
+	    if (quote != 0) {
+		if (c == quote) {
+		    quote = 0;
+		}
+	    } else if (c == '\'' || c == '"') {
+		quote = c;
+	    } else if (sql.startsWith("--", i)) {
+		int end = sql.indexOf('\n', i);
+		i = end == -1 ? sql.length() : end;
+	    } else if (sql.startsWith("/*", i)) {
+		int end = sql.indexOf("*/", i + 2);
+		i = end == -1 ? sql.length() : end + 1;
+	    } else if (c == '?') {
+		offsets.add(i);
+	    }
+	}
+
+	int[] result = new int[offsets.size()];
+	for (int i = 0; i < result.length; i++) {
+	    result[i] = offsets.get(i);
+	}
+	return result;
+    }
+
+    /**
+     * Rewrites the SQL text so that each positional argument has the given
+     *  number of markers. The positions of the arguments after a list move up
+     *  by the size of the list less one.
+     *
+     * @param sizes the number of markers of each position, starting at index 1.
+     *  Positions past the end have one.
+     */
+    static String expand(String sql, int[] sizes) {
+	int[] offsets = placeholders(sql);
+	if (offsets.length < sizes.length - 1) {
+	    throw new IllegalArgumentException("Statement has " + offsets.length + " positional arguments rather than " + (sizes.length - 1) + ".");
+	}
+
+	StringBuilder expanded = new StringBuilder(sql.length() + 16);
+	int start = 0;
+	for (int i = 0; i < offsets.length; i++) {
+	    expanded.append(sql, start, offsets[i]).append('?');
+	    for (int j = 1; i + 1 < sizes.length && j < sizes[i + 1]; j++) {
+		expanded.append(", ?");
+	    }
+	    start = offsets[i] + 1;
+	}
+	return expanded.append(sql, start, sql.length()).toString();
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Typed accessors for positional arguments and result set columns. The accessor
+ *  is chosen once from the declared Java type of the interface method so that
+ *  the driver is called with the matching typed setter or getter instead of
+ *  {@link PreparedStatement#setObject(int, java.lang.Object)} and
+ *  {@link ResultSet#getObject(int)}.
+ *
+ * Getters for primitive types return the JDBC default (zero or false) for SQL
+ *  NULL. Getters for the wrapper types check {@link ResultSet#wasNull()} and
+ *  return null.
+ */
+final class JdbcAccessors {
+    private JdbcAccessors() {
+    }
+
+    interface ParameterSetter {
+	void set(PreparedStatement pstmt, int position, Object value) throws SQLException;
+    }
+
+    interface ColumnGetter {
+	Object get(ResultSet rs, int column) throws SQLException;
+    }
+
+    static ParameterSetter setterFor(Class<?> type) {
+	if (type == Integer.TYPE) {
+	    return (pstmt, position, value) -> pstmt.setInt(position, (Integer) value);
+	} else if (type == Long.TYPE) {
+	    return (pstmt, position, value) -> pstmt.setLong(position, (Long) value);
+	} else if (type == Short.TYPE) {
+	    return (pstmt, position, value) -> pstmt.setShort(position, (Short) value);
+	} else if (type == Byte.TYPE) {
+	    return (pstmt, position, value) -> pstmt.setByte(position, (Byte) value);
+	} else if (type == Double.TYPE) {
+	    return (pstmt, position, value) -> pstmt.setDouble(position, (Double) value);
+	} else if (type == Float.TYPE) {
+	    return (pstmt, position, value) -> pstmt.setFloat(position, (Float) value);
+	} else if (type == Boolean.TYPE) {
+	    return (pstmt, position, value) -> pstmt.setBoolean(position, (Boolean) value);
+	} else if (type == Integer.class) {
+	    return nullable(Types.INTEGER, (pstmt, position, value) -> pstmt.setInt(position, (Integer) value));
+	} else if (type == Long.class) {
+	    return nullable(Types.BIGINT, (pstmt, position, value) -> pstmt.setLong(position, (Long) value));
+	} else if (type == Short.class) {
+	    return nullable(Types.SMALLINT, (pstmt, position, value) -> pstmt.setShort(position, (Short) value));
+	} else if (type == Byte.class) {
+	    return nullable(Types.TINYINT, (pstmt, position, value) -> pstmt.setByte(position, (Byte) value));
+	} else if (type == Double.class) {
+	    return nullable(Types.DOUBLE, (pstmt, position, value) -> pstmt.setDouble(position, (Double) value));
+	} else if (type == Float.class) {
+	    return nullable(Types.REAL, (pstmt, position, value) -> pstmt.setFloat(position, (Float) value));
+	} else if (type == Boolean.class) {
+	    return nullable(Types.BOOLEAN, (pstmt, position, value) -> pstmt.setBoolean(position, (Boolean) value));
+	} else if (type == String.class) {
+	    return (pstmt, position, value) -> pstmt.setString(position, (String) value);
+	} else if (type == BigDecimal.class) {
+	    return (pstmt, position, value) -> pstmt.setBigDecimal(position, (BigDecimal) value);
+	} else if (type == java.sql.Date.class) {
+	    return (pstmt, position, value) -> pstmt.setDate(position, (java.sql.Date) value);
+	} else if (type == java.sql.Time.class) {
+	    return (pstmt, position, value) -> pstmt.setTime(position, (java.sql.Time) value);
+	} else if (type == java.sql.Timestamp.class) {
+	    return (pstmt, position, value) -> pstmt.setTimestamp(position, (java.sql.Timestamp) value);
+	} else if (type == byte[].class) {
+	    return (pstmt, position, value) -> pstmt.setBytes(position, (byte[]) value);
+	}
+
+	return (pstmt, position, value) -> pstmt.setObject(position, value);
+    }
+
+    static ColumnGetter getterFor(Class<?> type) {
+	if (type == Integer.TYPE) {
+	    return (rs, column) -> rs.getInt(column);
+	} else if (type == Long.TYPE) {
+	    return (rs, column) -> rs.getLong(column);
+	} else if (type == Short.TYPE) {
+	    return (rs, column) -> rs.getShort(column);
+	} else if (type == Byte.TYPE) {
+	    return (rs, column) -> rs.getByte(column);
+	} else if (type == Double.TYPE) {
+	    return (rs, column) -> rs.getDouble(column);
+	} else if (type == Float.TYPE) {
+	    return (rs, column) -> rs.getFloat(column);
+	} else if (type == Boolean.TYPE) {
+	    return (rs, column) -> rs.getBoolean(column);
+	} else if (type == Integer.class) {
+	    return (rs, column) -> {
+		int value = rs.getInt(column);
+		return rs.wasNull() ? null : value;
+	    };
+	} else if (type == Long.class) {
+	    return (rs, column) -> {
+		long value = rs.getLong(column);
+		return rs.wasNull() ? null : value;
+	    };
+	} else if (type == Short.class) {
+	    return (rs, column) -> {
+		short value = rs.getShort(column);
+		return rs.wasNull() ? null : value;
+	    };
+	} else if (type == Byte.class) {
+	    return (rs, column) -> {
+		byte value = rs.getByte(column);
+		return rs.wasNull() ? null : value;
+	    };
+	} else if (type == Double.class) {
+	    return (rs, column) -> {
+		double value = rs.getDouble(column);
+		return rs.wasNull() ? null : value;
+	    };
+	} else if (type == Float.class) {
+	    return (rs, column) -> {
+		float value = rs.getFloat(column);
+		return rs.wasNull() ? null : value;
+	    };
+	} else if (type == Boolean.class) {
+	    return (rs, column) -> {
+		boolean value = rs.getBoolean(column);
+		return rs.wasNull() ? null : value;
+	    };
+	} else if (type == String.class) {
+	    return (rs, column) -> rs.getString(column);
+	} else if (type == BigDecimal.class) {
+	    return (rs, column) -> rs.getBigDecimal(column);
+	} else if (type == java.sql.Date.class) {
+	    return (rs, column) -> rs.getDate(column);
+	} else if (type == java.sql.Time.class) {
+	    return (rs, column) -> rs.getTime(column);
+	} else if (type == java.sql.Timestamp.class) {
+	    return (rs, column) -> rs.getTimestamp(column);
+	} else if (type == byte[].class) {
+	    return (rs, column) -> rs.getBytes(column);
+	}
+
+	return (rs, column) -> rs.getObject(column);
+    }
+
+    private static ParameterSetter nullable(final int sqlType, final ParameterSetter setter) {
+	return (pstmt, position, value) -> {
+	    if (value == null) {
+		pstmt.setNull(position, sqlType);
+	    } else {
+		setter.set(pstmt, position, value);
+	    }
+	};
+    }
+}
@@ -3,19 +3,31 @@ package com.github.sirnewton01.jdbc.ng;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.sql.DataSource;
 import org.apache.commons.io.IOUtils;
 
 /**
@@ -41,11 +53,22 @@ import org.apache.commons.io.IOUtils;
  * The Java interface must have an {@link PreparedStatement#execute()},
  *  {@link PreparedStatement#executeQuery()} or {@link PreparedStatement#executeUpdate()}
  *  method, which executes the statement depending on the nature of the statement.
+ *  Updates can be batched by adding void addBatch() and int[] executeBatch() or
+ *  long[] executeLargeBatch() methods, which work like the PreparedStatement
+ *  methods of the same names. An executeAll() method accepting an Iterable or
+ *  Stream of row objects inserts them all in batches sized by its {@link Batch}
+ *  annotation. The row object's {@link Pos} annotated getters supply the
+ *  positional arguments. Inserts can be rewritten into multi-row VALUES
+ *  statements using the annotation for drivers that send batches row by row.
  * 
  * If there are positional arguments in the statement the Java interface can have
  *  setter methods with names and types for those arguments. The {@link Pos} annotation
  *  indicates the argument position for each setter method. The caller sets each
- *  argument in the natural Java way.
+ *  argument in the natural Java way. A setter that takes a Collection or an
+ *  array other than byte[] sets the list of an IN predicate, such as
+ *  {@code WHERE ID IN (?)}, with a marker for each value. The list is
+ *  padded to a power of two size by repeating its last value so that there
+ *  are few different statements to prepare and cache.
  * 
  * If the Java interface implements the executeQuery() method then it returns a
  *  result set interface that extends {@link JdbcNgResultSet}. The result set
@@ -55,6 +78,25 @@ import org.apache.commons.io.IOUtils;
  *  the name of the column in the statement. Note that reserved characters such as
  *  '.' are converted to '_'. The result set interface implements AutoCloseable
  *  so that it can be placed into a try-with-resources block preventing leaks.
+ *  With the {@link Prefetch} annotation on executeQuery() a separate thread
+ *  reads the rows ahead of the caller into a bounded buffer.
+ *  With the {@link Flyweight} annotation the result set decodes each column of
+ *  the current row once into a buffer that is reused for every row.
+ *  A result set interface can also have a forEachParallel(Consumer, int) method
+ *  that reads chunks of rows and processes each chunk on a fork-join pool
+ *  while the next one is read.
+ *  An executeStream() method returns the rows as a {@link Stream} instead,
+ *  which reads the result set as the stream is consumed and closes it when the
+ *  stream is closed. Rows of an interface that doesn't extend JdbcNgResultSet
+ *  are copied so that they can be collected.
+ *  An executeColumnar() method reads all of the rows into a {@link ColumnarResult},
+ *  which keeps each column in a primitive array or, for strings, a dictionary
+ *  so that large results take far less memory than a list of row objects.
+ *  Rows can also be Java records or other immutable value classes, whose
+ *  constructor parameters are matched to the columns by name: executeQuery()
+ *  can return a List of them, executeStream() a Stream of them and
+ *  forEachParallel() can consume them. A current() method of a result set
+ *  interface returning a value class creates one from the current row.
  * 
  * It is possible for discrepancies in names, positions and types between the
  *  Java interfaces and the SQL statement in the file. Since these would normally
@@ -64,92 +106,600 @@ import org.apache.commons.io.IOUtils;
  *  This validate method can be used to iterate on all known JDBC NG interfaces
  *  in early startup routines or even in build automation scripts so that any
  *  discrepancies can be caught earlier in the release cycle.
+ * 
+ * The optional jdbc-ng-processor annotation processor generates concrete
+ *  implementations of the interfaces at compile time. The {@link #generate(java.sql.Connection, java.lang.Class) }
+ *  method uses the generated class when it is present, which avoids the
+ *  reflective dispatch of the proxy. Otherwise it tries to generate one at
+ *  runtime as a hidden class and falls back to the proxy.
+ * 
+ * Prepared statements are cached for each connection so that generating an
+ *  implementation of the same interface again with the same connection
+ *  reuses the statement. Each implementation has a statement of its own, which
+ *  goes back to the cache once the implementation is garbage collected, so
+ *  the result sets of an implementation should be read while it's in use.
+ * 
+ * With the {@link ResultCache} annotation on the interface the rows of
+ *  executeQuery() are cached for each combination of positional argument
+ *  values and answered from memory, without the connection, until they
+ *  expire. Such interfaces are always implemented with a proxy. The rows are
+ *  dropped when a JDBC-NG interface writes to a table that the query reads.
+ *  The tables are found in the SQL text, and can be declared with {@link Tables}.
+ *  Without auto-commit the rows are dropped by {@link #commit(java.sql.Connection) }
+ *  and kept by {@link #rollback(java.sql.Connection) }. With the
+ *  {@link SingleFlight} annotation callers that run executeQuery() with the
+ *  same arguments at the same time share one query and its rows, and the
+ *  interface is implemented with a proxy as well.
+ * 
+ * Point lookups by key from many callers can be gathered into queries of
+ *  many keys with a {@link BatchLoader} from {@link #loader(javax.sql.DataSource, java.lang.Class) }.
  */
 public class JdbcNg {
-    private static final Map<Class, String> PROCESSED_INTERFACES = Collections.synchronizedMap(new HashMap());
+    /**
+     * The SQL text of each interface's statement. A ClassValue doesn't keep the
+     *  interface's class loader alive, so redeployed applications don't leak.
+     */
+    private static final ClassValue<String> STATEMENT_TEXT = new ClassValue<String>() {
+	@Override
+	protected String computeValue(Class<?> type) {
+	    STATEMENT_TEXT_MISSES.increment();
+	    try {
+		return readStatementText(type);
+	    } catch (IOException ex) {
+		throw new UncheckedIOException(ex);
+	    }
+	}
+    };
+    private static final LongAdder STATEMENT_TEXT_LOOKUPS = new LongAdder();
+    private static final LongAdder STATEMENT_TEXT_MISSES = new LongAdder();
     
-    public static <T> T generateProxy(Connection dbConn, final Class<T> aInterface) throws IOException, SQLException {
+    /**
+     * Suffix of the classes generated by the jdbc-ng-processor.
+     */
+    static final String GENERATED_SUFFIX = "_JdbcNg";
+    
+    private static final boolean ASM_AVAILABLE = isClassAvailable("org.objectweb.asm.ClassWriter");
+    
+    /**
+     * Whether the interface is only implemented by the proxy, whatever its
+     *  methods, because it caches its results, has list arguments, whose
+     *  statement depends on their sizes, or can be closed. The
+     *  jdbc-ng-processor applies the same rules when it generates classes.
+     */
+    static boolean requiresProxy(Class<?> aInterface) {
+	return QueryResultCache.forInterface(aInterface) != null
+		|| ListArguments.forInterface(aInterface) != null
+		|| StatementDispatch.forInterface(aInterface).isCloseable();
+    }
+    
+    private static final ClassValue<Optional<Function<PreparedStatement, Object>>> GENERATED_CLASSES = new ClassValue<Optional<Function<PreparedStatement, Object>>>() {
+	@Override
+	protected Optional<Function<PreparedStatement, Object>> computeValue(Class<?> type) {
+	    if (requiresProxy(type)) {
+		return Optional.empty();
+	    }
+	    
+	    String name = type.getName();
+	    String pkg = name.substring(0, name.lastIndexOf('.') + 1);
+	    String generatedName = pkg + name.substring(pkg.length()).replace('$', '_') + GENERATED_SUFFIX;
+	    
+	    try {
+		Class<?> generated = Class.forName(generatedName, false, type.getClassLoader());
+		if (type.isAssignableFrom(generated)) {
+		    final Constructor<?> constructor = generated.getConstructor(PreparedStatement.class);
+		    constructor.setAccessible(true);
+		    return Optional.of(pstmt -> {
+			try {
+			    return constructor.newInstance(pstmt);
+			} catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+			    throw new IllegalStateException("Unable to instantiate generated class for " + type.getName(), ex);
+			}
+		    });
+		}
+	    } catch (ClassNotFoundException | NoSuchMethodException ex) {
+		// Not generated at compile time
+	    }
+	    
+	    if (ASM_AVAILABLE) {
+		return HiddenClassGenerator.forInterface(type);
+	    }
+	    
+	    return Optional.empty();
+	}
+    };
+    
+    /**
+     * Creates an implementation of the interface for the statement. The class
+     *  generated by the jdbc-ng-processor is used if there is one. Otherwise, on
+     *  Java 15 or later with the optional ASM library present, an implementation
+     *  is generated at runtime as a hidden class. When neither is possible this
+     *  is the same as {@link #generateProxy(java.sql.Connection, java.lang.Class) }.
+     */
+    public static <T> T generate(Connection dbConn, final Class<T> aInterface) throws IOException, SQLException {
+	Optional<Function<PreparedStatement, Object>> generated = GENERATED_CLASSES.get(aInterface);
+	if (!generated.isPresent()) {
+	    return generateProxy(dbConn, aInterface);
+	}
+	
 	PreparedStatement pstmt = loadPreparedStatement(aInterface, dbConn);
+	T implementation = aInterface.cast(generated.get().apply(pstmt));
+	StatementCache.checkinWhenUnreachable(implementation, dbConn, pstmt);
+	return implementation;
+    }
+    
+    public static <T> T generateProxy(Connection dbConn, final Class<T> aInterface) throws IOException, SQLException {
+	final StatementDispatch dispatch = StatementDispatch.forInterface(aInterface);
+	dispatch.checkConnectionBound(aInterface);
+	final PreparedStatement pstmt = loadPreparedStatement(aInterface, dbConn);
 	
-	return (T) Proxy.newProxyInstance(aInterface.getClassLoader(), new Class[] {aInterface}, new InvocationHandler() {
+	InvocationHandler handler = new InvocationHandler() {
 	    @Override
 	    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-		Pos pos = method.getAnnotation(Pos.class);
-		
-		// Positional argument setter method
-		if (pos != null) {
-		    pstmt.setObject(pos.value(), args[0]);
-		    return null;
-		}
-		
-		// Execute query returns a result set
-		if (method.getName().equals("executeQuery")) {
-		    final ResultSet rs = pstmt.executeQuery();
-		    
-		    return Proxy.newProxyInstance(aInterface.getClassLoader(), new Class[] {method.getReturnType()}, new InvocationHandler() {
-			@Override
-			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-			    if (method.getName().equals("next")) {
-				return rs.next();
-			    }
-			    
-			    if (method.getName().equals("close")) {
-				rs.close();
-				return null;
-			    }
-			    
-			    String columnName = method.getName().substring(3);
-			    columnName = columnName.substring(0, 1).toLowerCase() + columnName.substring(1);
-			    
-			    return rs.getObject(columnName);
-			}
-		    });
-		}
-		
-		if (method.getName().equals("execute")) {
-		    return pstmt.execute();
-		}
-		
-		if (method.getName().equals("executeUpdate")) {
-		    return pstmt.executeUpdate();
+		return dispatch.invoke(pstmt, method, args);
+	    }
+	};
+	QueryResultCache.StatementSource statement = () -> pstmt;
+	
+	// The statement depends on the sizes of the lists
+	ListArguments lists = ListArguments.forInterface(aInterface);
+	ListArguments.Handler listHandler = null;
+	if (lists != null) {
+	    listHandler = new ListArguments.Handler(lists, dispatch, dbConn, pstmt, loadStatementText(aInterface));
+	    handler = listHandler;
+	    statement = listHandler::prepare;
+	}
+	
+	QueryResultCache cache = QueryResultCache.forInterface(aInterface);
+	if (cache != null) {
+	    handler = new QueryResultCache.Handler(cache, handler, statement);
+	}
+	
+	if (dispatch.isCloseable()) {
+	    handler = new ClosingHandler(aInterface, handler, pstmt, listHandler);
+	}
+	
+	T proxy = (T) Proxy.newProxyInstance(aInterface.getClassLoader(), new Class[] {aInterface}, handler);
+	StatementCache.checkinWhenUnreachable(proxy, dbConn, pstmt);
+	return proxy;
+    }
+    
+    /**
+     * Handler of a statement interface that declares close(). Closing the
+     *  handle checks its statements back into the statement cache, after which
+     *  the handle can't be used.
+     */
+    private static final class ClosingHandler implements InvocationHandler {
+	private final Class<?> aInterface;
+	private final InvocationHandler handler;
+	private final PreparedStatement pstmt;
+	private final ListArguments.Handler listHandler;
+	private volatile boolean closed;
+	
+	ClosingHandler(Class<?> aInterface, InvocationHandler handler, PreparedStatement pstmt, ListArguments.Handler listHandler) {
+	    this.aInterface = aInterface;
+	    this.handler = handler;
+	    this.pstmt = pstmt;
+	    this.listHandler = listHandler;
+	}
+	
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+	    if (StatementDispatch.isClose(method)) {
+		if (!closed) {
+		    closed = true;
+		    StatementCache.release(pstmt);
+		    if (listHandler != null) {
+			listHandler.release();
+		    }
 		}
-		
 		return null;
 	    }
+	    if (closed) {
+		throw new IllegalStateException("The statement " + aInterface.getName() + " is closed.");
+	    }
+	    return handler.invoke(proxy, method, args);
+	}
+    }
+    
+    static Object generateResultSetProxy(ClassLoader loader, Class<?> resultSetInterface, final ResultSet rs) throws SQLException {
+	final ResultSetDispatch dispatch = ResultSetDispatch.forInterface(resultSetInterface);
+	final int[] columns = dispatch.columnIndexes(rs);
+	
+	return Proxy.newProxyInstance(loader, new Class[] {resultSetInterface}, new InvocationHandler() {
+	    @Override
+	    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		return dispatch.invoke(rs, columns, method, args);
+	    }
+	});
+    }
+    
+    /**
+     * Generates a result set proxy that also closes the connection that it
+     *  borrowed when the result set is closed.
+     */
+    static Object generateResultSetProxy(ClassLoader loader, Class<?> resultSetInterface, final ResultSet rs, final Connection borrowed) throws SQLException {
+	final ResultSetDispatch dispatch = ResultSetDispatch.forInterface(resultSetInterface);
+	final int[] columns = dispatch.columnIndexes(rs);
+	
+	return Proxy.newProxyInstance(loader, new Class[] {resultSetInterface}, new InvocationHandler() {
+	    @Override
+	    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (dispatch.isClose(method)) {
+		    try {
+			rs.close();
+		    } finally {
+			borrowed.close();
+		    }
+		    return null;
+		}
+		return dispatch.invoke(rs, columns, method, args);
+	    }
 	});
     }
+    
+    /**
+     * Creates a handle for the statement interface that is bound to the data
+     *  source instead of a connection. The handle is thread-safe and can be
+     *  kept, for example in a static final field, and used by any number of
+     *  threads. Positional arguments are collected for the calling thread until
+     *  the statement is executed, which borrows a connection from the data
+     *  source and a cached prepared statement for the connection. The
+     *  connection is given back when the execution is done or, for executeQuery(),
+     *  when the result set is closed.
+     * 
+     * Bound handles can also have asynchronous methods that return a
+     *  CompletableFuture: executeAsync(), executeUpdateAsync(), executeBatchAsync()
+     *  and executeQueryAsync(), which completes with a List of row interfaces.
+     *  The connection is borrowed and the statement executed on the executor
+     *  set by {@link #setAsyncExecutor(java.util.concurrent.Executor) }.
+     * 
+     * Both bound handles and connection-bound implementations can have an
+     *  executeQueryPublisher() method that returns a Flow.Publisher of row
+     *  interfaces on Java 9 or later. Rows are read on the same executor, only
+     *  as the subscriber requests them. A connection-bound implementation runs
+     *  the query on its own statement, so it has one active subscription at a
+     *  time and a second one fails with an IllegalStateException.
+     */
+    public static <T> T bind(DataSource dataSource, Class<T> aInterface) throws IOException {
+	BoundStatement handle = new BoundStatement(dataSource, aInterface, loadStatementText(aInterface));
+	return aInterface.cast(Proxy.newProxyInstance(aInterface.getClassLoader(), new Class[] {aInterface}, handle));
+    }
 
-    private static PreparedStatement loadPreparedStatement(final Class<?> aInterface, Connection dbConn) throws SQLException, IOException {
-	String stmtContents = PROCESSED_INTERFACES.get(aInterface);
-	if (stmtContents == null) {
-	    Statement stmtFile = aInterface.getAnnotation(Statement.class);
-	    String resourceName;
-	    
-	    if (stmtFile != null) {
-		resourceName = stmtFile.value();
-	    } else {
-		resourceName = aInterface.getSimpleName() + ".sql";
+    /**
+     * Creates a loader that looks up rows by key with the interface's statement,
+     *  gathering the keys of concurrent callers into one query, as described by
+     *  {@link BatchLoader}. The statement's single positional argument is the
+     *  list of an IN predicate, such as {@code SELECT ID, NAME FROM USERS WHERE ID IN (?)}.
+     *  The loader borrows a connection from the data source for each query.
+     */
+    public static <K, R> BatchLoader<K, R> loader(DataSource dataSource, Class<?> aInterface) throws IOException {
+	return new BatchLoader<>(dataSource, aInterface, loadStatementText(aInterface));
+    }
+
+    /**
+     * Finds the index of each of the columns in the result set, or 0 if there
+     *  is no such column. Names are matched against the column labels in the
+     *  same way as result set interface getters. This is used by the classes
+     *  generated by the jdbc-ng-processor.
+     */
+    public static int[] findColumns(ResultSet rs, String... columnNames) throws SQLException {
+	int[] indexes = new int[columnNames.length];
+	for (int i = 0; i < columnNames.length; i++) {
+	    indexes[i] = ResultSetDispatch.findColumn(rs.getMetaData(), columnNames[i]);
+	}
+	return indexes;
+    }
+
+    /**
+     * Statistics of the buffers of the interface's executeQuery method with the
+     *  {@link Prefetch} annotation, across all of its result sets.
+     */
+    public static PrefetchStatistics getPrefetchStatistics(Class<?> aInterface) {
+	return PrefetchResultSet.statistics(aInterface);
+    }
+    
+    /**
+     * Sets the executor for the asynchronous methods of bound handles, the
+     *  publishers and the fetch tasks of {@link Prefetch}. By default they run
+     *  on a pool of daemon threads owned by JDBC-NG with a bounded queue.
+     *  Passing null restores a new default pool.
+     */
+    public static void setAsyncExecutor(Executor executor) {
+	AsyncExecution.setExecutor(executor);
+    }
+    
+    /**
+     * Runs the asynchronous methods of bound handles on a new virtual thread
+     *  per execution, on Java 21 or later. JDBC-NG's own caches and limits use
+     *  locks that don't pin virtual threads to their carrier threads while a
+     *  statement is prepared. Since there is no pool, use
+     *  {@link #setAsyncConcurrency(java.lang.Class, int) } to keep the number
+     *  of connections in use within the data source's capacity.
+     *
+     * @return false, leaving the executor as it was, if virtual threads aren't
+     *  available
+     */
+    public static boolean useVirtualThreads() {
+	return AsyncExecution.useVirtualThreads();
+    }
+    
+    /**
+     * Limits how many asynchronous executions of the statement interface run at
+     *  once. Further executions wait in a queue of up to
+     *  {@value AsyncExecution#QUEUE_CAPACITY} tasks without holding a thread
+     *  or a connection. There is no limit by default other than the executor's.
+     */
+    public static void setAsyncConcurrency(Class<?> aInterface, int maxConcurrency) {
+	AsyncExecution.setConcurrency(aInterface, maxConcurrency);
+    }
+    
+    /**
+     * Whether the type is a row interface or a value class that rows can be
+     *  copied into.
+     */
+    private static boolean isRowType(Type rowType) {
+	return rowType instanceof Class && (((Class<?>) rowType).isInterface() || ValueMapper.isValueClass((Class<?>) rowType));
+    }
+    
+    /**
+     * The row type of an executeQuery() method returning a List of rows.
+     */
+    static Class<?> listRowType(Method executeQuery) {
+	Type returnType = executeQuery.getGenericReturnType();
+	if (returnType instanceof ParameterizedType && ((ParameterizedType) returnType).getRawType() == List.class) {
+	    Type rowType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+	    if (isRowType(rowType)) {
+		return (Class<?>) rowType;
 	    }
-	    
-	    if (!resourceName.contains("/")) {
-		resourceName = aInterface.getPackage().getName().replace('.', '/') + "/" + resourceName;
+	}
+	
+	throw new IllegalArgumentException("Interface has an executeQuery method that returns a List of something other than a row interface or value class.");
+    }
+    
+    /**
+     * The row type of an executeQueryAsync() method returning a
+     *  CompletableFuture of a List of rows.
+     */
+    static Class<?> asyncRowType(Method executeQueryAsync) {
+	Type returnType = executeQueryAsync.getGenericReturnType();
+	if (returnType instanceof ParameterizedType && ((ParameterizedType) returnType).getRawType() == CompletableFuture.class) {
+	    Type listType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+	    if (listType instanceof ParameterizedType && ((ParameterizedType) listType).getRawType() == List.class) {
+		Type rowType = ((ParameterizedType) listType).getActualTypeArguments()[0];
+		if (isRowType(rowType)) {
+		    return (Class<?>) rowType;
+		}
 	    }
-	    
-	    StringWriter writer = new StringWriter();
-	    InputStream stmtStream = aInterface.getClassLoader().getResourceAsStream(resourceName);
+	}
+	
+	throw new IllegalArgumentException("Interface has an executeQueryAsync method that doesn't return a CompletableFuture of a List of rows.");
+    }
+    
+    /**
+     * The row interface of an executeColumnar() method returning a
+     *  ColumnarResult of rows.
+     */
+    static Class<?> columnarRowInterface(Method executeColumnar) {
+	Type returnType = executeColumnar.getGenericReturnType();
+	if (returnType instanceof ParameterizedType && ((ParameterizedType) returnType).getRawType() == ColumnarResult.class) {
+	    Type rowType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+	    if (rowType instanceof Class && ((Class<?>) rowType).isInterface()) {
+		return (Class<?>) rowType;
+	    }
+	}
+	
+	throw new IllegalArgumentException("Interface has an executeColumnar method that doesn't return a ColumnarResult of a row interface.");
+    }
+    
+    /**
+     * The row type of an executeStream() method returning a Stream of rows.
+     */
+    static Class<?> streamRowType(Method executeStream) {
+	Type returnType = executeStream.getGenericReturnType();
+	if (returnType instanceof ParameterizedType && ((ParameterizedType) returnType).getRawType() == Stream.class) {
+	    Type rowType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+	    if (isRowType(rowType)) {
+		return (Class<?>) rowType;
+	    }
+	}
+	
+	throw new IllegalArgumentException("Interface has an executeStream method that doesn't return a Stream of rows.");
+    }
+    
+    /**
+     * The row type of an executeQueryPublisher() method returning a
+     *  Flow.Publisher of rows. The Flow class is compared by name so that
+     *  this works on Java 8.
+     */
+    static Class<?> publisherRowType(Method executeQueryPublisher) {
+	Type returnType = executeQueryPublisher.getGenericReturnType();
+	if (returnType instanceof ParameterizedType && RowPublisher.isPublisher((Class<?>) ((ParameterizedType) returnType).getRawType())) {
+	    Type rowType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+	    if (isRowType(rowType)) {
+		return (Class<?>) rowType;
+	    }
+	}
+	
+	throw new IllegalArgumentException("Interface has an executeQueryPublisher method that doesn't return a Flow.Publisher of rows.");
+    }
+    
+    /**
+     * Checks out the interface's statement from the connection's statement
+     *  cache.
+     */
+    private static PreparedStatement loadPreparedStatement(final Class<?> aInterface, Connection dbConn) throws SQLException, IOException {
+	return StatementCache.checkout(dbConn, loadStatementText(aInterface));
+    }
+    
+    /**
+     * Sets the number of prepared statements that are cached for each
+     *  connection, {@value StatementCache#DEFAULT_CAPACITY} by default. Only
+     *  statements that aren't in use are kept, and the least recently used one
+     *  is closed when the cache is full. A size of 0 turns off the cache so
+     *  that each implementation prepares its own statement.
+     */
+    public static void setStatementCacheSize(int statementsPerConnection) {
+	StatementCache.setCapacity(statementsPerConnection);
+    }
+    
+    /**
+     * Statistics of the prepared statement cache across all connections.
+     */
+    public static CacheStatistics getStatementCacheStatistics() {
+	return StatementCache.statistics();
+    }
+    
+    /**
+     * Statistics of the result cache of an interface with the
+     *  {@link ResultCache} annotation.
+     */
+    public static CacheStatistics getResultCacheStatistics(Class<?> aInterface) {
+	return QueryResultCache.statistics(aInterface);
+    }
+    
+    /**
+     * Commits the connection's transaction and then drops the cached rows of
+     *  the {@link ResultCache} interfaces that read the tables written in it.
+     *  Use this instead of Connection.commit() when auto-commit is off, rows
+     *  cached from before the transaction are otherwise kept until the
+     *  connection is next used in auto-commit mode or they expire.
+     */
+    public static void commit(Connection dbConn) throws SQLException {
+	TableTags.commit(dbConn);
+    }
+    
+    /**
+     * Rolls back the connection's transaction. The cached rows of the tables
+     *  written in it are kept since the database still holds them.
+     */
+    public static void rollback(Connection dbConn) throws SQLException {
+	TableTags.rollback(dbConn);
+    }
+    
+    /**
+     * Drops the cached rows of the {@link ResultCache} interfaces that read any
+     *  of the tables, for tables written without JDBC-NG.
+     */
+    public static void invalidateResultCaches(String... tables) {
+	Set<String> names = new HashSet<>();
+	for (String table: tables) {
+	    names.add(TableTags.normalize(table));
+	}
+	TableTags.invalidate(names);
+    }
+    
+    /**
+     * Records that the statement of the interface has written its tables.
+     *  This is used by the generated classes after execute(), executeUpdate()
+     *  and the batch methods and returns the result.
+     */
+    public static int written(int result, Class<?> aInterface, PreparedStatement pstmt) throws SQLException {
+	TableTags.written(aInterface, StatementCache.connection(pstmt));
+	return result;
+    }
+    
+    /**
+     * See {@link #written(int, java.lang.Class, java.sql.PreparedStatement) }.
+     */
+    public static boolean written(boolean result, Class<?> aInterface, PreparedStatement pstmt) throws SQLException {
+	TableTags.written(aInterface, StatementCache.connection(pstmt));
+	return result;
+    }
+    
+    /**
+     * See {@link #written(int, java.lang.Class, java.sql.PreparedStatement) }.
+     */
+    public static int[] written(int[] result, Class<?> aInterface, PreparedStatement pstmt) throws SQLException {
+	TableTags.written(aInterface, StatementCache.connection(pstmt));
+	return result;
+    }
+    
+    /**
+     * See {@link #written(int, java.lang.Class, java.sql.PreparedStatement) }.
+     */
+    public static long[] written(long[] result, Class<?> aInterface, PreparedStatement pstmt) throws SQLException {
+	TableTags.written(aInterface, StatementCache.connection(pstmt));
+	return result;
+    }
+    
+    /**
+     * Records the result set that the statement has opened, so that the
+     *  statement isn't checked back into the statement cache while the result
+     *  set is still open. This is used by the generated classes after
+     *  executeQuery() and returns the result set.
+     */
+    public static ResultSet opened(PreparedStatement pstmt, ResultSet rs) {
+	StatementCache.opened(pstmt, rs);
+	return rs;
+    }
+    
+    /**
+     * Closes the cached prepared statements of the connection. Caches of
+     *  closed connections are dropped automatically, this releases them
+     *  straight away.
+     */
+    public static void closeCachedStatements(Connection dbConn) {
+	StatementCache.close(dbConn);
+    }
+    
+    /**
+     * Returns the SQL text of the statement for the interface. The file is only
+     *  read the first time, after that the text comes from the cache.
+     */
+    static String loadStatementText(Class<?> aInterface) throws IOException {
+	STATEMENT_TEXT_LOOKUPS.increment();
+	try {
+	    return STATEMENT_TEXT.get(aInterface);
+	} catch (UncheckedIOException ex) {
+	    throw ex.getCause();
+	}
+    }
+    
+    /**
+     * Statistics of the cache of SQL statement text loaded from the files. The
+     *  size is the number of statement files that have been read.
+     */
+    public static CacheStatistics getStatementTextCacheStatistics() {
+	long misses = STATEMENT_TEXT_MISSES.sum();
+	return new CacheStatistics(STATEMENT_TEXT_LOOKUPS.sum() - misses, misses, 0, misses);
+    }
+    
+    private static String readStatementText(Class<?> aInterface) throws IOException {
+	Statement stmtFile = aInterface.getAnnotation(Statement.class);
+	String resourceName;
+	
+	if (stmtFile != null) {
+	    resourceName = stmtFile.value();
+	} else {
+	    resourceName = aInterface.getSimpleName() + ".sql";
+	}
+	
+	if (!resourceName.contains("/")) {
+	    resourceName = aInterface.getPackage().getName().replace('.', '/') + "/" + resourceName;
+	}
+	
+	StringWriter writer = new StringWriter();
+	try (InputStream stmtStream = aInterface.getClassLoader().getResourceAsStream(resourceName)) {
 	    if (stmtStream == null) {
 		throw new IllegalStateException("Unable to load prepared statement from " + resourceName);
 	    }
 	    IOUtils.copy(stmtStream, writer, "UTF-8");
-	    stmtContents = writer.toString();
 	}
-	final PreparedStatement pstmt = dbConn.prepareStatement(stmtContents);
-	return pstmt;
+	
+	// Surrounding whitespace only varies the statement text seen by the driver
+	return writer.toString().trim();
     }
 
     public static void validateInterface(Connection conn, Class<?> aInterface) throws SQLException, IOException {
 	PreparedStatement pstmt = loadPreparedStatement(aInterface, conn);
-	
+	try {
+	    validateInterface(pstmt, aInterface);
+	} finally {
+	    StatementCache.checkin(conn, pstmt);
+	}
+    }
+    
+    private static void validateInterface(PreparedStatement pstmt, Class<?> aInterface) throws SQLException, IOException {
 	// Validate that the prepared statement matches the interface so that we can
 	//  fail early with a mismatch.
 	
@@ -173,12 +723,20 @@ public class JdbcNg {
 		throw new IllegalArgumentException("Interface positional argument set method " + m.getName() + " must not have a return type.");
 	    }
 	    
-	    validateTypesEquivalent(pstmt.getParameterMetaData().getParameterType(pos.value()), m.getParameterTypes()[0]);
+	    // List arguments have the type of their values
+	    Class<?> elementType = ListArguments.elementType(m);
+	    validateTypesEquivalent(pstmt.getParameterMetaData().getParameterType(pos.value()), elementType != null ? elementType : m.getParameterTypes()[0]);
 	    
 	    matchCount++;
 	}
 	
-	if (matchCount != pstmt.getParameterMetaData().getParameterCount()) {
+	// The rows of an executeAll method supply their own positional arguments
+	boolean bulk = false;
+	for (Method m: aInterface.getMethods()) {
+	    bulk |= BulkExecutor.isExecuteAll(m);
+	}
+	
+	if (!bulk && matchCount != pstmt.getParameterMetaData().getParameterCount()) {
 	    throw new IllegalArgumentException("The number of positional arguments doesn't match the number of positional argument setters in the interface.");
 	}
 	
@@ -190,28 +748,22 @@ public class JdbcNg {
 	    }
 	    
 	    Class<?> resultSetClass = executeQuery.getReturnType();
-	    if (!Arrays.asList(resultSetClass.getInterfaces()).contains(JdbcNgResultSet.class)) {
-		throw new IllegalArgumentException("Result set class " + resultSetClass.getName() + " must implement JdbcNgResultSet.");
-	    }
+	    // Rows of a List are checked with the other row types below
+	    if (resultSetClass != List.class) {
+		if (!Arrays.asList(resultSetClass.getInterfaces()).contains(JdbcNgResultSet.class)) {
+		    throw new IllegalArgumentException("Result set class " + resultSetClass.getName() + " must implement JdbcNgResultSet.");
+		}
 	    
-	    for (Method m: resultSetClass.getDeclaredMethods()) {
-		if (m.getName().startsWith("get")) {
-		    String columnName = m.getName().substring(3);
-		    columnName = columnName.substring(0, 1).toLowerCase() + columnName.substring(1);
+		for (Method m: resultSetClass.getDeclaredMethods()) {
+		    if (ResultSetDispatch.isGetter(m)) {
+			String columnName = ResultSetDispatch.columnName(m);
 		    
-		    boolean found = false;
-		    for (int i=1; i <= pstmt.getMetaData().getColumnCount(); i++) {
-			if (pstmt.getMetaData().getColumnLabel(i).equals(columnName)) {
-			    found = true;
-			    
-			    validateTypesEquivalent(pstmt.getMetaData().getColumnType(i), m.getReturnType());
-			    
-			    break;
+			int column = ResultSetDispatch.findColumn(pstmt.getMetaData(), columnName);
+			if (column == 0) {
+			    throw new IllegalArgumentException("Result set class " + resultSetClass.getName() + " has a method for column " + columnName + " that doesn't exist.");
 			}
-		    }
 		    
-		    if (!found) {
-			throw new IllegalArgumentException("Result set class " + resultSetClass.getName() + " has a method for column " + columnName + " that doesn't exist.");
+			validateTypesEquivalent(pstmt.getMetaData().getColumnType(column), m.getReturnType());
 		    }
 		}
 	    }
@@ -221,6 +773,11 @@ public class JdbcNg {
 	    Logger.getLogger(JdbcNg.class.getName()).log(Level.SEVERE, null, ex);
 	}
 	
+	// Callers of a single flight interface share its rows, so it must only read
+	if (aInterface.isAnnotationPresent(SingleFlight.class) && !TableTags.writes(aInterface).isEmpty()) {
+	    throw new IllegalArgumentException("Interface " + aInterface.getName() + " has the SingleFlight annotation but writes to " + TableTags.writes(aInterface) + ".");
+	}
+	
 	try {
 	    Method executeUpdate = aInterface.getDeclaredMethod("executeUpdate");
 	    if (executeUpdate.getReturnType() != Integer.TYPE) {
@@ -231,6 +788,116 @@ public class JdbcNg {
 	} catch (SecurityException ex) {
 	    Logger.getLogger(JdbcNg.class.getName()).log(Level.SEVERE, null, ex);
 	}
+	
+	// Batch methods mirror the PreparedStatement ones
+	validateOptionalMethod(aInterface, "addBatch", Void.TYPE);
+	validateOptionalMethod(aInterface, "executeBatch", int[].class);
+	validateOptionalMethod(aInterface, "executeLargeBatch", long[].class);
+	
+	for (Method m: aInterface.getMethods()) {
+	    if (!m.getName().equals("executeAll")) {
+		continue;
+	    }
+	    
+	    if (!BulkExecutor.isExecuteAll(m)) {
+		throw new IllegalArgumentException("Interface method executeAll must accept a single Iterable or Stream of rows.");
+	    }
+	    
+	    Class<?> returnType = m.getReturnType();
+	    if (returnType != Void.TYPE && returnType != Integer.TYPE && returnType != Long.TYPE && returnType != BulkResult.class) {
+		throw new IllegalArgumentException("Interface has an executeAll method that doesn't return void, an int, a long or a BulkResult.");
+	    }
+	    
+	    Batch batch = m.getAnnotation(Batch.class);
+	    if (batch != null && batch.multiRow()) {
+		BulkExecutor.multiRowValues(loadStatementText(aInterface), 2);
+	    }
+	}
+	
+	// Asynchronous methods complete with what their blocking counterparts return
+	validateAsyncMethod(aInterface, "executeAsync", Boolean.class);
+	validateAsyncMethod(aInterface, "executeUpdateAsync", Integer.class);
+	validateAsyncMethod(aInterface, "executeBatchAsync", int[].class);
+	for (Method m: aInterface.getMethods()) {
+	    Class<?> rowClass;
+	    if (m.getName().equals("executeQuery") && m.getReturnType() == List.class) {
+		rowClass = listRowType(m);
+	    } else if (m.getName().equals("executeQueryAsync")) {
+		rowClass = asyncRowType(m);
+	    } else if (m.getName().equals("executeQueryPublisher")) {
+		rowClass = publisherRowType(m);
+	    } else if (m.getName().equals("executeStream")) {
+		rowClass = streamRowType(m);
+	    } else if (m.getName().equals("executeColumnar")) {
+		rowClass = columnarRowInterface(m);
+	    } else {
+		continue;
+	    }
+	    
+	    if (!rowClass.isInterface()) {
+		ValueMapper mapper = ValueMapper.forClass(rowClass);
+		for (int slot = 0; slot < mapper.slotCount(); slot++) {
+		    int column = ResultSetDispatch.findColumn(pstmt.getMetaData(), mapper.slotColumnName(slot));
+		    if (column == 0) {
+			throw new IllegalArgumentException("Value class " + rowClass.getName() + " has a constructor parameter for column " + mapper.slotColumnName(slot) + " that doesn't exist.");
+		    }
+		    validateTypesEquivalent(pstmt.getMetaData().getColumnType(column), mapper.slotType(slot));
+		}
+		continue;
+	    }
+	    
+	    for (Method getter: rowClass.getMethods()) {
+		if (ResultSetDispatch.isGetter(getter)) {
+		    String columnName = ResultSetDispatch.columnName(getter);
+		    if (ResultSetDispatch.findColumn(pstmt.getMetaData(), columnName) == 0) {
+			throw new IllegalArgumentException("Row class " + rowClass.getName() + " has a method for column " + columnName + " that doesn't exist.");
+		    }
+		}
+	    }
+	}
+    }
+    
+    private static void validateAsyncMethod(Class<?> aInterface, String name, Class<?> resultType) {
+	for (Method m: aInterface.getMethods()) {
+	    if (!m.getName().equals(name)) {
+		continue;
+	    }
+	    
+	    if (m.getParameterCount() != 0) {
+		throw new IllegalArgumentException("Interface method " + name + " must not accept any parameters.");
+	    }
+	    
+	    Type returnType = m.getGenericReturnType();
+	    if (!(returnType instanceof ParameterizedType) || ((ParameterizedType) returnType).getRawType() != CompletableFuture.class
+		    || ((ParameterizedType) returnType).getActualTypeArguments()[0] != resultType) {
+		throw new IllegalArgumentException("Interface has a " + name + " method that doesn't return a CompletableFuture<" + resultType.getSimpleName() + ">.");
+	    }
+	}
+    }
+    
+    private static void validateOptionalMethod(Class<?> aInterface, String name, Class<?> returnType) {
+	for (Method m: aInterface.getMethods()) {
+	    if (!m.getName().equals(name)) {
+		continue;
+	    }
+	    
+	    if (m.getParameterCount() != 0) {
+		throw new IllegalArgumentException("Interface method " + name + " must not accept any parameters.");
+	    }
+	    
+	    if (m.getReturnType() != returnType) {
+		throw new IllegalArgumentException("Interface has a " + name + " method that doesn't return " + (returnType == Void.TYPE ? "void" : "an " + returnType.getSimpleName()) + ".");
+	    }
+	}
+    }
+
+    private static boolean isClassAvailable(String className) {
+	try {
+	    Class.forName(className, false, JdbcNg.class.getClassLoader());
+	    return true;
+	} catch (ClassNotFoundException | LinkageError ex) {
+	    return false;
+	}
     }
 
     private static void validateTypesEquivalent(int jdbcType, Class<?> javaType) {
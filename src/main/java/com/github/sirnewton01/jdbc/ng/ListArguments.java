@@ -0,0 +1,270 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The positional arguments of an interface that take a list of values, for
+ *  an IN predicate such as {@code WHERE ID IN (?)}. A setter takes a list when
+ *  its parameter is a Collection or an array other than byte[] or char[]. The
+ *  statement's marker is repeated for each value, rounded up to the next power
+ *  of two with the last value repeated, see {@link InList}. So an interface
+ *  only has a few different statements, each one prepared once per connection
+ *  by the {@link StatementCache}, and the values are still sent as arguments
+ *  rather than as SQL text.
+ *
+ * Lists can't be empty, since {@code IN ()} isn't valid SQL, and the
+ *  interface can't batch, since the rows of a batch may need different
+ *  statements.
+ */
+final class ListArguments {
+    private static final ClassValue<Optional<ListArguments>> LISTS = new ClassValue<Optional<ListArguments>>() {
+	@Override
+	protected Optional<ListArguments> computeValue(Class<?> type) {
+	    for (Method m: type.getMethods()) {
+		if (m.getAnnotation(Pos.class) != null && elementType(m) != null) {
+		    return Optional.of(new ListArguments(type));
+		}
+	    }
+	    return Optional.empty();
+	}
+    };
+
+    private static final Object UNSET = new Object();
+
+    private final Map<Method, Integer> positions = new HashMap<>();
+    private final JdbcAccessors.ParameterSetter[] setters;
+    private final boolean[] lists;
+    private final Map<List<Integer>, String> statements = new ConcurrentHashMap<>();
+
+    private ListArguments(Class<?> aInterface) {
+	int maxPosition = 0;
+	for (Method m: aInterface.getMethods()) {
+	    Pos pos = m.getAnnotation(Pos.class);
+	    if (pos != null) {
+		positions.put(m, pos.value());
+		maxPosition = Math.max(maxPosition, pos.value());
+	    } else if (m.getName().equals("addBatch")) {
+		throw new IllegalArgumentException("Interface " + aInterface.getName() + " can't batch since it has list arguments.");
+	    }
+	}
+
+	setters = new JdbcAccessors.ParameterSetter[maxPosition + 1];
+	lists = new boolean[maxPosition + 1];
+	for (Map.Entry<Method, Integer> entry: positions.entrySet()) {
+	    Method m = entry.getKey();
+	    int position = entry.getValue();
+	    Class<?> elementType = elementType(m);
+	    lists[position] = elementType != null;
+	    setters[position] = JdbcAccessors.setterFor(elementType != null ? elementType
+		    : m.getParameterCount() == 1 ? m.getParameterTypes()[0] : Object.class);
+	}
+	for (int position = 1; position < setters.length; position++) {
+	    if (setters[position] == null) {
+		setters[position] = JdbcAccessors.setterFor(Object.class);
+	    }
+	}
+    }
+
+    /**
+     * The list arguments of the interface or null if it has none.
+     */
+    static ListArguments forInterface(Class<?> aInterface) {
+	return LISTS.get(aInterface).orElse(null);
+    }
+
+    /**
+     * The type of the values of a setter that takes a list, or null if the
+     *  setter takes a single value. The values of a raw Collection are set as
+     *  objects.
+     */
+    static Class<?> elementType(Method setter) {
+	if (setter.getParameterCount() != 1) {
+	    return null;
+	}
+	Class<?> type = setter.getParameterTypes()[0];
+	if (type.isArray()) {
+	    return type == byte[].class || type == char[].class ? null : type.getComponentType();
+	}
+	if (Collection.class.isAssignableFrom(type)) {
+	    Type generic = setter.getGenericParameterTypes()[0];
+	    if (generic instanceof ParameterizedType) {
+		Type element = ((ParameterizedType) generic).getActualTypeArguments()[0];
+		if (element instanceof Class) {
+		    return (Class<?>) element;
+		}
+	    }
+	    return Object.class;
+	}
+	return null;
+    }
+
+    /**
+     * Checks out the statement for the sizes of the lists and binds the values
+     *  of the positions. Positions whose value is the unset marker aren't
+     *  bound. The statement has to be checked back in.
+     */
+    PreparedStatement prepare(Connection conn, String sql, Object[] values, Object unset) throws SQLException {
+	Expanded expanded = new Expanded(sql, values, unset);
+	PreparedStatement pstmt = StatementCache.checkout(conn, expanded.text);
+	try {
+	    expanded.bind(pstmt);
+	} catch (SQLException | RuntimeException ex) {
+	    StatementCache.checkin(conn, pstmt);
+	    throw ex;
+	}
+	return pstmt;
+    }
+
+    /**
+     * The statement text for the sizes of the lists of the values and the
+     *  values to bind to it.
+     */
+    private final class Expanded {
+	final String text;
+	final Object[] values;
+	final Object unset;
+	final Object[][] elements;
+	final Integer[] sizes;
+
+	Expanded(String sql, Object[] values, Object unset) {
+	    this.values = values;
+	    this.unset = unset;
+	    elements = new Object[values.length][];
+	    sizes = new Integer[values.length];
+	    sizes[0] = 0;
+	    for (int position = 1; position < values.length; position++) {
+		if (position < lists.length && lists[position] && values[position] != unset) {
+		    elements[position] = elements(position, values[position]);
+		    sizes[position] = InList.bucket(elements[position].length);
+		} else {
+		    sizes[position] = 1;
+		}
+	    }
+
+	    text = statements.computeIfAbsent(Arrays.asList(sizes), key -> {
+		int[] counts = new int[key.size()];
+		for (int i = 0; i < counts.length; i++) {
+		    counts[i] = key.get(i);
+		}
+		return InList.expand(sql, counts);
+	    });
+	}
+
+	void bind(PreparedStatement pstmt) throws SQLException {
+	    int index = 1;
+	    for (int position = 1; position < values.length; position++) {
+		JdbcAccessors.ParameterSetter setter = position < setters.length ? setters[position] : null;
+		if (elements[position] != null) {
+		    Object[] list = elements[position];
+		    for (int i = 0; i < sizes[position]; i++) {
+			setter.set(pstmt, index++, list[Math.min(i, list.length - 1)]);
+		    }
+		} else {
+		    if (values[position] != unset && setter != null) {
+			setter.set(pstmt, index, values[position]);
+		    }
+		    index++;
+		}
+	    }
+	}
+    }
+
+    private static Object[] elements(int position, Object value) {
+	Object[] elements;
+	if (value instanceof Collection) {
+	    elements = ((Collection<?>) value).toArray();
+	} else if (value != null) {
+	    elements = new Object[Array.getLength(value)];
+	    for (int i = 0; i < elements.length; i++) {
+		elements[i] = Array.get(value, i);
+	    }
+	} else {
+	    elements = new Object[0];
+	}
+
+	if (elements.length == 0) {
+	    throw new IllegalArgumentException("The list of positional argument " + position + " is null or empty.");
+	}
+	return elements;
+    }
+
+    /**
+     * Handler of a connection-bound statement interface with list arguments.
+     *  The statement depends on the sizes of the lists, so the handler keeps
+     *  the arguments and binds them to the statement for their sizes when a
+     *  statement method is called. Like the arguments of a PreparedStatement
+     *  they are kept after the statement runs. The handler keeps the statement
+     *  of each size it has used checked out until it's garbage collected.
+     */
+    static final class Handler implements InvocationHandler {
+	private final ListArguments lists;
+	private final StatementDispatch dispatch;
+	private final Connection conn;
+	private final String sql;
+	private final Object[] values;
+	private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+	/**
+	 * @param conn the connection the statements are checked out of
+	 * @param pstmt the checked out statement of the SQL text, for lists of one
+	 */
+	Handler(ListArguments lists, StatementDispatch dispatch, Connection conn, PreparedStatement pstmt, String sql) {
+	    this.lists = lists;
+	    this.dispatch = dispatch;
+	    this.conn = conn;
+	    this.sql = sql;
+	    this.values = new Object[lists.setters.length];
+	    Arrays.fill(values, UNSET);
+	    statements.put(sql, pstmt);
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+	    Integer position = lists.positions.get(method);
+	    if (position != null) {
+		values[position] = args == null ? null : args[0];
+		return null;
+	    }
+	    return dispatch.invoke(prepare(), method, args);
+	}
+
+	/**
+	 * The statement for the sizes of the lists, with the arguments bound.
+	 */
+	PreparedStatement prepare() throws SQLException {
+	    Expanded expanded = lists.new Expanded(sql, values, UNSET);
+	    PreparedStatement pstmt = statements.get(expanded.text);
+	    if (pstmt == null) {
+		pstmt = StatementCache.checkout(conn, expanded.text);
+		StatementCache.checkinWhenUnreachable(this, conn, pstmt);
+		statements.put(expanded.text, pstmt);
+	    }
+	    pstmt.clearParameters();
+	    expanded.bind(pstmt);
+	    return pstmt;
+	}
+
+	/**
+	 * Ends the leases of the statements of each size that have been used.
+	 */
+	void release() {
+	    for (PreparedStatement pstmt: statements.values()) {
+		StatementCache.release(pstmt);
+	    }
+	}
+    }
+}
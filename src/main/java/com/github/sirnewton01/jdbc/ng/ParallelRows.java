@@ -0,0 +1,107 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Implements forEachParallel methods of result set interfaces:
+ *  {@code void forEachParallel(Consumer<Row> action, int chunkSize)} and
+ *  {@code void forEachParallel(Consumer<Row> action, int chunkSize, boolean ordered)}.
+ *
+ * The caller's thread reads chunks of rows, copying each row into an object
+ *  of the consumer's row interface, and hands each chunk to a fork-join pool
+ *  while it reads the next one. The rows of a chunk are processed in parallel
+ *  unless ordered is true, in which case the action is given the rows one at a
+ *  time in the order of the result set, still overlapping with the reading.
+ *  At most one chunk is processed while the next one is read, so memory is
+ *  bounded by two chunks.
+ *
+ * The pool is the one the caller is running in, if any, otherwise the common
+ *  pool. The first exception thrown by the action stops the reading and is
+ *  thrown by forEachParallel.
+ */
+final class ParallelRows {
+    /**
+     * Reads the next row or returns null at the end.
+     */
+    interface Rows {
+	Object next() throws SQLException;
+    }
+
+    private ParallelRows() {
+    }
+
+    static boolean isForEachParallel(Method m) {
+	Class<?>[] types = m.getParameterTypes();
+	return m.getName().equals("forEachParallel") && (types.length == 2 || types.length == 3)
+		&& types[0] == Consumer.class && types[1] == Integer.TYPE
+		&& (types.length == 2 || types[2] == Boolean.TYPE);
+    }
+
+    /**
+     * The type of the rows given to the consumer, which is the type argument
+     *  of the Consumer, a row interface or a value class, or otherwise the
+     *  result set interface.
+     */
+    static Class<?> rowInterface(Method forEachParallel, Class<?> resultSetInterface) {
+	Type consumer = forEachParallel.getGenericParameterTypes()[0];
+	if (consumer instanceof ParameterizedType) {
+	    Type row = ((ParameterizedType) consumer).getActualTypeArguments()[0];
+	    if (row instanceof Class && (((Class<?>) row).isInterface() || ValueMapper.isValueClass((Class<?>) row))) {
+		return (Class<?>) row;
+	    }
+	}
+	return resultSetInterface;
+    }
+
+    @SuppressWarnings("unchecked")
+    static void forEach(Rows rows, Object[] args) throws SQLException {
+	Consumer<Object> action = (Consumer<Object>) args[0];
+	int chunkSize = (Integer) args[1];
+	boolean ordered = args.length > 2 && (Boolean) args[2];
+
+	if (chunkSize < 1) {
+	    throw new IllegalArgumentException("The chunk size must be at least 1.");
+	}
+
+	ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+	ForkJoinTask<?> previous = null;
+	boolean completed = false;
+
+	try {
+	    while (true) {
+		List<Object> chunk = new ArrayList<>(chunkSize);
+		for (Object row = rows.next(); row != null; row = chunk.size() < chunkSize ? rows.next() : null) {
+		    chunk.add(row);
+		}
+		if (chunk.isEmpty()) {
+		    break;
+		}
+
+		if (previous != null) {
+		    previous.join();
+		}
+		Runnable task = ordered
+			? () -> chunk.forEach(action)
+			: () -> chunk.parallelStream().forEach(action);
+		previous = pool.submit(task);
+	    }
+
+	    if (previous != null) {
+		previous.join();
+	    }
+	    completed = true;
+	} finally {
+	    if (!completed && previous != null) {
+		previous.cancel(false);
+	    }
+	}
+    }
+}
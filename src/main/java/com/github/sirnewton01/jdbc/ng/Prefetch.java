@@ -0,0 +1,22 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Reads the rows of an executeQuery method with fetch tasks on the executor
+ *  set by {@link JdbcNg#setAsyncExecutor(java.util.concurrent.Executor) }. They
+ *  copy rows into a bounded buffer ahead of the caller, so that fetching from
+ *  the database overlaps with the caller's processing of the rows. See {@link JdbcNg#getPrefetchStatistics(java.lang.Class) } for tuning
+ *  the size of the buffer.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Prefetch {
+    /**
+     * The number of rows that the buffer holds.
+     */
+    public int value() default 1024;
+}
@@ -0,0 +1,332 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Handler of a result set interface for an executeQuery method with the
+ *  {@link Prefetch} annotation. Fetch tasks read each row's columns into an
+ *  array and put it into a bounded buffer, which next() takes the rows from.
+ *  The tasks run on the executor of {@link AsyncExecution}, one at a time for
+ *  a result set. A task stops when the buffer is full rather than waiting for
+ *  room, and next() submits another one once the buffer is half empty, so no
+ *  thread is held by a result set that isn't being read. Only the fetch tasks
+ *  use the JDBC result set. Closing the result set interface stops the
+ *  fetching, waits for a running task, closes the JDBC result set and gives
+ *  back the borrowed connection, if there is one. The same happens for a
+ *  result set interface that is garbage collected without being closed, the
+ *  next time a prefetching query is run.
+ */
+final class PrefetchResultSet implements InvocationHandler {
+    private static final Logger LOGGER = Logger.getLogger(PrefetchResultSet.class.getName());
+
+    private static final Object[] END = new Object[0];
+
+    private static final ClassValue<Counters> COUNTERS = new ClassValue<Counters>() {
+	@Override
+	protected Counters computeValue(Class<?> type) {
+	    return new Counters();
+	}
+    };
+
+    // Fetchers of result set interfaces that have been garbage collected
+    private static final ReferenceQueue<Object> UNREACHABLE = new ReferenceQueue<>();
+    private static final Set<Owner> OWNERS = Collections.newSetFromMap(new ConcurrentHashMap<Owner, Boolean>());
+
+    private final ResultSetDispatch dispatch;
+    private final Fetcher fetcher;
+    private final Counters counters;
+
+    // Only used by the caller's thread
+    private Object[] current;
+    private boolean finished;
+    private boolean closed;
+
+    private PrefetchResultSet(Class<?> aInterface, Class<?> resultSetInterface, ResultSet rs, Connection borrowed, int capacity) throws SQLException {
+	this.dispatch = ResultSetDispatch.forInterface(resultSetInterface);
+	this.counters = COUNTERS.get(aInterface);
+	this.fetcher = new Fetcher(aInterface, dispatch, rs, dispatch.columnIndexes(rs), borrowed, Math.max(1, capacity), counters);
+    }
+
+    /**
+     * Starts fetching the rows of the result set and returns the result set
+     *  interface reading them.
+     */
+    static Object generate(ClassLoader loader, Class<?> aInterface, Class<?> resultSetInterface, ResultSet rs, Connection borrowed, int capacity) throws SQLException {
+	stopUnreachable();
+	PrefetchResultSet handler = new PrefetchResultSet(aInterface, resultSetInterface, rs, borrowed, capacity);
+	Object proxy = Proxy.newProxyInstance(loader, new Class[] {resultSetInterface}, handler);
+	OWNERS.add(new Owner(proxy, handler.fetcher));
+	handler.fetcher.schedule();
+	return proxy;
+    }
+
+    static PrefetchStatistics statistics(Class<?> aInterface) {
+	Counters c = COUNTERS.get(aInterface);
+	return new PrefetchStatistics(c.rows.sum(), c.consumerWaits.sum(), c.fetchWaits.sum(), c.occupancy.sum(), c.maxOccupancy.get());
+    }
+
+    private static void stopUnreachable() {
+	for (Owner owner = (Owner) UNREACHABLE.poll(); owner != null; owner = (Owner) UNREACHABLE.poll()) {
+	    OWNERS.remove(owner);
+	    try {
+		owner.fetcher.stop();
+	    } catch (SQLException ex) {
+		LOGGER.log(Level.FINE, "Unable to give back the connection of an unreachable prefetched result set", ex);
+	    }
+	}
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+	switch (method.getName()) {
+	    case "next":
+		return next();
+	    case "close":
+		close();
+		return null;
+	    case "hashCode":
+		return System.identityHashCode(proxy);
+	    case "equals":
+		return proxy == args[0];
+	    case "toString":
+		return "Prefetched " + method.getDeclaringClass().getName();
+	    default:
+		break;
+	}
+
+	if (ParallelRows.isForEachParallel(method)) {
+	    Class<?> resultSetInterface = proxy.getClass().getInterfaces()[0];
+	    Class<?> rowInterface = ParallelRows.rowInterface(method, resultSetInterface);
+	    ResultSetDispatch rowDispatch = ResultSetDispatch.forInterface(rowInterface);
+	    if (rowDispatch != dispatch) {
+		throw new UnsupportedOperationException("Prefetched rows can only be given to a consumer of the result set interface.");
+	    }
+	    ParallelRows.forEach(() -> next() ? dispatch.row(resultSetInterface.getClassLoader(), rowInterface, current) : null, args);
+	    return null;
+	}
+
+	if (current == null) {
+	    throw new IllegalStateException("The result set isn't positioned on a row.");
+	}
+	Object value = dispatch.valueOf(method, current);
+	return value == ResultSetDispatch.NOT_A_GETTER ? null : value;
+    }
+
+    private boolean next() throws SQLException {
+	if (finished || closed) {
+	    return false;
+	}
+
+	int occupancy = fetcher.buffer.size();
+	Object[] row = fetcher.buffer.poll();
+	try {
+	    if (row == null) {
+		counters.consumerWaits.increment();
+		fetcher.schedule();
+		row = fetcher.buffer.take();
+	    }
+	} catch (InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	    throw new SQLException("Interrupted while waiting for prefetched rows", ex);
+	}
+
+	if (row == END) {
+	    finished = true;
+	    current = null;
+	    Throwable error = fetcher.error;
+	    if (error instanceof SQLException) {
+		throw (SQLException) error;
+	    } else if (error != null) {
+		throw new SQLException("Unable to prefetch rows", error);
+	    }
+	    return false;
+	}
+	if (occupancy <= fetcher.capacity / 2) {
+	    fetcher.schedule();
+	}
+
+	counters.rows.increment();
+	counters.occupancy.add(occupancy);
+	counters.maxOccupancy.accumulate(occupancy);
+	current = row;
+	return true;
+    }
+
+    private void close() throws SQLException {
+	if (closed) {
+	    return;
+	}
+	closed = true;
+	current = null;
+	fetcher.stop();
+    }
+
+    /**
+     * Reads the rows of the JDBC result set into the buffer. The buffer has
+     *  room for one more than the capacity so that the end can always be put.
+     *  This doesn't reference the result set interface, so that it can be
+     *  garbage collected while a task is running.
+     */
+    private static final class Fetcher {
+	final Class<?> aInterface;
+	final ResultSetDispatch dispatch;
+	final ResultSet rs;
+	final int[] columns;
+	final Connection borrowed;
+	final int capacity;
+	final ArrayBlockingQueue<Object[]> buffer;
+	final Counters counters;
+	final AtomicBoolean scheduled = new AtomicBoolean();
+	final ReentrantLock lock = new ReentrantLock();
+	volatile boolean stopped;
+	volatile Throwable error;
+
+	// Only set with the lock held
+	volatile boolean done;
+
+	Fetcher(Class<?> aInterface, ResultSetDispatch dispatch, ResultSet rs, int[] columns, Connection borrowed, int capacity, Counters counters) {
+	    this.aInterface = aInterface;
+	    this.dispatch = dispatch;
+	    this.rs = rs;
+	    this.columns = columns;
+	    this.borrowed = borrowed;
+	    this.capacity = capacity;
+	    this.buffer = new ArrayBlockingQueue<>(capacity + 1);
+	    this.counters = counters;
+	}
+
+	/**
+	 * Submits a fetch task unless one is already submitted.
+	 */
+	void schedule() {
+	    if (stopped || done || !scheduled.compareAndSet(false, true)) {
+		return;
+	    }
+	    AsyncExecution.submit(aInterface, () -> {
+		fetch();
+		return null;
+	    }).whenComplete((result, ex) -> {
+		// The task itself doesn't throw, so it wasn't accepted
+		if (ex != null) {
+		    lock.lock();
+		    try {
+			end(ex);
+		    } finally {
+			lock.unlock();
+		    }
+		}
+	    });
+	}
+
+	private void fetch() {
+	    lock.lock();
+	    try {
+		while (!stopped && !done) {
+		    if (buffer.size() >= capacity) {
+			counters.fetchWaits.increment();
+			break;
+		    }
+		    if (!rs.next()) {
+			end(null);
+			break;
+		    }
+		    buffer.add(dispatch.readValues(rs, columns));
+		}
+	    } catch (Throwable ex) {
+		end(ex);
+	    } finally {
+		scheduled.set(false);
+		lock.unlock();
+	    }
+
+	    // The caller may have made room after the buffer was found full
+	    if (buffer.size() <= capacity / 2) {
+		schedule();
+	    }
+	}
+
+	/**
+	 * Closes the result set and puts the end into the buffer. Called with
+	 *  the lock held.
+	 */
+	private void end(Throwable ex) {
+	    if (done) {
+		return;
+	    }
+	    done = true;
+	    error = ex;
+	    closeResultSet();
+	    if (!stopped) {
+		buffer.add(END);
+	    }
+	}
+
+	private void closeResultSet() {
+	    try {
+		rs.close();
+	    } catch (SQLException ex) {
+		LOGGER.log(Level.FINE, "Unable to close prefetched result set", ex);
+	    }
+	}
+
+	/**
+	 * Stops fetching, waiting for a running task, closes the result set and
+	 *  gives back the borrowed connection.
+	 */
+	void stop() throws SQLException {
+	    stopped = true;
+	    buffer.clear();
+	    lock.lock();
+	    try {
+		if (!done) {
+		    done = true;
+		    closeResultSet();
+		}
+	    } finally {
+		lock.unlock();
+	    }
+
+	    if (borrowed != null) {
+		borrowed.close();
+	    }
+	}
+    }
+
+    /**
+     * A weak reference to a result set interface, to stop its fetcher once
+     *  it's garbage collected.
+     */
+    private static final class Owner extends WeakReference<Object> {
+	final Fetcher fetcher;
+
+	Owner(Object owner, Fetcher fetcher) {
+	    super(owner, UNREACHABLE);
+	    this.fetcher = fetcher;
+	}
+    }
+
+    private static final class Counters {
+	final LongAdder rows = new LongAdder();
+	final LongAdder consumerWaits = new LongAdder();
+	final LongAdder fetchWaits = new LongAdder();
+	final LongAdder occupancy = new LongAdder();
+	final LongAccumulator maxOccupancy = new LongAccumulator(Math::max, 0);
+    }
+}
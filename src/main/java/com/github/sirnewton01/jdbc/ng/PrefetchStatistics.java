@@ -0,0 +1,64 @@
+package com.github.sirnewton01.jdbc.ng;
+
+/**
+ * A snapshot of the counters of the prefetch buffers of a statement interface.
+ *  A buffer that is usually empty, with many consumer waits, means that the
+ *  database is the bottleneck. One that is usually full, with many fetch
+ *  waits, means that the processing of the rows is, and a smaller buffer
+ *  would do.
+ */
+public final class PrefetchStatistics {
+    private final long rows;
+    private final long consumerWaits;
+    private final long fetchWaits;
+    private final long occupancyTotal;
+    private final long maxOccupancy;
+
+    public PrefetchStatistics(long rows, long consumerWaits, long fetchWaits, long occupancyTotal, long maxOccupancy) {
+	this.rows = rows;
+	this.consumerWaits = consumerWaits;
+	this.fetchWaits = fetchWaits;
+	this.occupancyTotal = occupancyTotal;
+	this.maxOccupancy = maxOccupancy;
+    }
+
+    /**
+     * The number of rows taken from the buffers.
+     */
+    public long getRows() {
+	return rows;
+    }
+
+    /**
+     * The number of times the caller found the buffer empty and waited for the
+     *  fetch task.
+     */
+    public long getConsumerWaits() {
+	return consumerWaits;
+    }
+
+    /**
+     * The number of times a fetch task found the buffer full and stopped until
+     *  the caller made room.
+     */
+    public long getFetchWaits() {
+	return fetchWaits;
+    }
+
+    /**
+     * The average number of rows in the buffer when the caller took a row, or
+     *  0 if no rows were taken.
+     */
+    public double getAverageOccupancy() {
+	return rows == 0 ? 0 : (double) occupancyTotal / rows;
+    }
+
+    public long getMaxOccupancy() {
+	return maxOccupancy;
+    }
+
+    @Override
+    public String toString() {
+	return "rows=" + rows + ", consumerWaits=" + consumerWaits + ", fetchWaits=" + fetchWaits + ", averageOccupancy=" + String.format("%.1f", getAverageOccupancy()) + ", maxOccupancy=" + maxOccupancy;
+    }
+}
@@ -0,0 +1,399 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The cache of the rows of an interface with the {@link ResultCache} or
+ *  {@link SingleFlight} annotation. Entries are keyed by the positional
+ *  argument values and kept in least recently used order. Expired entries are
+ *  dropped when they are looked up. Without {@link ResultCache} nothing is
+ *  stored.
+ *
+ * Only the map is guarded by the lock. The query runs without it, so two
+ *  threads that miss the same arguments at the same time both run it, unless
+ *  the interface has {@link SingleFlight}. Then the queries that are running
+ *  are kept in a concurrent map by their key and later callers wait for their
+ *  rows instead. Writes to the tables that the interface reads drop all of the
+ *  entries and forget the running queries, see {@link TableTags}. Rows read by
+ *  a query that started before a write are not stored, since they may be from
+ *  before the write.
+ */
+final class QueryResultCache {
+    private static final ClassValue<Optional<QueryResultCache>> CACHES = new ClassValue<Optional<QueryResultCache>>() {
+	@Override
+	protected Optional<QueryResultCache> computeValue(Class<?> type) {
+	    ResultCache annotation = type.getAnnotation(ResultCache.class);
+	    boolean singleFlight = type.isAnnotationPresent(SingleFlight.class);
+	    return annotation == null && !singleFlight ? Optional.empty() : Optional.of(new QueryResultCache(type, annotation, singleFlight));
+	}
+    };
+
+    /**
+     * Runs the query and returns its rows read with {@link #read(java.sql.ResultSet) }.
+     */
+    interface Query {
+	Object run() throws SQLException;
+    }
+
+    private final Method executeQuery;
+    private final Class<?> rowType;
+    private final boolean list;
+    private final Map<Method, Integer> positions = new HashMap<>();
+    private final int width;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final boolean singleFlight;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final Set<String> tables;
+    private volatile long version;
+    private final Map<Key, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<Key, QueryResultCache.Entry> eldest) {
+	    if (size() > maxEntries) {
+		evictions.increment();
+		return true;
+	    }
+	    return false;
+	}
+    };
+
+    private QueryResultCache(Class<?> aInterface, ResultCache annotation, boolean singleFlight) {
+	Method query = null;
+	int maxPosition = 0;
+	for (Method m: aInterface.getMethods()) {
+	    Pos pos = m.getAnnotation(Pos.class);
+	    if (pos != null) {
+		positions.put(m, pos.value());
+		maxPosition = Math.max(maxPosition, pos.value());
+	    } else if (m.getName().equals("executeQuery") && m.getParameterCount() == 0) {
+		query = m;
+	    }
+	}
+
+	if (query == null) {
+	    throw new IllegalArgumentException("Interface " + aInterface.getName() + " has the ResultCache or SingleFlight annotation but no executeQuery method.");
+	}
+
+	this.executeQuery = query;
+	this.list = query.getReturnType() == List.class;
+	this.rowType = list ? JdbcNg.listRowType(query) : query.getReturnType();
+	this.width = maxPosition + 1;
+	this.ttlNanos = annotation == null ? 0 : TimeUnit.MILLISECONDS.toNanos(annotation.ttlMillis());
+	this.maxEntries = annotation == null ? 0 : annotation.maxEntries();
+	this.singleFlight = singleFlight;
+	this.tables = TableTags.reads(aInterface);
+	TableTags.register(this, aInterface);
+    }
+
+    /**
+     * The cache of the interface or null if it has neither the
+     *  {@link ResultCache} nor the {@link SingleFlight} annotation.
+     */
+    static QueryResultCache forInterface(Class<?> aInterface) {
+	return CACHES.get(aInterface).orElse(null);
+    }
+
+    static CacheStatistics statistics(Class<?> aInterface) {
+	QueryResultCache cache = forInterface(aInterface);
+	return cache == null ? new CacheStatistics(0, 0, 0, 0) : cache.statistics();
+    }
+
+    boolean isQuery(Method method) {
+	return method.equals(executeQuery);
+    }
+
+    /**
+     * Whether the query on the connection has to bypass the cache because the
+     *  connection's transaction has written to the tables it reads.
+     */
+    boolean bypass(Connection conn) throws SQLException {
+	return TableTags.hasPendingWrites(conn, tables);
+    }
+
+    /**
+     * Returns what executeQuery returns for the arguments. The rows come from
+     *  the cache if they are cached and haven't expired, otherwise from a query
+     *  of the same arguments that another caller is running with single
+     *  flight, otherwise from running the query. The rows aren't stored if the
+     *  cache was invalidated while the query ran.
+     */
+    Object execute(Object[] values, Query query) throws SQLException {
+	long queriedVersion = version;
+	Object rows = lookup(values);
+	if (rows != null) {
+	    hits.increment();
+	    return replay(rows);
+	}
+	if (!singleFlight) {
+	    misses.increment();
+	    return replay(load(Key.copyOf(values), query, queriedVersion));
+	}
+
+	Key key = Key.copyOf(values);
+	CompletableFuture<Object> flight = new CompletableFuture<>();
+	CompletableFuture<Object> running = flights.putIfAbsent(key, flight);
+	if (running != null) {
+	    hits.increment();
+	    return replay(await(running));
+	}
+
+	try {
+	    // The previous flight may have stored the rows after the lookup
+	    rows = lookup(values);
+	    if (rows != null) {
+		hits.increment();
+	    } else {
+		misses.increment();
+		rows = load(key, query, queriedVersion);
+	    }
+	    flight.complete(rows);
+	    return replay(rows);
+	} catch (SQLException | RuntimeException | Error ex) {
+	    flight.completeExceptionally(ex);
+	    throw ex;
+	} finally {
+	    flights.remove(key, flight);
+	}
+    }
+
+    private Object lookup(Object[] values) {
+	if (maxEntries == 0) {
+	    return null;
+	}
+	Key key = new Key(values);
+	lock.lock();
+	try {
+	    Entry entry = entries.get(key);
+	    if (entry != null && System.nanoTime() - entry.created < ttlNanos) {
+		return entry.rows;
+	    }
+	    if (entry != null) {
+		entries.remove(key);
+		evictions.increment();
+	    }
+	    return null;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    private Object load(Key key, Query query, long queriedVersion) throws SQLException {
+	Object rows = query.run();
+	if (maxEntries == 0) {
+	    return rows;
+	}
+	lock.lock();
+	try {
+	    if (version == queriedVersion) {
+		entries.put(key, new Entry(rows, System.nanoTime()));
+	    }
+	} finally {
+	    lock.unlock();
+	}
+	return rows;
+    }
+
+    /**
+     * Waits for the rows of another caller's query. Its exception is wrapped
+     *  so that each caller gets its own stack trace.
+     */
+    private static Object await(CompletableFuture<Object> running) throws SQLException {
+	try {
+	    return running.get();
+	} catch (InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	    throw new SQLException("Interrupted while waiting for the query of another caller", ex);
+	} catch (ExecutionException ex) {
+	    Throwable cause = ex.getCause();
+	    if (cause instanceof SQLException) {
+		SQLException sqlException = (SQLException) cause;
+		throw new SQLException(sqlException.getMessage(), sqlException.getSQLState(), sqlException.getErrorCode(), sqlException);
+	    }
+	    throw new SQLException("The query of another caller failed", cause);
+	}
+    }
+
+    /**
+     * Returns what executeQuery returns for the result set without caching
+     *  the rows.
+     */
+    Object uncached(ResultSet rs) throws SQLException {
+	return replay(read(rs));
+    }
+
+    /**
+     * Drops all of the entries.
+     */
+    void invalidate() {
+	lock.lock();
+	try {
+	    version++;
+	    evictions.add(entries.size());
+	    entries.clear();
+	    flights.clear();
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Reads the remaining rows of the result set into the form that is kept.
+     */
+    Object read(ResultSet rs) throws SQLException {
+	return list
+		? Collections.unmodifiableList(ResultSetDispatch.readAll(executeQuery.getDeclaringClass().getClassLoader(), rowType, rs))
+		: ColumnarResult.read(rowType, rs);
+    }
+
+    private Object replay(Object rows) {
+	return list ? rows : ((ColumnarResult<?>) rows).cursor();
+    }
+
+    private CacheStatistics statistics() {
+	lock.lock();
+	try {
+	    return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * The prepared statement of a connection-bound implementation with its
+     *  arguments bound.
+     */
+    interface StatementSource {
+	PreparedStatement prepare() throws SQLException;
+    }
+
+    /**
+     * Handler of a connection-bound statement interface with the
+     *  {@link ResultCache} or {@link SingleFlight} annotation. The prepared
+     *  statement doesn't give back the arguments set on it, so the handler keeps
+     *  them for the cache key. Other methods go to the next handler.
+     */
+    static final class Handler implements InvocationHandler {
+	private final QueryResultCache cache;
+	private final InvocationHandler next;
+	private final StatementSource statement;
+	private final Object[] values;
+
+	Handler(QueryResultCache cache, InvocationHandler next, StatementSource statement) {
+	    this.cache = cache;
+	    this.next = next;
+	    this.statement = statement;
+	    this.values = new Object[cache.width];
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+	    Integer position = cache.positions.get(method);
+	    if (position != null) {
+		values[position] = args == null ? null : args[0];
+	    } else if (cache.isQuery(method)) {
+		PreparedStatement pstmt = statement.prepare();
+		if (cache.bypass(StatementCache.connection(pstmt))) {
+		    try (ResultSet rs = pstmt.executeQuery()) {
+			return cache.uncached(rs);
+		    }
+		}
+		return cache.execute(values, () -> {
+		    try (ResultSet rs = pstmt.executeQuery()) {
+			return cache.read(rs);
+		    }
+		});
+	    }
+	    return next.invoke(proxy, method, args);
+	}
+    }
+
+    private static final class Key {
+	final Object[] values;
+	final int hash;
+
+	Key(Object[] values) {
+	    this.values = values;
+	    this.hash = Arrays.deepHashCode(values);
+	}
+
+	/**
+	 * A key that is kept in the cache, with copies of the array and
+	 *  collection arguments so that changing them afterwards doesn't change
+	 *  the key.
+	 */
+	static Key copyOf(Object[] values) {
+	    return new Key((Object[]) copy(values));
+	}
+
+	private static Object copy(Object value) {
+	    if (value instanceof Object[]) {
+		Object[] copy = ((Object[]) value).clone();
+		for (int i = 0; i < copy.length; i++) {
+		    copy[i] = copy(copy[i]);
+		}
+		return copy;
+	    }
+	    if (value != null && value.getClass().isArray()) {
+		int length = Array.getLength(value);
+		Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+		System.arraycopy(value, 0, copy, 0, length);
+		return copy;
+	    }
+	    if (value instanceof Set) {
+		return new LinkedHashSet<>((Set<?>) value);
+	    }
+	    if (value instanceof Collection) {
+		return new ArrayList<>((Collection<?>) value);
+	    }
+	    return value;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+	    return o instanceof Key && Arrays.deepEquals(values, ((Key) o).values);
+	}
+
+	@Override
+	public int hashCode() {
+	    return hash;
+	}
+    }
+
+    private static final class Entry {
+	final Object rows;
+	final long created;
+
+	Entry(Object rows, long created) {
+	    this.rows = rows;
+	    this.created = created;
+	}
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the rows of the interface's executeQuery method, keyed by the values
+ *  of its positional arguments. While the rows for the same arguments are in
+ *  the cache the query is answered from memory without using the connection.
+ *  The rows are kept in a compact form, a {@link ColumnarResult} for a result
+ *  set interface and an unmodifiable list for a List of rows, and every caller
+ *  reads the same rows. See {@link JdbcNg#getResultCacheStatistics(java.lang.Class) }.
+ *
+ * Writes through JDBC-NG interfaces drop the rows of the tables they write.
+ *  When auto-commit is off, end transactions with
+ *  {@link JdbcNg#commit(java.sql.Connection) } and
+ *  {@link JdbcNg#rollback(java.sql.Connection) } rather than the Connection's
+ *  own methods. After a plain Connection.commit() the rows aren't dropped until
+ *  the connection is next used in auto-commit mode, and until then they may be
+ *  stale and its own reads of the tables skip the cache. Tables written
+ *  without JDBC-NG need {@link JdbcNg#invalidateResultCaches(java.lang.String...) }.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ResultCache {
+    /**
+     * How long the rows are answered from the cache, in milliseconds.
+     */
+    public long ttlMillis() default 60000;
+
+    /**
+     * The number of different arguments whose rows are cached. The least
+     *  recently used rows are dropped when the cache is full.
+     */
+    public int maxEntries() default 1000;
+}
@@ -0,0 +1,288 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dispatch table for a result set interface. Each getter is assigned a slot
+ *  when the interface is analysed and the slots are resolved to column indexes
+ *  from the {@link ResultSetMetaData} of each shape of result set, see
+ *  {@link ColumnIndexes}, so that reading a column doesn't need to build the
+ *  column name or search the labels. The column is read with the typed getter
+ *  for the getter's declared return type.
+ */
+final class ResultSetDispatch {
+    private static final ClassValue<ResultSetDispatch> TABLES = new ClassValue<ResultSetDispatch>() {
+	@Override
+	protected ResultSetDispatch computeValue(Class<?> type) {
+	    return new ResultSetDispatch(type);
+	}
+    };
+
+    /**
+     * An action performed against the result set for a single method of the
+     *  result set interface. The column indexes are the resolved slots.
+     */
+    interface Action {
+	Object invoke(ResultSet rs, int[] columns, Object[] args) throws SQLException;
+    }
+
+    /**
+     * Reads the current row of a result set into a new row object.
+     */
+    interface RowReader {
+	Object read() throws SQLException;
+    }
+
+    private static final Object MISSING = new Object();
+    static final Object NOT_A_GETTER = new Object();
+
+    private static final Action CLOSE = (rs, columns, args) -> {
+	rs.close();
+	return null;
+    };
+
+    private final Map<Method, Action> actions;
+    private final Map<Method, Integer> slots;
+    private final String[] columnNames;
+    private final JdbcAccessors.ColumnGetter[] getters;
+    private final Class<?>[] types;
+    private final ColumnIndexes columnIndexes;
+
+    private ResultSetDispatch(Class<?> resultSetInterface) {
+	Map<Method, Action> table = new HashMap<>();
+	Map<Method, Integer> getterSlots = new HashMap<>();
+	List<String> names = new ArrayList<>();
+	List<JdbcAccessors.ColumnGetter> slotGetters = new ArrayList<>();
+	List<Class<?>> slotTypes = new ArrayList<>();
+
+	for (Method m: resultSetInterface.getMethods()) {
+	    if (m.getName().equals("next") && m.getParameterCount() == 0) {
+		table.put(m, (rs, columns, args) -> rs.next());
+	    } else if (m.getName().equals("close") && m.getParameterCount() == 0) {
+		table.put(m, CLOSE);
+	    } else if (ParallelRows.isForEachParallel(m)) {
+		final ClassLoader loader = resultSetInterface.getClassLoader();
+		final Class<?> rowInterface = ParallelRows.rowInterface(m, resultSetInterface);
+		table.put(m, (rs, columns, args) -> {
+		    RowReader rows = rowInterface == resultSetInterface
+			    ? () -> readRow(loader, rowInterface, rs, columns)
+			    : rowReader(loader, rowInterface, rs);
+		    ParallelRows.forEach(() -> rs.next() ? rows.read() : null, args);
+		    return null;
+		});
+	    } else if (m.getName().equals("current") && m.getParameterCount() == 0 && ValueMapper.isValueClass(m.getReturnType())) {
+		final Class<?> valueClass = m.getReturnType();
+		table.put(m, (rs, columns, args) -> {
+		    ValueMapper mapper = ValueMapper.forClass(valueClass);
+		    return mapper.read(rs, mapper.columnIndexes(rs));
+		});
+	    } else if (isGetter(m)) {
+		final int slot = names.size();
+		names.add(columnName(m));
+		slotGetters.add(JdbcAccessors.getterFor(m.getReturnType()));
+		slotTypes.add(m.getReturnType());
+		getterSlots.put(m, slot);
+
+		table.put(m, (rs, columns, args) -> readSlot(rs, columns, slot));
+	    }
+	}
+
+	actions = Collections.unmodifiableMap(table);
+	slots = Collections.unmodifiableMap(getterSlots);
+	columnNames = names.toArray(new String[names.size()]);
+	getters = slotGetters.toArray(new JdbcAccessors.ColumnGetter[slotGetters.size()]);
+	types = slotTypes.toArray(new Class<?>[slotTypes.size()]);
+	columnIndexes = new ColumnIndexes(columnNames);
+    }
+
+    static ResultSetDispatch forInterface(Class<?> resultSetInterface) {
+	return TABLES.get(resultSetInterface);
+    }
+
+    /**
+     * Returns the column index for each getter slot in the result set. Getters
+     *  without a matching column are given index 0 and fail when they are
+     *  called.
+     */
+    int[] columnIndexes(ResultSet rs) throws SQLException {
+	return columnIndexes.resolve(rs);
+    }
+
+    Object invoke(ResultSet rs, int[] columns, Method method, Object[] args) throws SQLException {
+	Action action = actions.get(method);
+
+	if (action == null) {
+	    return null;
+	}
+
+	return action.invoke(rs, columns, args);
+    }
+
+    int slotCount() {
+	return types.length;
+    }
+
+    /**
+     * The declared return type of the getter with the slot.
+     */
+    Class<?> slotType(int slot) {
+	return types[slot];
+    }
+
+    String slotColumnName(int slot) {
+	return columnNames[slot];
+    }
+
+    /**
+     * The slot of the getter or -1 if the method isn't a getter.
+     */
+    int slotOf(Method getter) {
+	Integer slot = slots.get(getter);
+	return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Reads the column of the getter with the slot from the current row.
+     */
+    Object readSlot(ResultSet rs, int[] columns, int slot) throws SQLException {
+	int column = columns[slot];
+	if (column == 0) {
+	    throw new SQLException("Column " + columnNames[slot] + " is not in the result set.");
+	}
+	return getters[slot].get(rs, column);
+    }
+
+    /**
+     * Reads the columns of all of the getters from the current row, in slot
+     *  order.
+     */
+    Object[] readValues(ResultSet rs, int[] columns) throws SQLException {
+	Object[] values = new Object[getters.length];
+	for (int slot = 0; slot < getters.length; slot++) {
+	    values[slot] = columns[slot] == 0 ? MISSING : getters[slot].get(rs, columns[slot]);
+	}
+	return values;
+    }
+
+    /**
+     * The getter's value from values read by {@link #readValues(java.sql.ResultSet, int[]) }.
+     *
+     * @return the value or {@link #NOT_A_GETTER} if the method isn't a getter
+     */
+    Object valueOf(Method getter, Object[] values) {
+	Integer slot = slots.get(getter);
+	if (slot == null) {
+	    return NOT_A_GETTER;
+	}
+	if (values[slot] == MISSING) {
+	    throw new IllegalStateException("Column " + columnNames[slot] + " is not in the result set.");
+	}
+	return values[slot];
+    }
+
+    /**
+     * Copies the current row into an object implementing the row interface.
+     *  The row's getters return the copied values, so it stays valid after
+     *  the result set moves on or is closed.
+     */
+    Object readRow(ClassLoader loader, Class<?> rowInterface, ResultSet rs, int[] columns) throws SQLException {
+	return row(loader, rowInterface, readValues(rs, columns));
+    }
+
+    /**
+     * A reader of the result set's rows into objects of the row type, which is
+     *  either a row interface or a value class created by a {@link ValueMapper}.
+     */
+    static RowReader rowReader(ClassLoader loader, Class<?> rowType, ResultSet rs) throws SQLException {
+	if (rowType.isInterface()) {
+	    ResultSetDispatch dispatch = forInterface(rowType);
+	    int[] columns = dispatch.columnIndexes(rs);
+	    return () -> dispatch.readRow(loader, rowType, rs, columns);
+	}
+
+	ValueMapper mapper = ValueMapper.forClass(rowType);
+	int[] columns = mapper.columnIndexes(rs);
+	return () -> mapper.read(rs, columns);
+    }
+
+    /**
+     * Reads the remaining rows of the result set into a list of objects of the
+     *  row type.
+     */
+    static List<Object> readAll(ClassLoader loader, Class<?> rowType, ResultSet rs) throws SQLException {
+	RowReader rows = rowReader(loader, rowType, rs);
+	List<Object> list = new ArrayList<>();
+	while (rs.next()) {
+	    list.add(rows.read());
+	}
+	return list;
+    }
+
+    /**
+     * Creates an object of the row interface whose getters return the values
+     *  read by {@link #readValues(java.sql.ResultSet, int[]) }.
+     */
+    Object row(ClassLoader loader, Class<?> rowInterface, final Object[] values) {
+	return Proxy.newProxyInstance(loader, new Class[] {rowInterface}, (proxy, method, args) -> {
+	    Object value = valueOf(method, values);
+	    if (value != NOT_A_GETTER) {
+		return value;
+	    }
+
+	    switch (method.getName()) {
+		case "hashCode":
+		    return System.identityHashCode(proxy);
+		case "equals":
+		    return proxy == args[0];
+		case "toString":
+		    return rowInterface.getSimpleName() + Arrays.toString(values);
+		case "next":
+		    return false;
+		default:
+		    return null;
+	    }
+	});
+    }
+
+    boolean isClose(Method method) {
+	return actions.get(method) == CLOSE;
+    }
+
+    static boolean isGetter(Method m) {
+	return m.getName().startsWith("get") && m.getName().length() > 3 && m.getParameterCount() == 0;
+    }
+
+    /**
+     * The column name for a getter is the method name without the "get"
+     *  prefix and with the first letter lower case.
+     */
+    static String columnName(Method getter) {
+	String columnName = getter.getName().substring(3);
+	return columnName.substring(0, 1).toLowerCase() + columnName.substring(1);
+    }
+
+    /**
+     * Finds the index of the column whose label matches the name. Labels are
+     *  compared case insensitively, as JDBC does, with reserved characters
+     *  such as '.' converted to '_'.
+     */
+    static int findColumn(ResultSetMetaData metaData, String columnName) throws SQLException {
+	for (int i = 1; i <= metaData.getColumnCount(); i++) {
+	    if (metaData.getColumnLabel(i).replace('.', '_').equalsIgnoreCase(columnName)) {
+		return i;
+	    }
+	}
+
+	return 0;
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Creates the Flow.Publisher of an executeQueryPublisher() method. The
+ *  publisher, {@code FlowRowPublisher}, implements java.util.concurrent.Flow
+ *  so it needs Java 9 or later. It lives in the src/main/java9 source directory
+ *  that is only compiled when the build runs on Java 9 or later, and it's
+ *  loaded by name so that the rest of JDBC-NG still builds and runs on Java 8.
+ *  An interface can only return a Flow.Publisher on Java 9 or later anyway.
+ */
+final class RowPublisher {
+    static final int MAX_FETCH_SIZE = 10000;
+
+    private static final String IMPLEMENTATION = RowPublisher.class.getPackage().getName() + ".FlowRowPublisher";
+
+    /**
+     * Provides the connection and executes the query for a subscription.
+     */
+    interface Source {
+	Connection connect() throws SQLException;
+
+	ResultSet executeQuery(Connection conn) throws SQLException;
+
+	/**
+	 * Gives back the connection after the result set has been closed.
+	 */
+	void release(Connection conn) throws SQLException;
+    }
+
+    private RowPublisher() {
+    }
+
+    static boolean isPublisher(Class<?> type) {
+	return type.getName().equals("java.util.concurrent.Flow$Publisher");
+    }
+
+    /**
+     * A Flow.Publisher of the rows of the query of the source.
+     */
+    static Object create(Class<?> aInterface, Class<?> rowInterface, Source source) {
+	Constructor<?> constructor = Implementation.CONSTRUCTOR;
+	if (constructor == null) {
+	    throw new UnsupportedOperationException("executeQueryPublisher() needs JDBC-NG built on Java 9 or later.");
+	}
+	try {
+	    return constructor.newInstance(aInterface, rowInterface, source);
+	} catch (InvocationTargetException ex) {
+	    throw new IllegalStateException(ex.getCause());
+	} catch (ReflectiveOperationException ex) {
+	    throw new IllegalStateException(ex);
+	}
+    }
+
+    /**
+     * Loads the publisher class the first time one is created.
+     */
+    private static final class Implementation {
+	static final Constructor<?> CONSTRUCTOR = constructor();
+
+	private static Constructor<?> constructor() {
+	    try {
+		Class<?> publisher = Class.forName(IMPLEMENTATION, false, RowPublisher.class.getClassLoader());
+		Constructor<?> constructor = publisher.getDeclaredConstructor(Class.class, Class.class, Source.class);
+		return constructor;
+	    } catch (ClassNotFoundException | NoSuchMethodException | LinkageError ex) {
+		return null;
+	    }
+	}
+    }
+}
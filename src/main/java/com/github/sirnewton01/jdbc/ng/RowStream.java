@@ -0,0 +1,107 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link Stream} view of a result set, for an executeStream() method. The
+ *  cursor is only advanced as the stream pulls rows, so a pipeline doesn't
+ *  read more of the result than it needs.
+ *
+ * If the row interface extends {@link JdbcNgResultSet} each element is the
+ *  same result set object positioned at the current row, which is only valid
+ *  until the stream moves on. Otherwise each row is copied into an object of
+ *  the row interface or value class, so the rows can be collected.
+ *
+ * Closing the stream closes the result set and gives back a borrowed
+ *  connection. This also happens when the last row has been read, but a
+ *  stream that isn't read to the end needs to be closed, for example with
+ *  try-with-resources.
+ */
+final class RowStream extends Spliterators.AbstractSpliterator<Object> implements Runnable {
+    private final ResultSet rs;
+    private final Connection borrowed;
+    private final ResultSetDispatch.RowReader rows;
+    private boolean closed;
+
+    private RowStream(ClassLoader loader, Class<?> rowType, ResultSet rs, Connection borrowed) throws SQLException {
+	super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+	this.rs = rs;
+	this.borrowed = borrowed;
+	if (JdbcNgResultSet.class.isAssignableFrom(rowType)) {
+	    final Object cursor = JdbcNg.generateResultSetProxy(loader, rowType, rs);
+	    this.rows = () -> cursor;
+	} else {
+	    this.rows = ResultSetDispatch.rowReader(loader, rowType, rs);
+	}
+    }
+
+    /**
+     * Streams the rows of the result set, closing the borrowed connection, if
+     *  there is one, with it.
+     */
+    static Stream<Object> stream(ClassLoader loader, Class<?> rowType, ResultSet rs, Connection borrowed) throws SQLException {
+	RowStream rows;
+	try {
+	    rows = new RowStream(loader, rowType, rs, borrowed);
+	} catch (SQLException | RuntimeException ex) {
+	    rs.close();
+	    if (borrowed != null) {
+		borrowed.close();
+	    }
+	    throw ex;
+	}
+	return StreamSupport.stream(rows, false).onClose(rows);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Object> action) {
+	if (closed) {
+	    return false;
+	}
+
+	try {
+	    if (!rs.next()) {
+		run();
+		return false;
+	    }
+	    action.accept(rows.read());
+	    return true;
+	} catch (SQLException ex) {
+	    run();
+	    throw new UndeclaredThrowableException(ex);
+	}
+    }
+
+    /**
+     * Closes the result set and the borrowed connection.
+     */
+    @Override
+    public void run() {
+	if (closed) {
+	    return;
+	}
+	closed = true;
+
+	try {
+	    rs.close();
+	} catch (SQLException ex) {
+	    throw new UndeclaredThrowableException(ex);
+	} finally {
+	    if (borrowed != null) {
+		try {
+		    borrowed.close();
+		} catch (SQLException ex) {
+		    throw new UndeclaredThrowableException(ex);
+		}
+	    }
+	}
+    }
+}
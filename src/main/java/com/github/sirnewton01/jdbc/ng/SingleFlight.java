@@ -0,0 +1,24 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Shares one execution of the interface's executeQuery method between the
+ *  threads that call it at the same time with the same positional argument
+ *  values. The first caller runs the query and the others wait for it and
+ *  read the same rows, held like the rows of a {@link ResultCache}, so a burst
+ *  of identical queries reaches the database once. If the query fails they all
+ *  get the error.
+ *
+ * The statement must only read, which {@link JdbcNg#validateInterface(java.sql.Connection, java.lang.Class) }
+ *  checks. Combined with {@link ResultCache} the callers that miss the cache at
+ *  the same time share the query that fills it. Callers that shared another
+ *  caller's query are counted as hits in {@link JdbcNg#getResultCacheStatistics(java.lang.Class) }.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface SingleFlight {
+}
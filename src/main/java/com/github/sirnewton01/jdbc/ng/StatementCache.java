@@ -0,0 +1,443 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of prepared statements for each connection so that the same statement
+ *  isn't prepared again each time an interface is used with the connection.
+ *  Statements are keyed by the SQL text.
+ *
+ * A statement is checked out of the cache for as long as it's in use, so two
+ *  users never share one. Bound handles check it back in once they're done
+ *  with it. Connection-bound implementations lease it until they're closed,
+ *  if their interface declares close(), or garbage collected, and the result
+ *  set they last opened from it is closed or garbage collected as well. Only
+ *  statements that are checked in are kept, at most one per SQL text, and the
+ *  least recently used one is closed when a connection's cache is full. Each
+ *  time a new connection is seen, a couple of the connections seen before are
+ *  checked, outside of the lock, and their caches are dropped if they have
+ *  been closed.
+ *
+ * Statements are prepared and closed while holding the locks, so they are
+ *  ReentrantLocks rather than monitors, which would pin a virtual thread to its
+ *  carrier thread while the driver does I/O.
+ */
+final class StatementCache {
+    private static final Logger LOGGER = Logger.getLogger(StatementCache.class.getName());
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    private static final Map<Connection, StatementCache> CACHES = new WeakHashMap<>();
+    private static final ReentrantLock CACHES_LOCK = new ReentrantLock();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+    private static volatile int capacity = DEFAULT_CAPACITY;
+
+    // Connections that are checked for being closed, a few at a time
+    private static final Queue<WeakReference<Connection>> SWEEP = new ConcurrentLinkedQueue<>();
+    private static final int SWEEP_PER_CONNECTION = 2;
+
+    // Leased statements by statement, and the leases whose owner is gone but
+    //  whose result set may still be open
+    private static final Map<PreparedStatement, Lease> LEASES = new IdentityHashMap<>();
+    private static final ReentrantLock LEASES_LOCK = new ReentrantLock();
+    private static final Set<Lease> RELEASED = Collections.newSetFromMap(new ConcurrentHashMap<Lease, Boolean>());
+    private static final ReferenceQueue<Object> UNREACHABLE = new ReferenceQueue<>();
+    private static final Set<Owner> OWNERS = Collections.newSetFromMap(new ConcurrentHashMap<Owner, Boolean>());
+
+    private final Map<String, PreparedStatement> idle = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+	    if (size() > capacity) {
+		EVICTIONS.increment();
+		closeQuietly(eldest.getValue());
+		return true;
+	    }
+	    return false;
+	}
+    };
+
+    private final Map<PreparedStatement, String> checkedOut = new IdentityHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private StatementCache() {
+    }
+
+    /**
+     * Checks out a prepared statement for the SQL on the connection, reusing a
+     *  cached one with its parameters and batch cleared if there is one.
+     */
+    static PreparedStatement checkout(Connection conn, String sql) throws SQLException {
+	checkinUnreachable();
+	if (capacity <= 0) {
+	    MISSES.increment();
+	    return conn.prepareStatement(sql);
+	}
+
+	StatementCache cache;
+	boolean created = false;
+	CACHES_LOCK.lock();
+	try {
+	    cache = CACHES.get(conn);
+	    if (cache == null) {
+		cache = new StatementCache();
+		CACHES.put(conn, cache);
+		created = true;
+	    }
+	} finally {
+	    CACHES_LOCK.unlock();
+	}
+
+	if (created) {
+	    sweepClosedConnections();
+	    SWEEP.add(new WeakReference<>(conn));
+	}
+	return cache.get(conn, sql);
+    }
+
+    /**
+     * Gives a checked out statement back to the cache. A statement that the
+     *  cache doesn't know, because the cache is turned off or has been closed,
+     *  is closed. So is one whose connection has been closed in the meantime,
+     *  and the cache of that connection is dropped.
+     */
+    static void checkin(Connection conn, PreparedStatement pstmt) {
+	if (isClosed(conn)) {
+	    closeQuietly(pstmt);
+	    close(conn);
+	    return;
+	}
+
+	StatementCache cache;
+	CACHES_LOCK.lock();
+	try {
+	    cache = CACHES.get(conn);
+	} finally {
+	    CACHES_LOCK.unlock();
+	}
+
+	if (cache == null || !cache.put(pstmt)) {
+	    closeQuietly(pstmt);
+	}
+    }
+
+    /**
+     * Leases the statement to the owner, which uses it until it is released or
+     *  garbage collected. It's checked back in after that once the last result
+     *  set opened from it is closed or garbage collected.
+     */
+    static void checkinWhenUnreachable(Object owner, Connection conn, PreparedStatement pstmt) {
+	Lease lease = new Lease(conn, pstmt);
+	lease.owner = new Owner(owner, lease);
+	OWNERS.add(lease.owner);
+	LEASES_LOCK.lock();
+	try {
+	    LEASES.put(pstmt, lease);
+	} finally {
+	    LEASES_LOCK.unlock();
+	}
+    }
+
+    /**
+     * The connection that a leased statement was checked out of, which is the
+     *  one its owner was created with, or else the statement's own connection.
+     *  A pool can give its statements a different connection object than the
+     *  one it handed out.
+     */
+    static Connection connection(PreparedStatement pstmt) throws SQLException {
+	LEASES_LOCK.lock();
+	try {
+	    Lease lease = LEASES.get(pstmt);
+	    if (lease != null) {
+		return lease.conn;
+	    }
+	} finally {
+	    LEASES_LOCK.unlock();
+	}
+	return pstmt.getConnection();
+    }
+
+    /**
+     * Records the result set opened from a statement, which is still used
+     *  after the owner of a leased statement is gone. A statement that isn't
+     *  leased is ignored.
+     */
+    static void opened(PreparedStatement pstmt, ResultSet rs) {
+	LEASES_LOCK.lock();
+	try {
+	    Lease lease = LEASES.get(pstmt);
+	    if (lease != null) {
+		lease.resultSet = new WeakReference<>(rs);
+	    }
+	} finally {
+	    LEASES_LOCK.unlock();
+	}
+    }
+
+    /**
+     * Ends the owner's lease of a statement, which is checked back in once its
+     *  last result set is closed. A statement that isn't leased is ignored.
+     */
+    static void release(PreparedStatement pstmt) {
+	LEASES_LOCK.lock();
+	try {
+	    Lease lease = LEASES.get(pstmt);
+	    if (lease == null || lease.owner == null) {
+		return;
+	    }
+	    OWNERS.remove(lease.owner);
+	    lease.owner.clear();
+	    lease.owner = null;
+	    RELEASED.add(lease);
+	} finally {
+	    LEASES_LOCK.unlock();
+	}
+	checkinReleased();
+    }
+
+    private static void checkinUnreachable() {
+	for (Owner owner = (Owner) UNREACHABLE.poll(); owner != null; owner = (Owner) UNREACHABLE.poll()) {
+	    OWNERS.remove(owner);
+	    LEASES_LOCK.lock();
+	    try {
+		if (owner.lease.owner == owner) {
+		    owner.lease.owner = null;
+		    RELEASED.add(owner.lease);
+		}
+	    } finally {
+		LEASES_LOCK.unlock();
+	    }
+	}
+	checkinReleased();
+    }
+
+    /**
+     * Checks in the statements of released leases whose last result set is
+     *  closed or unreachable.
+     */
+    private static void checkinReleased() {
+	if (RELEASED.isEmpty()) {
+	    return;
+	}
+
+	for (Lease lease: RELEASED) {
+	    if (lease.resultSetOpen() || !RELEASED.remove(lease)) {
+		continue;
+	    }
+	    LEASES_LOCK.lock();
+	    try {
+		LEASES.remove(lease.pstmt);
+	    } finally {
+		LEASES_LOCK.unlock();
+	    }
+	    checkin(lease.conn, lease.pstmt);
+	}
+    }
+
+    static void setCapacity(int statementsPerConnection) {
+	capacity = statementsPerConnection;
+    }
+
+    /**
+     * Closes and forgets the cached statements of the connection.
+     */
+    static void close(Connection conn) {
+	StatementCache cache;
+	CACHES_LOCK.lock();
+	try {
+	    cache = CACHES.remove(conn);
+	} finally {
+	    CACHES_LOCK.unlock();
+	}
+	if (cache != null) {
+	    cache.closeAll();
+	}
+    }
+
+    static CacheStatistics statistics() {
+	checkinUnreachable();
+	sweepClosedConnections();
+	List<StatementCache> caches;
+	CACHES_LOCK.lock();
+	try {
+	    caches = new ArrayList<>(CACHES.values());
+	} finally {
+	    CACHES_LOCK.unlock();
+	}
+
+	long size = 0;
+	for (StatementCache cache: caches) {
+	    size += cache.size();
+	}
+	return new CacheStatistics(HITS.sum(), MISSES.sum(), EVICTIONS.sum(), size);
+    }
+
+    private PreparedStatement get(Connection conn, String sql) throws SQLException {
+	lock.lock();
+	try {
+	    PreparedStatement pstmt = idle.remove(sql);
+
+	    if (pstmt != null && !pstmt.isClosed()) {
+		HITS.increment();
+		pstmt.clearParameters();
+		pstmt.clearBatch();
+	    } else {
+		MISSES.increment();
+		pstmt = conn.prepareStatement(sql);
+	    }
+	    checkedOut.put(pstmt, sql);
+	    return pstmt;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Keeps a statement that was checked out of this cache, unless there is
+     *  already one for its SQL.
+     *
+     * @return false if the statement should be closed
+     */
+    private boolean put(PreparedStatement pstmt) {
+	lock.lock();
+	try {
+	    String sql = checkedOut.remove(pstmt);
+	    if (sql == null || idle.containsKey(sql) || pstmt.isClosed()) {
+		return false;
+	    }
+	    idle.put(sql, pstmt);
+	    return true;
+	} catch (SQLException ex) {
+	    return false;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    private int size() {
+	lock.lock();
+	try {
+	    return idle.size() + checkedOut.size();
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Closes the statements that are checked in. The ones that are checked out
+     *  are closed when they're checked in.
+     */
+    private void closeAll() {
+	lock.lock();
+	try {
+	    for (PreparedStatement pstmt: idle.values()) {
+		closeQuietly(pstmt);
+	    }
+	    idle.clear();
+	    checkedOut.clear();
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Checks a few of the connections that have been seen, and drops the
+     *  caches of the ones that are closed. The others go to the back of the
+     *  queue, so every connection is checked in turn without asking all of
+     *  them each time.
+     */
+    private static void sweepClosedConnections() {
+	for (int i = 0; i < SWEEP_PER_CONNECTION; i++) {
+	    WeakReference<Connection> ref = SWEEP.poll();
+	    if (ref == null) {
+		return;
+	    }
+	    Connection conn = ref.get();
+	    if (conn == null) {
+		continue;
+	    }
+
+	    if (isClosed(conn)) {
+		close(conn);
+	    } else {
+		SWEEP.add(ref);
+	    }
+	}
+    }
+
+    private static boolean isClosed(Connection conn) {
+	try {
+	    return conn.isClosed();
+	} catch (SQLException ex) {
+	    return true;
+	}
+    }
+
+    private static void closeQuietly(PreparedStatement pstmt) {
+	try {
+	    pstmt.close();
+	} catch (SQLException ex) {
+	    LOGGER.log(Level.FINE, "Unable to close cached statement", ex);
+	}
+    }
+
+    /**
+     * A statement that is checked out to an owner and the last result set
+     *  opened from it. The owner is guarded by LEASES_LOCK.
+     */
+    private static final class Lease {
+	final Connection conn;
+	final PreparedStatement pstmt;
+	Owner owner;
+	volatile WeakReference<ResultSet> resultSet;
+
+	Lease(Connection conn, PreparedStatement pstmt) {
+	    this.conn = conn;
+	    this.pstmt = pstmt;
+	}
+
+	boolean resultSetOpen() {
+	    WeakReference<ResultSet> ref = resultSet;
+	    ResultSet rs = ref == null ? null : ref.get();
+	    try {
+		return rs != null && !rs.isClosed();
+	    } catch (SQLException ex) {
+		return false;
+	    }
+	}
+    }
+
+    /**
+     * A weak reference to the owner of a leased statement.
+     */
+    private static final class Owner extends WeakReference<Object> {
+	final Lease lease;
+
+	Owner(Object owner, Lease lease) {
+	    super(owner, UNREACHABLE);
+	    this.lease = lease;
+	}
+    }
+}
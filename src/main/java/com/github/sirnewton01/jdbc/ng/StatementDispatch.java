@@ -0,0 +1,255 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dispatch table for a statement interface. Each method of the interface is
+ *  analysed once and mapped to the action that the proxy performs when it is
+ *  invoked so that the proxy doesn't need to inspect annotations or compare
+ *  method names on every call.
+ *
+ * The tables are held in a {@link ClassValue} so that they are computed at most
+ *  once per interface and go away with the interface's class loader.
+ */
+final class StatementDispatch {
+    private static final ClassValue<StatementDispatch> TABLES = new ClassValue<StatementDispatch>() {
+	@Override
+	protected StatementDispatch computeValue(Class<?> type) {
+	    return new StatementDispatch(type);
+	}
+    };
+
+    /**
+     * An action performed against the prepared statement for a single method
+     *  of the statement interface.
+     */
+    interface Action {
+	Object invoke(PreparedStatement pstmt, Object[] args) throws SQLException;
+    }
+
+    // Statements of connection-bound handles with an active subscription
+    private static final Set<PreparedStatement> PUBLISHING = Collections.newSetFromMap(new ConcurrentHashMap<PreparedStatement, Boolean>());
+
+    private final Map<Method, Action> actions;
+    private final Method asyncMethod;
+    private final boolean closeable;
+
+    private StatementDispatch(Class<?> aInterface) {
+	Map<Method, Action> table = new HashMap<>();
+	Method async = null;
+	boolean close = false;
+
+	boolean writes = !TableTags.writes(aInterface).isEmpty();
+	for (Method m: aInterface.getMethods()) {
+	    if (isAsync(m)) {
+		async = m;
+		continue;
+	    }
+	    if (isClose(m)) {
+		close = true;
+		continue;
+	    }
+	    Action action = actionFor(aInterface, m);
+	    if (action != null && writes && isWrite(m)) {
+		action = written(aInterface, action);
+	    }
+	    if (action != null) {
+		table.put(m, action);
+	    }
+	}
+
+	actions = Collections.unmodifiableMap(table);
+	asyncMethod = async;
+	closeable = close;
+    }
+
+    static StatementDispatch forInterface(Class<?> aInterface) {
+	return TABLES.get(aInterface);
+    }
+
+    /**
+     * Rejects an interface with asynchronous methods, which borrow their
+     *  connection from a DataSource and so can't be bound to a connection.
+     */
+    void checkConnectionBound(Class<?> aInterface) {
+	if (asyncMethod != null) {
+	    throw new IllegalArgumentException("Interface " + aInterface.getName() + " has the asynchronous method " + asyncMethod.getName()
+		    + ", which needs a handle bound to a DataSource, see JdbcNg.bind().");
+	}
+    }
+
+    /**
+     * Whether the interface declares close(), which checks the statement of a
+     *  connection-bound handle back into the statement cache.
+     */
+    boolean isCloseable() {
+	return closeable;
+    }
+
+    static boolean isClose(Method m) {
+	return m.getName().equals("close") && m.getParameterCount() == 0;
+    }
+
+    Object invoke(PreparedStatement pstmt, Method method, Object[] args) throws SQLException {
+	Action action = actions.get(method);
+
+	if (action == null) {
+	    return null;
+	}
+
+	return action.invoke(pstmt, args);
+    }
+
+    private static boolean isAsync(Method m) {
+	switch (m.getName()) {
+	    case "executeAsync":
+	    case "executeUpdateAsync":
+	    case "executeBatchAsync":
+	    case "executeQueryAsync":
+		return true;
+	    default:
+		return false;
+	}
+    }
+
+    private static boolean isWrite(Method m) {
+	switch (m.getName()) {
+	    case "execute":
+	    case "executeUpdate":
+	    case "executeBatch":
+	    case "executeLargeBatch":
+	    case "executeAll":
+		return true;
+	    default:
+		return false;
+	}
+    }
+
+    /**
+     * Drops the cached rows of the tables the statement writes once the action
+     *  has succeeded, see {@link TableTags}.
+     */
+    private static Action written(final Class<?> aInterface, final Action action) {
+	return (pstmt, args) -> {
+	    Object result = action.invoke(pstmt, args);
+	    TableTags.written(aInterface, StatementCache.connection(pstmt));
+	    return result;
+	};
+    }
+
+    /**
+     * Runs the query of a statement whose result set stays open after the
+     *  action returns, see {@link StatementCache#opened(java.sql.PreparedStatement, java.sql.ResultSet) }.
+     */
+    private static ResultSet executeQuery(PreparedStatement pstmt) throws SQLException {
+	ResultSet rs = pstmt.executeQuery();
+	StatementCache.opened(pstmt, rs);
+	return rs;
+    }
+
+    private static Action actionFor(final Class<?> aInterface, Method m) {
+	Pos pos = m.getAnnotation(Pos.class);
+
+	// Positional argument setter method
+	if (pos != null) {
+	    final int position = pos.value();
+	    final JdbcAccessors.ParameterSetter setter = m.getParameterCount() == 1
+		    ? JdbcAccessors.setterFor(m.getParameterTypes()[0])
+		    : JdbcAccessors.setterFor(Object.class);
+	    return (pstmt, args) -> {
+		setter.set(pstmt, position, args[0]);
+		return null;
+	    };
+	}
+
+	switch (m.getName()) {
+	    case "executeQuery":
+		if (m.getReturnType() == List.class) {
+		    final Class<?> listedRows = JdbcNg.listRowType(m);
+		    return (pstmt, args) -> {
+			try (ResultSet rs = pstmt.executeQuery()) {
+			    return ResultSetDispatch.readAll(aInterface.getClassLoader(), listedRows, rs);
+			}
+		    };
+		}
+		final Class<?> resultSetInterface = m.getReturnType();
+		final Prefetch prefetch = m.getAnnotation(Prefetch.class);
+		if (prefetch != null) {
+		    return (pstmt, args) -> PrefetchResultSet.generate(aInterface.getClassLoader(), aInterface, resultSetInterface, executeQuery(pstmt), null, prefetch.value());
+		}
+		if (m.getAnnotation(Flyweight.class) != null) {
+		    return (pstmt, args) -> FlyweightResultSet.generate(aInterface.getClassLoader(), resultSetInterface, executeQuery(pstmt), null);
+		}
+		return (pstmt, args) -> JdbcNg.generateResultSetProxy(aInterface.getClassLoader(), resultSetInterface, executeQuery(pstmt));
+	    case "execute":
+		return (pstmt, args) -> pstmt.execute();
+	    case "executeUpdate":
+		return (pstmt, args) -> pstmt.executeUpdate();
+	    case "addBatch":
+		return (pstmt, args) -> {
+		    pstmt.addBatch();
+		    return null;
+		};
+	    case "executeBatch":
+		return (pstmt, args) -> pstmt.executeBatch();
+	    case "executeLargeBatch":
+		return (pstmt, args) -> pstmt.executeLargeBatch();
+	    case "executeAll":
+		if (!BulkExecutor.isExecuteAll(m)) {
+		    return null;
+		}
+		final BulkExecutor bulk = new BulkExecutor(aInterface, m);
+		return (pstmt, args) -> bulk.execute(pstmt, args[0]);
+	    case "executeStream":
+		final Class<?> streamedRows = JdbcNg.streamRowType(m);
+		return (pstmt, args) -> RowStream.stream(aInterface.getClassLoader(), streamedRows, executeQuery(pstmt), null);
+	    case "executeColumnar":
+		final Class<?> columnarRows = JdbcNg.columnarRowInterface(m);
+		return (pstmt, args) -> {
+		    try (ResultSet rs = pstmt.executeQuery()) {
+			return ColumnarResult.read(columnarRows, rs);
+		    }
+		};
+	    case "executeQueryPublisher":
+		if (!RowPublisher.isPublisher(m.getReturnType())) {
+		    return null;
+		}
+		final Class<?> rowInterface = JdbcNg.publisherRowType(m);
+		return (pstmt, args) -> RowPublisher.create(aInterface, rowInterface, new RowPublisher.Source() {
+		    @Override
+		    public Connection connect() throws SQLException {
+			Connection conn = pstmt.getConnection();
+			// Another query on the statement would close the result set
+			if (!PUBLISHING.add(pstmt)) {
+			    throw new IllegalStateException("The statement of " + aInterface.getName() + " already has an active subscription,"
+				    + " use a handle bound to a DataSource, see JdbcNg.bind(), to subscribe more than once at a time.");
+			}
+			return conn;
+		    }
+
+		    @Override
+		    public ResultSet executeQuery(Connection conn) throws SQLException {
+			return StatementDispatch.executeQuery(pstmt);
+		    }
+
+		    @Override
+		    public void release(Connection conn) {
+			// The connection and the cached statement belong to the caller
+			PUBLISHING.remove(pstmt);
+		    }
+		});
+	    default:
+		return null;
+	}
+    }
+}
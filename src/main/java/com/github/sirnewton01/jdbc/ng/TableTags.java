@@ -0,0 +1,374 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The tables that each interface reads and writes, and the result caches that
+ *  depend on each table. The tables are the ones declared with {@link Tables}
+ *  and the ones found after FROM, JOIN, INTO, UPDATE and TABLE in the SQL
+ *  text. Table names are compared in upper case without their schema, so a
+ *  write may drop more cached rows than it needs to but never fewer.
+ *
+ * A write drops the cached rows straight away. On a connection that isn't in
+ *  auto-commit mode the tables are also remembered for the connection, so its
+ *  own reads of them bypass the cache, until {@link JdbcNg#commit(java.sql.Connection) }
+ *  drops the rows again, since other connections may have cached the rows from
+ *  before the commit in the meantime, or {@link JdbcNg#rollback(java.sql.Connection) }
+ *  forgets the tables. A transaction ended with Connection.commit() isn't
+ *  seen, so the tables are dropped again the next time the connection is used
+ *  by JDBC-NG in auto-commit mode, such as when a pool hands it out again.
+ *
+ * Pending tables are kept for the connection object, and connection-bound
+ *  implementations use the connection they were created with rather than the
+ *  one their statement returns, so that it's the one passed to JdbcNg.commit().
+ */
+final class TableTags {
+    private static final Logger LOGGER = Logger.getLogger(TableTags.class.getName());
+
+    private static final ClassValue<TableTags> TAGS = new ClassValue<TableTags>() {
+	@Override
+	protected TableTags computeValue(Class<?> type) {
+	    return new TableTags(type);
+	}
+    };
+
+    private static final Set<String> WRITE_KEYWORDS = new HashSet<>(Arrays.asList("INTO", "UPDATE", "TABLE"));
+    private static final Set<String> READ_KEYWORDS = new HashSet<>(Arrays.asList("FROM", "JOIN"));
+
+    private static final ReentrantLock LOCK = new ReentrantLock();
+    private static final Map<String, Set<QueryResultCache>> READERS = new HashMap<>();
+    private static final Map<Connection, Set<String>> PENDING = new WeakHashMap<>();
+
+    private final Set<String> reads;
+    private final Set<String> writes;
+
+    private TableTags(Class<?> aInterface) {
+	Set<String> read = new HashSet<>();
+	Set<String> written = new HashSet<>();
+
+	Tables tables = aInterface.getAnnotation(Tables.class);
+	if (tables != null) {
+	    for (String table: tables.reads()) {
+		read.add(normalize(table));
+	    }
+	    for (String table: tables.writes()) {
+		written.add(normalize(table));
+	    }
+	}
+
+	try {
+	    parse(JdbcNg.loadStatementText(aInterface), read, written);
+	} catch (IOException ex) {
+	    LOGGER.log(Level.FINE, "Unable to find the tables of " + aInterface.getName(), ex);
+	}
+
+	reads = Collections.unmodifiableSet(read);
+	writes = Collections.unmodifiableSet(written);
+    }
+
+    static Set<String> reads(Class<?> aInterface) {
+	return TAGS.get(aInterface).reads;
+    }
+
+    static Set<String> writes(Class<?> aInterface) {
+	return TAGS.get(aInterface).writes;
+    }
+
+    /**
+     * Adds the tables of the SQL text. A table after FROM or JOIN is read
+     *  unless it is the target of a DELETE, and the tables listed with commas
+     *  after FROM are all read.
+     */
+    static void parse(String sql, Set<String> reads, Set<String> writes) {
+	List<String> tokens = tokenize(sql);
+	boolean delete = false;
+
+	for (int i = 0; i < tokens.size() - 1; i++) {
+	    String token = tokens.get(i);
+	    if (token.equals("DELETE")) {
+		delete = true;
+	    } else if (WRITE_KEYWORDS.contains(token) && isName(tokens.get(i + 1))) {
+		writes.add(normalize(tokens.get(i + 1)));
+	    } else if (READ_KEYWORDS.contains(token) && isName(tokens.get(i + 1))) {
+		if (delete && token.equals("FROM")) {
+		    writes.add(normalize(tokens.get(++i)));
+		    delete = false;
+		    continue;
+		}
+		reads.add(normalize(tokens.get(++i)));
+
+		// FROM a x, b y
+		while (token.equals("FROM") && i + 1 < tokens.size()) {
+		    int next = i + 1;
+		    if (isName(tokens.get(next)) && !isKeyword(tokens.get(next))) {
+			next++;
+		    }
+		    if (next + 1 < tokens.size() && tokens.get(next).equals(",") && isName(tokens.get(next + 1))) {
+			i = next + 1;
+			reads.add(normalize(tokens.get(i)));
+		    } else {
+			break;
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Splits the SQL text into upper case words, quoted identifiers and
+     *  punctuation, leaving out comments and string literals.
+     */
+    private static List<String> tokenize(String sql) {
+	List<String> tokens = new ArrayList<>();
+	int i = 0;
+	while (i < sql.length()) {
+	    char c = sql.charAt(i);
+	    if (Character.isWhitespace(c)) {
+		i++;
+	    } else if (sql.startsWith("--", i)) {
+		int end = sql.indexOf('\n', i);
+		i = end == -1 ? sql.length() : end;
+	    } else if (sql.startsWith("/*", i)) {
+		int end = sql.indexOf("*/", i + 2);
+		i = end == -1 ? sql.length() : end + 2;
+	    } else if (c == '\'') {
+		int end = i + 1;
+		while (end < sql.length() && (sql.charAt(end) != '\'' || (end + 1 < sql.length() && sql.charAt(++end) == '\''))) {
+		    end++;
+		}
+		i = end + 1;
+	    } else if (Character.isLetterOrDigit(c) || c == '_' || c == '"' || c == '$') {
+		int start = i;
+		while (i < sql.length()) {
+		    char d = sql.charAt(i);
+		    if (d == '"') {
+			int end = sql.indexOf('"', i + 1);
+			i = end == -1 ? sql.length() : end + 1;
+		    } else if (Character.isLetterOrDigit(d) || d == '_' || d == '$' || d == '.') {
+			i++;
+		    } else {
+			break;
+		    }
+		}
+		String word = sql.substring(start, i);
+		tokens.add(word.indexOf('"') == -1 ? word.toUpperCase(Locale.ROOT) : word);
+	    } else {
+		tokens.add(String.valueOf(c));
+		i++;
+	    }
+	}
+	return tokens;
+    }
+
+    private static boolean isName(String token) {
+	char c = token.charAt(0);
+	return Character.isLetter(c) || c == '_' || c == '"';
+    }
+
+    private static boolean isKeyword(String token) {
+	switch (token) {
+	    case "WHERE":
+	    case "GROUP":
+	    case "ORDER":
+	    case "HAVING":
+	    case "UNION":
+	    case "JOIN":
+	    case "INNER":
+	    case "LEFT":
+	    case "RIGHT":
+	    case "FULL":
+	    case "CROSS":
+	    case "ON":
+	    case "FETCH":
+	    case "OFFSET":
+	    case "LIMIT":
+	    case "FOR":
+		return true;
+	    default:
+		return false;
+	}
+    }
+
+    /**
+     * The table name in upper case without the schema and quotes. Quoted
+     *  names keep their case.
+     */
+    static String normalize(String table) {
+	int dot = -1;
+	boolean quoted = false;
+	for (int i = 0; i < table.length(); i++) {
+	    char c = table.charAt(i);
+	    if (c == '"') {
+		quoted = !quoted;
+	    } else if (c == '.' && !quoted) {
+		dot = i;
+	    }
+	}
+
+	String name = table.substring(dot + 1);
+	if (name.startsWith("\"") && name.endsWith("\"") && name.length() > 1) {
+	    return name.substring(1, name.length() - 1);
+	}
+	return name.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Drops the rows of the cache when one of the interface's tables is
+     *  written.
+     */
+    static void register(QueryResultCache cache, Class<?> aInterface) {
+	LOCK.lock();
+	try {
+	    for (String table: reads(aInterface)) {
+		Set<QueryResultCache> caches = READERS.get(table);
+		if (caches == null) {
+		    caches = Collections.newSetFromMap(new WeakHashMap<QueryResultCache, Boolean>());
+		    READERS.put(table, caches);
+		}
+		caches.add(cache);
+	    }
+	} finally {
+	    LOCK.unlock();
+	}
+    }
+
+    /**
+     * Called after the interface's statement has run on the connection.
+     */
+    static void written(Class<?> aInterface, Connection conn) throws SQLException {
+	Set<String> tables = writes(aInterface);
+	if (tables.isEmpty()) {
+	    return;
+	}
+
+	if (conn == null || conn.getAutoCommit()) {
+	    settle(conn);
+	    invalidate(tables);
+	    return;
+	}
+
+	LOCK.lock();
+	try {
+	    Set<String> pending = PENDING.get(conn);
+	    if (pending == null) {
+		pending = new HashSet<>();
+		PENDING.put(conn, pending);
+	    }
+	    pending.addAll(tables);
+	} finally {
+	    LOCK.unlock();
+	}
+	invalidate(tables);
+    }
+
+    /**
+     * Commits the connection's transaction and drops the cached rows of the
+     *  tables it wrote.
+     */
+    static void commit(Connection conn) throws SQLException {
+	conn.commit();
+	Set<String> pending;
+	LOCK.lock();
+	try {
+	    pending = PENDING.remove(conn);
+	} finally {
+	    LOCK.unlock();
+	}
+	if (pending != null) {
+	    invalidate(pending);
+	}
+    }
+
+    /**
+     * Rolls back the connection's transaction, keeping the cached rows.
+     */
+    static void rollback(Connection conn) throws SQLException {
+	LOCK.lock();
+	try {
+	    PENDING.remove(conn);
+	} finally {
+	    LOCK.unlock();
+	}
+	conn.rollback();
+    }
+
+    /**
+     * Whether the connection's transaction has written any of the tables, so
+     *  that its own reads of them can't be answered from the cache.
+     */
+    static boolean hasPendingWrites(Connection conn, Set<String> tables) throws SQLException {
+	LOCK.lock();
+	try {
+	    Set<String> pending = PENDING.get(conn);
+	    if (pending == null || Collections.disjoint(pending, tables)) {
+		return false;
+	    }
+	} finally {
+	    LOCK.unlock();
+	}
+	return !settle(conn);
+    }
+
+    /**
+     * Drops the cached rows of the tables written by a transaction that has
+     *  ended without {@link #commit(java.sql.Connection) } or
+     *  {@link #rollback(java.sql.Connection) }. A connection in auto-commit mode
+     *  has no transaction, so the one that wrote the tables was committed with
+     *  Connection.commit() or setAutoCommit(true), or rolled back.
+     *
+     * @return whether the connection had no transaction
+     */
+    private static boolean settle(Connection conn) throws SQLException {
+	if (conn == null || !conn.getAutoCommit()) {
+	    return false;
+	}
+	Set<String> pending;
+	LOCK.lock();
+	try {
+	    pending = PENDING.remove(conn);
+	} finally {
+	    LOCK.unlock();
+	}
+	if (pending != null) {
+	    invalidate(pending);
+	}
+	return true;
+    }
+
+    /**
+     * Drops the cached rows of the interfaces that read any of the tables.
+     */
+    static void invalidate(Set<String> tables) {
+	Set<QueryResultCache> caches = new HashSet<>();
+	LOCK.lock();
+	try {
+	    for (String table: tables) {
+		Set<QueryResultCache> readers = READERS.get(table);
+		if (readers != null) {
+		    caches.addAll(readers);
+		}
+	    }
+	} finally {
+	    LOCK.unlock();
+	}
+
+	for (QueryResultCache cache: caches) {
+	    cache.invalidate();
+	}
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the tables that the interface's statement reads and writes, in
+ *  addition to the ones found in the SQL text. Writing to a table through a
+ *  JDBC-NG interface drops the cached rows of the {@link ResultCache}
+ *  interfaces that read it. Declare the tables that can't be found in the
+ *  text, for example the ones used by a view or a stored procedure.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Tables {
+    /**
+     * The names of the tables that the statement reads.
+     */
+    public String[] reads() default {};
+
+    /**
+     * The names of the tables that the statement writes.
+     */
+    public String[] writes() default {};
+}
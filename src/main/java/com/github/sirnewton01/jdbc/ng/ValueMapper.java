@@ -0,0 +1,219 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Creates immutable value objects, such as Java records, from the rows of a
+ *  result set. Each constructor parameter is a column with the parameter's
+ *  name, matched to the column labels as for the getters of a result set
+ *  interface. The names are the record's component names, the names given by
+ *  a java.beans.ConstructorProperties annotation on the constructor or the
+ *  parameter names if the class was compiled with -parameters.
+ *
+ * The constructor is found and the columns resolved once, and the values are
+ *  constructed through a method handle rather than reflection.
+ */
+final class ValueMapper {
+    private static final ClassValue<ValueMapper> MAPPERS = new ClassValue<ValueMapper>() {
+	@Override
+	protected ValueMapper computeValue(Class<?> type) {
+	    return new ValueMapper(type);
+	}
+    };
+
+    private static final String CONSTRUCTOR_PROPERTIES = "java.beans.ConstructorProperties";
+
+    // Records are only available on Java 16 or later
+    private static final Method IS_RECORD;
+    private static final Method GET_RECORD_COMPONENTS;
+    private static final Method GET_NAME;
+    private static final Method GET_TYPE;
+
+    static {
+	Method isRecord = null;
+	Method getRecordComponents = null;
+	Method getName = null;
+	Method getType = null;
+	try {
+	    isRecord = Class.class.getMethod("isRecord");
+	    getRecordComponents = Class.class.getMethod("getRecordComponents");
+	    Class<?> recordComponent = getRecordComponents.getReturnType().getComponentType();
+	    getName = recordComponent.getMethod("getName");
+	    getType = recordComponent.getMethod("getType");
+	} catch (NoSuchMethodException ex) {
+	    isRecord = null;
+	}
+	IS_RECORD = isRecord;
+	GET_RECORD_COMPONENTS = getRecordComponents;
+	GET_NAME = getName;
+	GET_TYPE = getType;
+    }
+
+    private final Class<?> valueClass;
+    private final MethodHandle constructor;
+    private final String[] columnNames;
+    private final Class<?>[] types;
+    private final JdbcAccessors.ColumnGetter[] getters;
+    private final ColumnIndexes columnIndexes;
+
+    private ValueMapper(Class<?> valueClass) {
+	this.valueClass = valueClass;
+
+	Constructor<?> ctor;
+	String[] names;
+	try {
+	    if (isRecord(valueClass)) {
+		Object[] components = (Object[]) GET_RECORD_COMPONENTS.invoke(valueClass);
+		names = new String[components.length];
+		Class<?>[] componentTypes = new Class<?>[components.length];
+		for (int i = 0; i < components.length; i++) {
+		    names[i] = (String) GET_NAME.invoke(components[i]);
+		    componentTypes[i] = (Class<?>) GET_TYPE.invoke(components[i]);
+		}
+		ctor = valueClass.getDeclaredConstructor(componentTypes);
+	    } else {
+		ctor = constructor(valueClass);
+		names = parameterNames(ctor);
+	    }
+
+	    ctor.setAccessible(true);
+	    constructor = MethodHandles.lookup().unreflectConstructor(ctor)
+		    .asSpreader(Object[].class, names.length)
+		    .asType(MethodType.methodType(Object.class, Object[].class));
+	} catch (ReflectiveOperationException | RuntimeException ex) {
+	    throw new IllegalArgumentException("Unable to map rows to " + valueClass.getName() + ": " + ex.getMessage(), ex);
+	}
+
+	columnNames = names;
+	columnIndexes = new ColumnIndexes(names);
+	types = ctor.getParameterTypes();
+	getters = new JdbcAccessors.ColumnGetter[types.length];
+	for (int i = 0; i < types.length; i++) {
+	    getters[i] = JdbcAccessors.getterFor(types[i]);
+	}
+    }
+
+    /**
+     * Whether rows of the type are created by a constructor rather than being
+     *  a row interface.
+     */
+    static boolean isValueClass(Class<?> type) {
+	return !type.isInterface() && !type.isPrimitive() && !type.isArray() && !type.isEnum()
+		&& !Modifier.isAbstract(type.getModifiers()) && !type.getName().startsWith("java.");
+    }
+
+    /**
+     * The mapper of the value class.
+     *
+     * @throws IllegalArgumentException if the class doesn't have a
+     *  constructor with known parameter names
+     */
+    static ValueMapper forClass(Class<?> valueClass) {
+	return MAPPERS.get(valueClass);
+    }
+
+    private static boolean isRecord(Class<?> type) throws ReflectiveOperationException {
+	return IS_RECORD != null && (Boolean) IS_RECORD.invoke(type);
+    }
+
+    /**
+     * The constructor with the ConstructorProperties annotation, otherwise the
+     *  only public constructor.
+     */
+    private static Constructor<?> constructor(Class<?> valueClass) {
+	Constructor<?>[] constructors = valueClass.getConstructors();
+	for (Constructor<?> ctor: valueClass.getDeclaredConstructors()) {
+	    if (constructorProperties(ctor) != null) {
+		return ctor;
+	    }
+	}
+	if (constructors.length != 1) {
+	    throw new IllegalArgumentException("There must be a single public constructor or one annotated with ConstructorProperties.");
+	}
+	return constructors[0];
+    }
+
+    private static String[] parameterNames(Constructor<?> ctor) throws ReflectiveOperationException {
+	Annotation properties = constructorProperties(ctor);
+	if (properties != null) {
+	    String[] names = (String[]) properties.annotationType().getMethod("value").invoke(properties);
+	    if (names.length != ctor.getParameterCount()) {
+		throw new IllegalArgumentException("ConstructorProperties doesn't name every parameter.");
+	    }
+	    return names;
+	}
+
+	Parameter[] parameters = ctor.getParameters();
+	String[] names = new String[parameters.length];
+	for (int i = 0; i < parameters.length; i++) {
+	    if (!parameters[i].isNamePresent()) {
+		throw new IllegalArgumentException("The constructor's parameter names aren't known. Compile it with -parameters or annotate it with ConstructorProperties.");
+	    }
+	    names[i] = parameters[i].getName();
+	}
+	return names;
+    }
+
+    private static Annotation constructorProperties(Constructor<?> ctor) {
+	for (Annotation annotation: ctor.getDeclaredAnnotations()) {
+	    if (annotation.annotationType().getName().equals(CONSTRUCTOR_PROPERTIES)) {
+		return annotation;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Returns the column index for each constructor parameter in the result
+     *  set, see {@link ColumnIndexes}.
+     */
+    int[] columnIndexes(ResultSet rs) throws SQLException {
+	return columnIndexes.resolve(rs);
+    }
+
+    int slotCount() {
+	return types.length;
+    }
+
+    /**
+     * The type of the constructor parameter.
+     */
+    Class<?> slotType(int slot) {
+	return types[slot];
+    }
+
+    String slotColumnName(int slot) {
+	return columnNames[slot];
+    }
+
+    /**
+     * Constructs a value from the current row.
+     */
+    Object read(ResultSet rs, int[] columns) throws SQLException {
+	Object[] values = new Object[getters.length];
+	for (int slot = 0; slot < getters.length; slot++) {
+	    if (columns[slot] == 0) {
+		throw new SQLException("Column " + columnNames[slot] + " for " + valueClass.getSimpleName() + " is not in the result set.");
+	    }
+	    values[slot] = getters[slot].get(rs, columns[slot]);
+	}
+
+	try {
+	    return constructor.invokeExact(values);
+	} catch (RuntimeException | Error ex) {
+	    throw ex;
+	} catch (Throwable ex) {
+	    throw new UndeclaredThrowableException(ex);
+	}
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the rows of a query to {@link Flow.Subscriber}s, for an
+ *  executeQueryPublisher() method. Each subscription executes the query when
+ *  the first rows are requested. Rows are read only as they're requested and
+ *  the fetch size follows the outstanding demand, so a slow subscriber doesn't
+ *  cause the whole result to be buffered. The rows are copies, like those of
+ *  executeQueryAsync(), so they stay valid after the subscriber's onNext.
+ *
+ * The result set is read by tasks of {@link AsyncExecution}, one at a time for
+ *  a subscription, so request() never blocks on the database. The result set
+ *  is closed when the last row has been published, on an error and when the
+ *  subscription is cancelled.
+ *
+ * This class needs Java 9 or later, so it's compiled from its own source
+ *  directory when the build runs on Java 9 or later, see {@link RowPublisher}.
+ */
+final class FlowRowPublisher implements Flow.Publisher<Object> {
+    private static final Logger LOGGER = Logger.getLogger(FlowRowPublisher.class.getName());
+
+    private final Class<?> aInterface;
+    private final Class<?> rowInterface;
+    private final RowPublisher.Source source;
+
+    FlowRowPublisher(Class<?> aInterface, Class<?> rowInterface, RowPublisher.Source source) {
+	this.aInterface = aInterface;
+	this.rowInterface = rowInterface;
+	this.source = source;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Object> subscriber) {
+	if (subscriber == null) {
+	    throw new NullPointerException("The subscriber must not be null.");
+	}
+	subscriber.onSubscribe(new RowSubscription(subscriber));
+    }
+
+    private final class RowSubscription implements Flow.Subscription {
+	private final Flow.Subscriber<? super Object> subscriber;
+	private final AtomicLong demand = new AtomicLong();
+	private final AtomicInteger pending = new AtomicInteger();
+	private volatile boolean cancelled;
+	private volatile Throwable invalidRequest;
+
+	// Only used by the task that drains the subscription
+	private Connection conn;
+	private ResultSet rs;
+	private ResultSetDispatch.RowReader rows;
+	private int fetchSize;
+
+	RowSubscription(Flow.Subscriber<? super Object> subscriber) {
+	    this.subscriber = subscriber;
+	}
+
+	@Override
+	public void request(long n) {
+	    if (n <= 0) {
+		invalidRequest = new IllegalArgumentException("The number of requested rows must be positive, not " + n + ".");
+	    } else {
+		demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+	    }
+	    schedule();
+	}
+
+	@Override
+	public void cancel() {
+	    cancelled = true;
+	    schedule();
+	}
+
+	private void schedule() {
+	    if (pending.getAndIncrement() == 0) {
+		AsyncExecution.submit(aInterface, () -> {
+		    drain();
+		    return null;
+		}).whenComplete((result, ex) -> {
+		    // The task itself doesn't throw, so it wasn't accepted
+		    if (ex != null && !cancelled) {
+			cancelled = true;
+			subscriber.onError(ex);
+		    }
+		});
+	    }
+	}
+
+	private void drain() {
+	    int missed = 1;
+	    do {
+		if (cancelled) {
+		    close();
+		    return;
+		}
+
+		try {
+		    if (invalidRequest != null) {
+			throw invalidRequest;
+		    }
+
+		    if (rs == null) {
+			conn = source.connect();
+			rs = source.executeQuery(conn);
+			rows = ResultSetDispatch.rowReader(aInterface.getClassLoader(), rowInterface, rs);
+		    }
+
+		    long requested = demand.get();
+		    if (requested > 0) {
+			int size = (int) Math.min(requested, RowPublisher.MAX_FETCH_SIZE);
+			if (size != fetchSize) {
+			    rs.setFetchSize(size);
+			    fetchSize = size;
+			}
+		    }
+
+		    long emitted = 0;
+		    while (emitted < requested && !cancelled) {
+			if (!rs.next()) {
+			    cancelled = true;
+			    close();
+			    subscriber.onComplete();
+			    return;
+			}
+			subscriber.onNext(rows.read());
+			emitted++;
+		    }
+
+		    if (emitted > 0 && requested != Long.MAX_VALUE) {
+			demand.addAndGet(-emitted);
+		    }
+		} catch (Throwable ex) {
+		    cancelled = true;
+		    close();
+		    subscriber.onError(ex);
+		    return;
+		}
+
+		missed = pending.addAndGet(-missed);
+	    } while (missed != 0);
+	}
+
+	private void close() {
+	    try {
+		if (rs != null) {
+		    rs.close();
+		}
+	    } catch (SQLException ex) {
+		LOGGER.log(Level.FINE, "Unable to close published result set", ex);
+	    } finally {
+		rs = null;
+	    }
+
+	    try {
+		if (conn != null) {
+		    source.release(conn);
+		}
+	    } catch (SQLException ex) {
+		LOGGER.log(Level.FINE, "Unable to release connection of published result set", ex);
+	    } finally {
+		conn = null;
+	    }
+	}
+    }
+}
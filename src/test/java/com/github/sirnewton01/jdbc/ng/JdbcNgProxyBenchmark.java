@@ -0,0 +1,129 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the overhead of the statement proxy itself. The connection and
+ *  prepared statement are no-op stubs so that only the dispatch cost remains.
+ *  The legacy handler is a copy of the original annotation and method name
+ *  inspecting handler for comparison. The hidden class is the runtime
+ *  generated implementation, when the JDK supports it.
+ *
+ * Run with: java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main JdbcNgProxyBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JdbcNgProxyBenchmark {
+
+    @Statement("com/github/sirnewton01/jdbc/ng/sanity1createrowstmt.sql")
+    public interface BenchStmt {
+	@Pos(1) public void setField1(int i);
+	@Pos(2) public void setField2(String s);
+	@Pos(3) public void setField3(java.util.Date d);
+	public int executeUpdate();
+    }
+
+    private BenchStmt dispatchTable;
+    private BenchStmt hiddenClass;
+    private BenchStmt legacyHandler;
+    private final java.util.Date date = new java.util.Date();
+
+    @Setup
+    public void setup() throws Exception {
+	PreparedStatement pstmt = stub(PreparedStatement.class);
+	Connection conn = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {Connection.class}, new InvocationHandler() {
+	    @Override
+	    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		return pstmt;
+	    }
+	});
+
+	dispatchTable = JdbcNg.generateProxy(conn, BenchStmt.class);
+	hiddenClass = JdbcNg.generate(conn, BenchStmt.class);
+	legacyHandler = (BenchStmt) Proxy.newProxyInstance(BenchStmt.class.getClassLoader(), new Class[] {BenchStmt.class}, new InvocationHandler() {
+	    @Override
+	    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		Pos pos = method.getAnnotation(Pos.class);
+
+		if (pos != null) {
+		    pstmt.setObject(pos.value(), args[0]);
+		    return null;
+		}
+
+		if (method.getName().equals("executeQuery")) {
+		    return null;
+		}
+
+		if (method.getName().equals("execute")) {
+		    return pstmt.execute();
+		}
+
+		if (method.getName().equals("executeUpdate")) {
+		    return pstmt.executeUpdate();
+		}
+
+		return null;
+	    }
+	});
+    }
+
+    @Benchmark
+    public int dispatchTable() {
+	return bindAndExecute(dispatchTable);
+    }
+
+    @Benchmark
+    public int hiddenClass() {
+	return bindAndExecute(hiddenClass);
+    }
+
+    @Benchmark
+    public int legacyHandler() {
+	return bindAndExecute(legacyHandler);
+    }
+
+    private int bindAndExecute(BenchStmt stmt) {
+	stmt.setField1(1);
+	stmt.setField2("abc");
+	stmt.setField3(date);
+	return stmt.executeUpdate();
+    }
+
+    private static <T> T stub(Class<T> type) {
+	return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] {type}, new InvocationHandler() {
+	    @Override
+	    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		Class<?> returnType = method.getReturnType();
+		if (returnType == Integer.TYPE) {
+		    return 0;
+		}
+		if (returnType == Long.TYPE) {
+		    return 0L;
+		}
+		if (returnType == Boolean.TYPE) {
+		    return false;
+		}
+		return null;
+	    }
+	}));
+    }
+}
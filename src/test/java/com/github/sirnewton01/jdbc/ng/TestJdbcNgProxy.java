@@ -1,15 +1,39 @@
 package com.github.sirnewton01.jdbc.ng;
 
+import java.beans.ConstructorProperties;
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.derby.jdbc.EmbeddedDataSource;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
 
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class TestJdbcNgProxy {
     
     public TestJdbcNgProxy() {
@@ -17,6 +41,10 @@ public class TestJdbcNgProxy {
     
     private Connection conn;
     
+    // JdbcNg.generate() spins hidden classes on Java 15 or later, and falls back to the proxy before that
+    private static final boolean HIDDEN_CLASSES = Arrays.stream(MethodHandles.Lookup.class.getMethods())
+	    .anyMatch(m -> m.getName().equals("defineHiddenClass"));
+    
     @BeforeAll
     public void setup() throws ClassNotFoundException, InstantiationException, IllegalAccessException, SQLException {
 	String driver = "org.apache.derby.jdbc.EmbeddedDriver";
@@ -47,6 +75,1287 @@ public class TestJdbcNgProxy {
 	public Date getField3();
     }
     
+    private interface types1insertstmt {
+	@Pos(1) public void setId(int id);
+	@Pos(2) public void setAmount(Long amount);
+	@Pos(3) public void setRatio(double ratio);
+	@Pos(4) public void setFlag(Boolean flag);
+	public int executeUpdate();
+    }
+    
+    private interface types1getstmt {
+	public types1getrs executeQuery();
+    }
+    
+    private interface types1getrs extends JdbcNgResultSet {
+	public int getId();
+	public Long getAmount();
+	public double getRatio();
+	public Boolean getFlag();
+    }
+    
+    @Test
+    public void testTypedAccessors() throws SQLException, IOException {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE TYPES1 (ID INT, AMOUNT BIGINT, RATIO DOUBLE, FLAG BOOLEAN)");
+	}
+	
+	types1insertstmt insert = JdbcNg.generateProxy(conn, types1insertstmt.class);
+	insert.setId(1);
+	insert.setAmount(null);
+	insert.setRatio(0.5);
+	insert.setFlag(null);
+	assertEquals(1, insert.executeUpdate());
+	insert.setId(2);
+	insert.setAmount(5000000000L);
+	insert.setRatio(1.5);
+	insert.setFlag(true);
+	assertEquals(1, insert.executeUpdate());
+	
+	types1getstmt get = JdbcNg.generateProxy(conn, types1getstmt.class);
+	try (types1getrs rs = get.executeQuery()) {
+	    assertTrue(rs.next());
+	    assertEquals(1, rs.getId());
+	    assertNull(rs.getAmount());
+	    assertEquals(0.5, rs.getRatio());
+	    assertNull(rs.getFlag());
+	    assertTrue(rs.next());
+	    assertEquals(2, rs.getId());
+	    assertEquals(Long.valueOf(5000000000L), rs.getAmount());
+	    assertEquals(1.5, rs.getRatio());
+	    assertEquals(Boolean.TRUE, rs.getFlag());
+	    assertFalse(rs.next());
+	}
+	
+	JdbcNg.validateInterface(conn, types1insertstmt.class);
+	JdbcNg.validateInterface(conn, types1getstmt.class);
+    }
+    
+    private interface generated1insertstmt {
+	@Pos(1) public void setId(int id);
+	@Pos(2) public void setName(String name);
+	@Pos(3) public void setAmount(Long amount);
+	public int executeUpdate();
+    }
+    
+    private interface generated1getstmt {
+	@Pos(1) public void setMinId(int id);
+	public generated1getrs executeQuery();
+    }
+    
+    private interface generated1getrs extends JdbcNgResultSet {
+	public int getId();
+	public String getName();
+	public Long getAmount();
+    }
+    
+    @Test
+    public void testGenerate() throws SQLException, IOException {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE GENERATED1 (ID INT, NAME VARCHAR(26), AMOUNT BIGINT)");
+	}
+	
+	generated1insertstmt insert = JdbcNg.generate(conn, generated1insertstmt.class);
+	assertEquals(!HIDDEN_CLASSES, Proxy.isProxyClass(insert.getClass()));
+	insert.setId(1);
+	insert.setName("abc");
+	insert.setAmount(null);
+	assertEquals(1, insert.executeUpdate());
+	insert.setId(2);
+	insert.setName(null);
+	insert.setAmount(42L);
+	assertEquals(1, insert.executeUpdate());
+	
+	generated1getstmt get = JdbcNg.generate(conn, generated1getstmt.class);
+	get.setMinId(1);
+	try (generated1getrs rs = get.executeQuery()) {
+	    assertEquals(!HIDDEN_CLASSES, Proxy.isProxyClass(rs.getClass()));
+	    assertTrue(rs.next());
+	    assertEquals(1, rs.getId());
+	    assertEquals("abc", rs.getName());
+	    assertNull(rs.getAmount());
+	    assertTrue(rs.next());
+	    assertEquals(2, rs.getId());
+	    assertNull(rs.getName());
+	    assertEquals(Long.valueOf(42), rs.getAmount());
+	    assertFalse(rs.next());
+	}
+    }
+    
+    @Test
+    public void testStatementTextCache() throws IOException {
+	assertEquals("SELECT\n    ID, AMOUNT, RATIO, FLAG\nFROM TYPES1\nORDER BY ID", JdbcNg.loadStatementText(types1getstmt.class));
+	CacheStatistics before = JdbcNg.getStatementTextCacheStatistics();
+	
+	JdbcNg.loadStatementText(types1getstmt.class);
+	JdbcNg.loadStatementText(types1getstmt.class);
+	
+	CacheStatistics after = JdbcNg.getStatementTextCacheStatistics();
+	assertEquals(before.getMisses(), after.getMisses());
+	assertEquals(before.getHits() + 2, after.getHits());
+    }
+    
+    private interface values1stmt {
+	public boolean execute();
+    }
+    
+    private interface values2stmt {
+	public boolean execute();
+    }
+    
+    private interface values3stmt {
+	@Pos(1) public void setValue(int value);
+	public values3rs executeQuery();
+    }
+    
+    private interface values3rs extends JdbcNgResultSet {
+	public int getVal();
+    }
+    
+    @Test
+    public void testStatementCache() throws SQLException, IOException {
+	JdbcNg.validateInterface(conn, values1stmt.class);
+	CacheStatistics before = JdbcNg.getStatementCacheStatistics();
+	
+	// Checked back in by validateInterface, so the proxy reuses it
+	values1stmt first = JdbcNg.generateProxy(conn, values1stmt.class);
+	assertTrue(first.execute());
+	CacheStatistics afterHit = JdbcNg.getStatementCacheStatistics();
+	assertEquals(before.getHits() + 1, afterHit.getHits());
+	assertEquals(before.getMisses(), afterHit.getMisses());
+	
+	// The first proxy still has its statement, so the second gets its own
+	values1stmt second = JdbcNg.generateProxy(conn, values1stmt.class);
+	assertTrue(second.execute());
+	assertEquals(afterHit.getMisses() + 1, JdbcNg.getStatementCacheStatistics().getMisses());
+	
+	// Proxies of the same interface keep their own arguments
+	values3stmt outer = JdbcNg.generateProxy(conn, values3stmt.class);
+	outer.setValue(1);
+	values3stmt inner = JdbcNg.generateProxy(conn, values3stmt.class);
+	inner.setValue(2);
+	try (values3rs rs = outer.executeQuery()) {
+	    assertTrue(rs.next());
+	    assertEquals(1, rs.getVal());
+	}
+	try (values3rs rs = inner.executeQuery()) {
+	    assertTrue(rs.next());
+	    assertEquals(2, rs.getVal());
+	}
+	
+	JdbcNg.setStatementCacheSize(1);
+	try {
+	    JdbcNg.validateInterface(conn, values2stmt.class);
+	    JdbcNg.validateInterface(conn, values1stmt.class);
+	    CacheStatistics afterEviction = JdbcNg.getStatementCacheStatistics();
+	    assertTrue(afterEviction.getEvictions() > afterHit.getEvictions());
+	    
+	    // Statements that are checked out are never evicted
+	    assertTrue(first.execute());
+	    assertTrue(second.execute());
+	} finally {
+	    JdbcNg.setStatementCacheSize(StatementCache.DEFAULT_CAPACITY);
+	}
+    }
+    
+    private interface values4stmt extends AutoCloseable {
+	@Pos(1) public void setValue(int value);
+	public values3rs executeQuery();
+	@Override public void close();
+    }
+    
+    @Test
+    public void testStatementLease() throws SQLException, IOException {
+	values4stmt first = JdbcNg.generateProxy(conn, values4stmt.class);
+	first.setValue(1);
+	values3rs rs = first.executeQuery();
+	first.close();
+	assertThrows(IllegalStateException.class, () -> first.setValue(2));
+	
+	// The result set is still open, so the statement isn't checked in yet
+	CacheStatistics before = JdbcNg.getStatementCacheStatistics();
+	values4stmt second = JdbcNg.generateProxy(conn, values4stmt.class);
+	assertEquals(before.getMisses() + 1, JdbcNg.getStatementCacheStatistics().getMisses());
+	second.setValue(2);
+	assertTrue(rs.next());
+	assertEquals(1, rs.getVal());
+	rs.close();
+	second.close();
+	
+	// Closing the handle checks the statement in without waiting for a GC
+	before = JdbcNg.getStatementCacheStatistics();
+	try (values4stmt third = JdbcNg.generateProxy(conn, values4stmt.class)) {
+	    assertEquals(before.getHits() + 1, JdbcNg.getStatementCacheStatistics().getHits());
+	    third.setValue(3);
+	    try (values3rs rs3 = third.executeQuery()) {
+		assertTrue(rs3.next());
+		assertEquals(3, rs3.getVal());
+	    }
+	}
+    }
+    
+    private interface order1getstmt {
+	public order1rs executeQuery();
+    }
+    
+    private interface order2getstmt {
+	public order1rs executeQuery();
+    }
+    
+    private interface order1rs extends JdbcNgResultSet {
+	public int getId();
+	public int getAmount();
+    }
+    
+    private static String readOrder1(order1rs rs) throws SQLException {
+	try {
+	    assertTrue(rs.next());
+	    return rs.getId() + "/" + rs.getAmount();
+	} finally {
+	    rs.close();
+	}
+    }
+    
+    @Test
+    public void testColumnOrder() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE ORDER1 (ID INT, AMOUNT INT)");
+	    stmt.executeUpdate("INSERT INTO ORDER1 VALUES (42, 7)");
+	}
+	
+	// The same row interface read from statements with other column orders
+	order1getstmt first = JdbcNg.generateProxy(conn, order1getstmt.class);
+	order2getstmt second = JdbcNg.generateProxy(conn, order2getstmt.class);
+	assertEquals("42/7", readOrder1(first.executeQuery()));
+	assertEquals("42/7", readOrder1(second.executeQuery()));
+	assertEquals("42/7", readOrder1(first.executeQuery()));
+    }
+    
+    private interface order3getstmt {
+	public order3rs executeQuery();
+    }
+    
+    private interface order4getstmt {
+	public order3rs executeQuery();
+    }
+    
+    private interface order3rs extends JdbcNgResultSet {
+	public int getId();
+	public int getAmount();
+    }
+    
+    @Test
+    public void testGeneratedColumnOrder() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE ORDER3 (ID INT, AMOUNT INT)");
+	    stmt.executeUpdate("INSERT INTO ORDER3 VALUES (42, 7)");
+	}
+	
+	order3getstmt first = JdbcNg.generate(conn, order3getstmt.class);
+	order4getstmt second = JdbcNg.generate(conn, order4getstmt.class);
+	assertEquals(!HIDDEN_CLASSES, Proxy.isProxyClass(first.getClass()));
+	assertEquals(!HIDDEN_CLASSES, Proxy.isProxyClass(second.getClass()));
+	for (int i = 0; i < 2; i++) {
+	    try (order3rs rs = first.executeQuery()) {
+		assertTrue(rs.next());
+		assertEquals(42, rs.getId());
+		assertEquals(7, rs.getAmount());
+	    }
+	    try (order3rs rs = second.executeQuery()) {
+		assertTrue(rs.next());
+		assertEquals(42, rs.getId());
+		assertEquals(7, rs.getAmount());
+	    }
+	}
+    }
+    
+    private interface bound1insertstmt {
+	@Pos(1) public void setId(int id);
+	@Pos(2) public void setName(String name);
+	public int executeUpdate();
+    }
+    
+    private interface bound1countstmt {
+	public bound1countrs executeQuery();
+    }
+    
+    private interface bound1countrs extends JdbcNgResultSet {
+	public int getTotal();
+    }
+    
+    @Test
+    public void testBind() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE BOUND1 (ID INT, NAME VARCHAR(26))");
+	}
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	
+	final bound1insertstmt insert = JdbcNg.bind(dataSource, bound1insertstmt.class);
+	long cachedBefore = JdbcNg.getStatementCacheStatistics().getSize();
+	ExecutorService executor = Executors.newFixedThreadPool(4);
+	try {
+	    List<Future<Integer>> results = new ArrayList<>();
+	    for (int i = 0; i < 100; i++) {
+		final int id = i;
+		results.add(executor.submit(() -> {
+		    insert.setId(id);
+		    insert.setName("name" + id);
+		    return insert.executeUpdate();
+		}));
+	    }
+	    for (Future<Integer> result: results) {
+		assertEquals(1, (int) result.get());
+	    }
+	} finally {
+	    executor.shutdown();
+	}
+	// Each borrowed connection is closed, and its statements with it
+	assertTrue(JdbcNg.getStatementCacheStatistics().getSize() <= cachedBefore);
+	
+	bound1countstmt count = JdbcNg.bind(dataSource, bound1countstmt.class);
+	try (bound1countrs rs = count.executeQuery()) {
+	    assertTrue(rs.next());
+	    assertEquals(100, rs.getTotal());
+	}
+    }
+    
+    private interface batch1insertstmt {
+	@Pos(1) public void setId(int id);
+	@Pos(2) public void setName(String name);
+	public void addBatch();
+	public int[] executeBatch();
+	public long[] executeLargeBatch();
+    }
+    
+    private interface batch1countstmt {
+	public bound1countrs executeQuery();
+    }
+    
+    @Test
+    public void testBatch() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE BATCH1 (ID INT, NAME VARCHAR(26))");
+	}
+	JdbcNg.validateInterface(conn, batch1insertstmt.class);
+	
+	batch1insertstmt insert = JdbcNg.generateProxy(conn, batch1insertstmt.class);
+	for (int i = 0; i < 10; i++) {
+	    insert.setId(i);
+	    insert.setName("name" + i);
+	    insert.addBatch();
+	}
+	assertEquals(10, insert.executeBatch().length);
+	
+	batch1insertstmt generated = JdbcNg.generate(conn, batch1insertstmt.class);
+	assertEquals(!HIDDEN_CLASSES, Proxy.isProxyClass(generated.getClass()));
+	generated.setId(10);
+	generated.setName("name10");
+	generated.addBatch();
+	assertEquals(1, generated.executeLargeBatch().length);
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	batch1insertstmt bound = JdbcNg.bind(dataSource, batch1insertstmt.class);
+	for (int i = 11; i < 20; i++) {
+	    bound.setId(i);
+	    bound.setName("name" + i);
+	    bound.addBatch();
+	}
+	assertEquals(9, bound.executeBatch().length);
+	
+	batch1countstmt count = JdbcNg.generateProxy(conn, batch1countstmt.class);
+	try (bound1countrs rs = count.executeQuery()) {
+	    assertTrue(rs.next());
+	    assertEquals(20, rs.getTotal());
+	}
+    }
+    
+    private static final class bulk1row {
+	private final int id;
+	private final String name;
+	
+	bulk1row(int id, String name) {
+	    this.id = id;
+	    this.name = name;
+	}
+	
+	@Pos(1) public int getId() {
+	    return id;
+	}
+	
+	@Pos(2) public String getName() {
+	    return name;
+	}
+    }
+    
+    private interface bulk1insertstmt {
+	@Batch(rows = 7)
+	public BulkResult executeAll(Iterable<bulk1row> rows);
+    }
+    
+    private interface bulk1insertstreamstmt {
+	public long executeAll(java.util.stream.Stream<bulk1row> rows);
+    }
+    
+    private interface bulk1multistmt {
+	@Batch(rows = 100, multiRow = true, buckets = {8, 32})
+	public BulkResult executeAll(Iterable<bulk1row> rows);
+    }
+    
+    private interface bulk1commitstmt {
+	@Batch(rows = 10, commitEvery = 2)
+	public BulkResult executeAll(Iterable<bulk1row> rows);
+    }
+    
+    private interface bulk1countstmt {
+	public bound1countrs executeQuery();
+    }
+    
+    @Test
+    public void testBulk() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE BULK1 (ID INT, NAME VARCHAR(26))");
+	}
+	JdbcNg.validateInterface(conn, bulk1insertstmt.class);
+	
+	List<bulk1row> rows = new ArrayList<>();
+	for (int i = 0; i < 50; i++) {
+	    rows.add(new bulk1row(i, "name" + i));
+	}
+	
+	bulk1insertstmt insert = JdbcNg.generate(conn, bulk1insertstmt.class);
+	BulkResult result = insert.executeAll(rows);
+	assertEquals(50, result.getRows());
+	assertEquals(50, result.getUpdateCount());
+	assertEquals(8, result.getBatches());
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	bulk1insertstreamstmt bound = JdbcNg.bind(dataSource, bulk1insertstreamstmt.class);
+	assertEquals(50, bound.executeAll(rows.stream()));
+	
+	assertEquals("INSERT INTO T (A, B) VALUES (?, '(?)'), (?, '(?)')", BulkExecutor.multiRowValues("INSERT INTO T (A, B) VALUES (?, '(?)')", 2));
+	JdbcNg.validateInterface(conn, bulk1multistmt.class);
+	bulk1multistmt multi = JdbcNg.generate(conn, bulk1multistmt.class);
+	result = multi.executeAll(rows);
+	assertEquals(50, result.getUpdateCount());
+	assertEquals(1, result.getBatches());
+	
+	bulk1countstmt count = JdbcNg.generateProxy(conn, bulk1countstmt.class);
+	try (bound1countrs rs = count.executeQuery()) {
+	    assertTrue(rs.next());
+	    assertEquals(150, rs.getTotal());
+	}
+	
+	// The rows of a failed row source aren't sent with the next ones
+	Iterable<bulk1row> failing = () -> java.util.stream.Stream.concat(rows.subList(0, 3).stream(),
+		java.util.stream.Stream.<bulk1row>generate(() -> {
+		    throw new IllegalStateException("row source failed");
+		})).iterator();
+	assertThrows(IllegalStateException.class, () -> insert.executeAll(failing));
+	result = insert.executeAll(rows.subList(0, 7));
+	assertEquals(7, result.getUpdateCount());
+	try (bound1countrs rs = count.executeQuery()) {
+	    assertTrue(rs.next());
+	    assertEquals(157, rs.getTotal());
+	}
+	
+	// The last batch is committed even when it completes a commitEvery group
+	List<bulk1row> committed = new ArrayList<>();
+	for (int i = 0; i < 35; i++) {
+	    committed.add(new bulk1row(i, "name" + i));
+	}
+	bulk1commitstmt commitEvery = JdbcNg.generate(conn, bulk1commitstmt.class);
+	conn.setAutoCommit(false);
+	try {
+	    result = commitEvery.executeAll(committed);
+	    conn.rollback();
+	} finally {
+	    conn.setAutoCommit(true);
+	}
+	assertEquals(4, result.getBatches());
+	assertEquals(2, result.getCommits());
+	try (bound1countrs rs = count.executeQuery()) {
+	    assertTrue(rs.next());
+	    assertEquals(192, rs.getTotal());
+	}
+    }
+    
+    private interface async1insertstmt {
+	@Pos(1) public void setId(int id);
+	@Pos(2) public void setName(String name);
+	public CompletableFuture<Integer> executeUpdateAsync();
+    }
+    
+    private interface async1getstmt {
+	@Pos(1) public void setMinId(int minId);
+	public CompletableFuture<List<async1row>> executeQueryAsync();
+    }
+    
+    private interface async1row {
+	public int getId();
+	public String getName();
+    }
+    
+    @Test
+    public void testAsync() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE ASYNC1 (ID INT, NAME VARCHAR(26))");
+	}
+	JdbcNg.validateInterface(conn, async1insertstmt.class);
+	JdbcNg.validateInterface(conn, async1getstmt.class);
+	
+	// Asynchronous methods borrow their own connection
+	assertThrows(IllegalArgumentException.class, () -> JdbcNg.generateProxy(conn, async1insertstmt.class));
+	assertThrows(IllegalArgumentException.class, () -> JdbcNg.generate(conn, async1getstmt.class));
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	
+	JdbcNg.setAsyncConcurrency(async1insertstmt.class, 2);
+	async1insertstmt insert = JdbcNg.bind(dataSource, async1insertstmt.class);
+	List<CompletableFuture<Integer>> futures = new ArrayList<>();
+	for (int i = 0; i < 20; i++) {
+	    insert.setId(i);
+	    insert.setName("name" + i);
+	    futures.add(insert.executeUpdateAsync());
+	}
+	for (CompletableFuture<Integer> future: futures) {
+	    assertEquals(1, (int) future.get());
+	}
+	
+	async1getstmt get = JdbcNg.bind(dataSource, async1getstmt.class);
+	get.setMinId(15);
+	List<async1row> rows = get.executeQueryAsync().get();
+	assertEquals(5, rows.size());
+	for (async1row row: rows) {
+	    assertTrue(row.getId() >= 15);
+	    assertEquals("name" + row.getId(), row.getName());
+	}
+    }
+    
+    private interface stream1getstmt {
+	public Stream<async1row> executeStream();
+    }
+    
+    private interface stream1cursorstmt {
+	public Stream<stream1rs> executeStream();
+    }
+    
+    private interface stream1rs extends JdbcNgResultSet {
+	public int getId();
+	public String getName();
+    }
+    
+    @Test
+    public void testStream() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE STREAM1 (ID INT, NAME VARCHAR(26))");
+	    for (int i = 0; i < 20; i++) {
+		stmt.executeUpdate("INSERT INTO STREAM1 VALUES (" + i + ", 'name" + i + "')");
+	    }
+	}
+	JdbcNg.validateInterface(conn, stream1getstmt.class);
+	
+	stream1getstmt get = JdbcNg.generate(conn, stream1getstmt.class);
+	List<async1row> even;
+	try (Stream<async1row> rows = get.executeStream()) {
+	    even = rows.filter(row -> row.getId() % 2 == 0).collect(Collectors.toList());
+	}
+	assertEquals(10, even.size());
+	assertEquals("name" + even.get(9).getId(), even.get(9).getName());
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	stream1cursorstmt cursor = JdbcNg.bind(dataSource, stream1cursorstmt.class);
+	try (Stream<stream1rs> rows = cursor.executeStream()) {
+	    assertEquals(3, rows.map(stream1rs::getName).filter(name -> name.startsWith("name1")).limit(3).count());
+	}
+    }
+    
+    private interface prefetch1getstmt {
+	@Prefetch(16)
+	public stream1rs executeQuery();
+    }
+    
+    @Test
+    public void testPrefetch() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE PREFETCH1 (ID INT, NAME VARCHAR(26))");
+	    for (int i = 0; i < 100; i++) {
+		stmt.executeUpdate("INSERT INTO PREFETCH1 VALUES (" + i + ", 'name" + i + "')");
+	    }
+	}
+	JdbcNg.validateInterface(conn, prefetch1getstmt.class);
+	
+	prefetch1getstmt get = JdbcNg.generate(conn, prefetch1getstmt.class);
+	int count = 0;
+	try (stream1rs rs = get.executeQuery()) {
+	    while (rs.next()) {
+		assertEquals("name" + rs.getId(), rs.getName());
+		count++;
+	    }
+	}
+	assertEquals(100, count);
+	
+	// Closing early stops the fetching of a full buffer
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	prefetch1getstmt bound = JdbcNg.bind(dataSource, prefetch1getstmt.class);
+	try (stream1rs rs = bound.executeQuery()) {
+	    assertTrue(rs.next());
+	    Thread.sleep(50);
+	}
+	
+	PrefetchStatistics statistics = JdbcNg.getPrefetchStatistics(prefetch1getstmt.class);
+	assertEquals(101, statistics.getRows());
+	assertTrue(statistics.getMaxOccupancy() <= 16);
+	
+	// A result set that isn't being read doesn't hold on to a thread
+	ExecutorService executor = Executors.newSingleThreadExecutor();
+	JdbcNg.setAsyncExecutor(executor);
+	try (stream1rs idle = bound.executeQuery()) {
+	    assertTrue(idle.next());
+	    count = 0;
+	    try (stream1rs rs = bound.executeQuery()) {
+		while (rs.next()) {
+		    count++;
+		}
+	    }
+	    assertEquals(100, count);
+	} finally {
+	    JdbcNg.setAsyncExecutor(null);
+	    executor.shutdown();
+	}
+    }
+    
+    private interface parallel1getstmt {
+	public parallel1rs executeQuery();
+    }
+    
+    private interface parallel1rs extends JdbcNgResultSet {
+	public int getId();
+	public void forEachParallel(Consumer<parallel1rs> action, int chunkSize);
+	public void forEachParallel(Consumer<async1row> action, int chunkSize, boolean ordered);
+    }
+    
+    @Test
+    public void testForEachParallel() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE PARALLEL1 (ID INT, NAME VARCHAR(26))");
+	    for (int i = 0; i < 1000; i++) {
+		stmt.addBatch("INSERT INTO PARALLEL1 VALUES (" + i + ", 'name" + i + "')");
+	    }
+	    stmt.executeBatch();
+	}
+	
+	parallel1getstmt get = JdbcNg.generate(conn, parallel1getstmt.class);
+	LongAdder sum = new LongAdder();
+	try (parallel1rs rs = get.executeQuery()) {
+	    rs.forEachParallel(row -> sum.add(row.getId()), 64);
+	}
+	assertEquals(999 * 1000 / 2, sum.sum());
+	
+	List<String> names = new ArrayList<>();
+	try (parallel1rs rs = get.executeQuery()) {
+	    rs.forEachParallel(row -> names.add(row.getName()), 100, true);
+	}
+	assertEquals(1000, names.size());
+	assertEquals("name999", names.get(999));
+    }
+    
+    private interface flyweight1getstmt {
+	@Flyweight
+	public stream1rs executeQuery();
+    }
+    
+    @Test
+    public void testFlyweight() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE FLYWEIGHT1 (ID INT, NAME VARCHAR(26))");
+	    for (int i = 0; i < 100; i++) {
+		stmt.addBatch("INSERT INTO FLYWEIGHT1 VALUES (" + i + ", 'name" + i + "')");
+	    }
+	    stmt.executeBatch();
+	}
+	JdbcNg.validateInterface(conn, flyweight1getstmt.class);
+	
+	flyweight1getstmt get = JdbcNg.generate(conn, flyweight1getstmt.class);
+	int count = 0;
+	try (stream1rs rs = get.executeQuery()) {
+	    while (rs.next()) {
+		String name = rs.getName();
+		assertSame(name, rs.getName());
+		assertEquals("name" + rs.getId(), name);
+		count++;
+	    }
+	}
+	assertEquals(100, count);
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	flyweight1getstmt bound = JdbcNg.bind(dataSource, flyweight1getstmt.class);
+	try (stream1rs rs = bound.executeQuery()) {
+	    assertTrue(rs.next());
+	    assertEquals("name0", rs.getName());
+	}
+    }
+    
+    public static final class record1value {
+	private final int id;
+	private final String name;
+	
+	@ConstructorProperties({"id", "name"})
+	public record1value(int id, String name) {
+	    this.id = id;
+	    this.name = name;
+	}
+    }
+    
+    public static final class order2value {
+	private final int id;
+	private final int amount;
+	
+	@ConstructorProperties({"id", "amount"})
+	public order2value(int id, int amount) {
+	    this.id = id;
+	    this.amount = amount;
+	}
+    }
+    
+    private interface order2idfirststmt {
+	public List<order2value> executeQuery();
+    }
+    
+    private interface order2amountfirststmt {
+	public List<order2value> executeQuery();
+    }
+    
+    @Test
+    public void testValueColumnOrder() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE ORDER2 (ID INT, AMOUNT INT)");
+	    stmt.executeUpdate("INSERT INTO ORDER2 VALUES (42, 7)");
+	}
+	
+	// The same value class built from statements with other column orders
+	for (int i = 0; i < 2; i++) {
+	    order2value first = JdbcNg.generateProxy(conn, order2idfirststmt.class).executeQuery().get(0);
+	    assertEquals(42, first.id);
+	    assertEquals(7, first.amount);
+	    order2value second = JdbcNg.generateProxy(conn, order2amountfirststmt.class).executeQuery().get(0);
+	    assertEquals(42, second.id);
+	    assertEquals(7, second.amount);
+	}
+    }
+    
+    private interface record1getstmt {
+	public List<record1value> executeQuery();
+	public Stream<record1value> executeStream();
+    }
+    
+    private interface record1cursorstmt {
+	public record1rs executeQuery();
+    }
+    
+    private interface record1rs extends JdbcNgResultSet {
+	public record1value current();
+	public void forEachParallel(Consumer<record1value> action, int chunkSize);
+    }
+    
+    @Test
+    public void testValueRows() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE RECORD1 (ID INT, NAME VARCHAR(26))");
+	    for (int i = 0; i < 50; i++) {
+		stmt.addBatch("INSERT INTO RECORD1 VALUES (" + i + ", 'name" + i + "')");
+	    }
+	    stmt.executeBatch();
+	}
+	JdbcNg.validateInterface(conn, record1getstmt.class);
+	
+	record1getstmt get = JdbcNg.generate(conn, record1getstmt.class);
+	List<record1value> rows = get.executeQuery();
+	assertEquals(50, rows.size());
+	for (record1value row: rows) {
+	    assertEquals("name" + row.id, row.name);
+	}
+	try (Stream<record1value> stream = get.executeStream()) {
+	    assertEquals(50, stream.filter(row -> row.name.equals("name" + row.id)).count());
+	}
+	
+	record1cursorstmt cursor = JdbcNg.generate(conn, record1cursorstmt.class);
+	try (record1rs rs = cursor.executeQuery()) {
+	    assertTrue(rs.next());
+	    assertEquals("name" + rs.current().id, rs.current().name);
+	}
+	LongAdder sum = new LongAdder();
+	try (record1rs rs = cursor.executeQuery()) {
+	    rs.forEachParallel(row -> sum.add(row.id), 8);
+	}
+	assertEquals(49 * 50 / 2, sum.sum());
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	record1getstmt bound = JdbcNg.bind(dataSource, record1getstmt.class);
+	assertEquals(50, bound.executeQuery().size());
+    }
+    
+    @ResultCache(maxEntries = 2)
+    private interface cache1getstmt {
+	@Pos(1)
+	public void setId(int id);
+	public stream1rs executeQuery();
+    }
+    
+    @ResultCache(ttlMillis = 1)
+    private interface cache2getstmt {
+	@Pos(1)
+	public void setId(int id);
+	public List<record1value> executeQuery();
+    }
+    
+    @ResultCache
+    private interface cache3getstmt {
+	@Pos(1)
+	public void setIds(int[] ids);
+	public List<record1value> executeQuery();
+    }
+    
+    @ResultCache
+    private interface cache4getstmt {
+	@Pos(1)
+	public void setIds(List<Integer> ids);
+	public List<record1value> executeQuery();
+    }
+    
+    @Test
+    public void testResultCache() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE CACHE1 (ID INT, NAME VARCHAR(26))");
+	    for (int i = 0; i < 10; i++) {
+		stmt.executeUpdate("INSERT INTO CACHE1 VALUES (" + i + ", 'name" + i + "')");
+	    }
+	}
+	JdbcNg.validateInterface(conn, cache1getstmt.class);
+	
+	cache1getstmt get = JdbcNg.generate(conn, cache1getstmt.class);
+	for (int i = 0; i < 3; i++) {
+	    get.setId(1);
+	    try (stream1rs rs = get.executeQuery()) {
+		assertTrue(rs.next());
+		assertEquals("name1", rs.getName());
+		assertFalse(rs.next());
+	    }
+	    try (java.sql.Statement stmt = conn.createStatement()) {
+		stmt.executeUpdate("UPDATE CACHE1 SET NAME = 'changed' WHERE ID = 1");
+	    }
+	}
+	CacheStatistics statistics = JdbcNg.getResultCacheStatistics(cache1getstmt.class);
+	assertEquals(2, statistics.getHits());
+	assertEquals(1, statistics.getMisses());
+	
+	get.setId(2);
+	get.executeQuery().close();
+	get.setId(3);
+	get.executeQuery().close();
+	statistics = JdbcNg.getResultCacheStatistics(cache1getstmt.class);
+	assertEquals(1, statistics.getEvictions());
+	assertEquals(2, statistics.getSize());
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	cache2getstmt bound = JdbcNg.bind(dataSource, cache2getstmt.class);
+	bound.setId(4);
+	assertEquals("name4", bound.executeQuery().get(0).name);
+	Thread.sleep(5);
+	bound.setId(4);
+	assertEquals(1, bound.executeQuery().size());
+	assertEquals(2, JdbcNg.getResultCacheStatistics(cache2getstmt.class).getMisses());
+	
+	// Changing an argument after the query doesn't change the cached key
+	cache3getstmt array = JdbcNg.generate(conn, cache3getstmt.class);
+	int[] ids = {5, 6};
+	array.setIds(ids);
+	assertEquals(6, array.executeQuery().get(1).id);
+	ids[1] = 7;
+	array.setIds(ids);
+	assertEquals(7, array.executeQuery().get(1).id);
+	array.setIds(new int[] {5, 6});
+	assertEquals(6, array.executeQuery().get(1).id);
+	CacheStatistics arrayStatistics = JdbcNg.getResultCacheStatistics(cache3getstmt.class);
+	assertEquals(2, arrayStatistics.getMisses());
+	assertEquals(1, arrayStatistics.getHits());
+	
+	cache4getstmt list = JdbcNg.generate(conn, cache4getstmt.class);
+	List<Integer> idList = new ArrayList<>(Arrays.asList(5, 6));
+	list.setIds(idList);
+	assertEquals(6, list.executeQuery().get(1).id);
+	idList.set(1, 7);
+	list.setIds(idList);
+	assertEquals(7, list.executeQuery().get(1).id);
+	list.setIds(Arrays.asList(5, 6));
+	assertEquals(6, list.executeQuery().get(1).id);
+	CacheStatistics listStatistics = JdbcNg.getResultCacheStatistics(cache4getstmt.class);
+	assertEquals(2, listStatistics.getMisses());
+	assertEquals(1, listStatistics.getHits());
+    }
+    
+    @ResultCache
+    private interface tags1getstmt {
+	@Pos(1)
+	public void setId(int id);
+	public stream1rs executeQuery();
+    }
+    
+    private interface tags1updatestmt {
+	@Pos(1)
+	public void setName(String name);
+	@Pos(2)
+	public void setId(int id);
+	public int executeUpdate();
+    }
+    
+    private String readTags1(tags1getstmt get) {
+	get.setId(1);
+	try (stream1rs rs = get.executeQuery()) {
+	    assertTrue(rs.next());
+	    return rs.getName();
+	} catch (SQLException ex) {
+	    throw new IllegalStateException(ex);
+	}
+    }
+    
+    @Test
+    public void testTableTags() throws Exception {
+	Set<String> reads = new HashSet<>();
+	Set<String> writes = new HashSet<>();
+	TableTags.parse("SELECT a.X FROM APP.T1 a, T2 b JOIN \"t3\" ON a.X = t3.X WHERE a.X IN (SELECT Y FROM t4) -- FROM T9", reads, writes);
+	assertEquals(new HashSet<>(Arrays.asList("T1", "T2", "t3", "T4")), reads);
+	TableTags.parse("DELETE FROM T5 WHERE NAME = 'FROM T8'", reads, writes);
+	TableTags.parse("INSERT INTO T6 (X) VALUES (1)", reads, writes);
+	TableTags.parse("UPDATE T7 SET X = 2", reads, writes);
+	assertEquals(new HashSet<>(Arrays.asList("T5", "T6", "T7")), writes);
+	
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE TAGS1 (ID INT, NAME VARCHAR(26))");
+	    stmt.executeUpdate("INSERT INTO TAGS1 VALUES (1, 'name1')");
+	}
+	
+	tags1getstmt get = JdbcNg.generate(conn, tags1getstmt.class);
+	tags1updatestmt update = JdbcNg.generate(conn, tags1updatestmt.class);
+	assertEquals(!HIDDEN_CLASSES, Proxy.isProxyClass(update.getClass()));
+	assertEquals("name1", readTags1(get));
+	assertEquals("name1", readTags1(get));
+	assertEquals(1, JdbcNg.getResultCacheStatistics(tags1getstmt.class).getHits());
+	
+	update.setName("auto");
+	update.setId(1);
+	assertEquals(1, update.executeUpdate());
+	assertEquals("auto", readTags1(get));
+	assertEquals(2, JdbcNg.getResultCacheStatistics(tags1getstmt.class).getMisses());
+	
+	conn.setAutoCommit(false);
+	try {
+	    update.setName("rolledback");
+	    update.setId(1);
+	    update.executeUpdate();
+	    assertEquals("rolledback", readTags1(get));
+	    JdbcNg.rollback(conn);
+	    // The write dropped the cached rows before it was rolled back
+	    assertEquals("auto", readTags1(get));
+	    assertEquals(1, JdbcNg.getResultCacheStatistics(tags1getstmt.class).getHits());
+	    assertEquals(3, JdbcNg.getResultCacheStatistics(tags1getstmt.class).getMisses());
+	    
+	    update.setName("committed");
+	    update.setId(1);
+	    update.executeUpdate();
+	    JdbcNg.commit(conn);
+	    assertEquals("committed", readTags1(get));
+	} finally {
+	    conn.setAutoCommit(true);
+	}
+	
+	JdbcNg.invalidateResultCaches("app.tags1");
+	assertEquals("committed", readTags1(get));
+	assertEquals(5, JdbcNg.getResultCacheStatistics(tags1getstmt.class).getMisses());
+	
+	// A plain commit is seen once the connection is back in auto-commit mode
+	conn.setAutoCommit(false);
+	try {
+	    update.setName("plain");
+	    update.setId(1);
+	    update.executeUpdate();
+	    conn.commit();
+	} finally {
+	    conn.setAutoCommit(true);
+	}
+	assertEquals("plain", readTags1(get));
+	assertEquals(6, JdbcNg.getResultCacheStatistics(tags1getstmt.class).getMisses());
+	assertEquals("plain", readTags1(get));
+	assertEquals(2, JdbcNg.getResultCacheStatistics(tags1getstmt.class).getHits());
+	
+	// Rows cached by another connection are dropped by the write itself
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	try (Connection other = dataSource.getConnection()) {
+	    tags1getstmt otherGet = JdbcNg.generate(other, tags1getstmt.class);
+	    assertEquals("plain", readTags1(otherGet));
+	    conn.setAutoCommit(false);
+	    try {
+		update.setName("unseen");
+		update.setId(1);
+		update.executeUpdate();
+		conn.commit();
+		assertEquals("unseen", readTags1(otherGet));
+	    } finally {
+		conn.setAutoCommit(true);
+	    }
+	}
+    }
+    
+    @SingleFlight
+    private interface flight1getstmt {
+	@Pos(1)
+	public void setId(int id);
+	public List<record1value> executeQuery();
+    }
+    
+    @SingleFlight
+    private interface flight1insertstmt {
+	@Pos(1)
+	public void setId(int id);
+	@Pos(2)
+	public void setName(String name);
+	public int executeUpdate();
+    }
+    
+    private static final LongAdder FLIGHT1_QUERIES = new LongAdder();
+    
+    /**
+     * Called by the FLIGHT1 query to keep it running while the others arrive.
+     */
+    public static int flight1Wait(int id) throws InterruptedException {
+	FLIGHT1_QUERIES.increment();
+	Thread.sleep(500);
+	return 1;
+    }
+    
+    @Test
+    public void testSingleFlight() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE FLIGHT1 (ID INT, NAME VARCHAR(26))");
+	    stmt.executeUpdate("INSERT INTO FLIGHT1 VALUES (1, 'name1')");
+	    stmt.executeUpdate("CREATE FUNCTION FLIGHT1WAIT(ID INT) RETURNS INT LANGUAGE JAVA PARAMETER STYLE JAVA NO SQL "
+		    + "EXTERNAL NAME '" + TestJdbcNgProxy.class.getName() + ".flight1Wait'");
+	}
+	JdbcNg.validateInterface(conn, flight1getstmt.class);
+	assertThrows(IllegalArgumentException.class, () -> JdbcNg.validateInterface(conn, flight1insertstmt.class));
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	final flight1getstmt get = JdbcNg.bind(dataSource, flight1getstmt.class);
+	ExecutorService executor = Executors.newFixedThreadPool(8);
+	try {
+	    List<Future<List<record1value>>> results = new ArrayList<>();
+	    for (int i = 0; i < 8; i++) {
+		results.add(executor.submit(() -> {
+		    get.setId(1);
+		    return get.executeQuery();
+		}));
+	    }
+	    List<record1value> first = results.get(0).get();
+	    assertEquals("name1", first.get(0).name);
+	    for (Future<List<record1value>> result: results) {
+		assertSame(first, result.get());
+	    }
+	} finally {
+	    executor.shutdown();
+	}
+	assertEquals(1, FLIGHT1_QUERIES.sum());
+	CacheStatistics statistics = JdbcNg.getResultCacheStatistics(flight1getstmt.class);
+	assertEquals(7, statistics.getHits());
+	assertEquals(1, statistics.getMisses());
+	assertEquals(0, statistics.getSize());
+	
+	// Nothing is kept once the query is done
+	get.setId(1);
+	assertEquals(1, get.executeQuery().size());
+	assertEquals(2, FLIGHT1_QUERIES.sum());
+    }
+    
+    @Coalesce(windowMillis = 1000, maxKeys = 4)
+    private interface loader1getstmt {
+	@Pos(1)
+	public void setId(int id);
+	public List<record1value> executeQuery();
+    }
+    
+    @Test
+    public void testBatchLoader() throws Exception {
+	assertEquals(1, InList.bucket(1));
+	assertEquals(4, InList.bucket(3));
+	assertEquals(8, InList.bucket(8));
+	assertEquals("SELECT '?' FROM T WHERE A IN (?, ?, ?, ?) AND B = ? -- ?",
+		InList.expand("SELECT '?' FROM T WHERE A IN (?) AND B = ? -- ?", new int[] {0, 4, 1}));
+	
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE LOADER1 (ID INT, NAME VARCHAR(26))");
+	    for (int i = 0; i < 10; i++) {
+		stmt.executeUpdate("INSERT INTO LOADER1 VALUES (" + i + ", 'name" + i + "')");
+	    }
+	}
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	BatchLoader<Integer, record1value> loader = JdbcNg.loader(dataSource, loader1getstmt.class);
+	
+	// The same key shares a future
+	CompletableFuture<record1value> one = loader.load(1);
+	assertSame(one, loader.load(1));
+	CompletableFuture<record1value> two = loader.load(2);
+	CompletableFuture<record1value> missing = loader.load(99);
+	loader.dispatch();
+	assertEquals("name1", one.get().name);
+	assertEquals("name2", two.get().name);
+	assertNull(missing.get());
+	
+	// The fourth key fills the query without waiting for the window
+	List<CompletableFuture<record1value>> full = new ArrayList<>();
+	for (int i = 3; i < 7; i++) {
+	    full.add(loader.load(i));
+	}
+	for (int i = 3; i < 7; i++) {
+	    assertEquals("name" + i, full.get(i - 3).get(900, java.util.concurrent.TimeUnit.MILLISECONDS).name);
+	}
+	
+	assertEquals(7, loader.load(7).get().id);
+    }
+    
+    private interface list1getstmt {
+	@Pos(1)
+	public void setIds(long[] ids);
+	@Pos(2)
+	public void setName(String name);
+	public List<record1value> executeQuery();
+    }
+    
+    private interface list2getstmt {
+	@Pos(1)
+	public void setIds(List<Integer> ids);
+	@Pos(2)
+	public void setName(String name);
+	public stream1rs executeQuery();
+    }
+    
+    private interface list3updatestmt {
+	@Pos(1)
+	public void setName(String name);
+	@Pos(2)
+	public void setIds(int[] ids);
+	public void addBatch();
+	public int[] executeBatch();
+    }
+    
+    @Test
+    public void testListArguments() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE LIST1 (ID INT, NAME VARCHAR(26))");
+	    for (int i = 0; i < 10; i++) {
+		stmt.executeUpdate("INSERT INTO LIST1 VALUES (" + i + ", 'name" + i + "')");
+	    }
+	}
+	JdbcNg.validateInterface(conn, list1getstmt.class);
+	
+	list1getstmt get = JdbcNg.generate(conn, list1getstmt.class);
+	get.setIds(new long[] {1, 2, 3});
+	get.setName("name2");
+	List<record1value> rows = get.executeQuery();
+	assertEquals(2, rows.size());
+	assertEquals("name1", rows.get(0).name);
+	assertEquals("name3", rows.get(1).name);
+	
+	// The arguments are kept, like those of a PreparedStatement
+	get.setIds(new long[] {4});
+	assertEquals(1, get.executeQuery().size());
+	get.setIds(new long[0]);
+	assertThrows(IllegalArgumentException.class, get::executeQuery);
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	list2getstmt bound = JdbcNg.bind(dataSource, list2getstmt.class);
+	bound.setIds(Arrays.asList(5, 6, 7, 8, 9));
+	bound.setName("none");
+	int count = 0;
+	try (stream1rs rs = bound.executeQuery()) {
+	    while (rs.next()) {
+		assertEquals("name" + (count + 5), rs.getName());
+		count++;
+	    }
+	}
+	assertEquals(5, count);
+	
+	// Each row of a batch could need a different statement
+	assertThrows(IllegalArgumentException.class, () -> JdbcNg.bind(dataSource, list3updatestmt.class));
+    }
+    
+    private interface columnar1getstmt {
+	public ColumnarResult<columnar1row> executeColumnar();
+    }
+    
+    private interface columnar1row {
+	public int getId();
+	public double getAmount();
+	public String getCategory();
+	public Integer getScore();
+	public boolean getFlag();
+	public boolean next();
+    }
+    
+    @Test
+    public void testColumnar() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE COLUMNAR1 (ID INT, AMOUNT DOUBLE, CATEGORY VARCHAR(10), SCORE INT, FLAG BOOLEAN)");
+	    for (int i = 0; i < 3000; i++) {
+		stmt.addBatch("INSERT INTO COLUMNAR1 VALUES (" + i + ", " + i + ".5, 'c" + (i % 5) + "', "
+			+ (i % 3 == 0 ? "NULL" : String.valueOf(i)) + ", " + (i % 2 == 0) + ")");
+	    }
+	    stmt.executeBatch();
+	}
+	JdbcNg.validateInterface(conn, columnar1getstmt.class);
+	
+	columnar1getstmt get = JdbcNg.generate(conn, columnar1getstmt.class);
+	ColumnarResult<columnar1row> result = get.executeColumnar();
+	assertEquals(3000, result.size());
+	
+	columnar1row row = result.get(10);
+	assertEquals(10, row.getId());
+	assertEquals(10.5, row.getAmount(), 0.001);
+	assertEquals("c0", row.getCategory());
+	assertEquals(Integer.valueOf(10), row.getScore());
+	assertTrue(row.getFlag());
+	assertNull(result.get(9).getScore());
+	assertFalse(result.get(9).getFlag());
+	
+	double total = 0;
+	int count = 0;
+	columnar1row cursor = result.cursor();
+	while (cursor.next()) {
+	    assertEquals("c" + (cursor.getId() % 5), cursor.getCategory());
+	    total += cursor.getAmount();
+	    count++;
+	}
+	assertEquals(3000, count);
+	assertEquals(2999 * 3000 / 2 + 1500, total, 0.001);
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	columnar1getstmt bound = JdbcNg.bind(dataSource, columnar1getstmt.class);
+	assertEquals(3000, bound.executeColumnar().size());
+    }
+    
     @Test
     public void testSanity1() throws SQLException, ClassNotFoundException, InstantiationException, IllegalAccessException, IOException {
 	setup();
@@ -69,5 +1378,8 @@ public class TestJdbcNgProxy {
 		assertEquals(new Date(94, 1, 23), rs.getField3());
 	    }
 	}
+	
+	JdbcNg.validateInterface(conn, sanity1createrowstmt.class);
+	JdbcNg.validateInterface(conn, sanity1getrowstmt.class);
     }
 }
@@ -0,0 +1,145 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+/**
+ * Tests of executeQueryPublisher(). Flow needs Java 9 or later, so they're
+ *  left out of the build on Java 8, see the before-jdk9 profile.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class TestRowPublisher {
+    
+    private Connection conn;
+    
+    @BeforeAll
+    public void setup() throws ClassNotFoundException, InstantiationException, IllegalAccessException, SQLException {
+	String driver = "org.apache.derby.jdbc.EmbeddedDriver";
+	Class.forName(driver).newInstance();
+	
+	conn = DriverManager.getConnection("jdbc:derby:memory:myInMemDB;create=true", new Properties());
+    }
+    
+    private interface publisher1row {
+	public int getId();
+	public String getName();
+    }
+    
+    private interface publisher1getstmt {
+	public Flow.Publisher<publisher1row> executeQueryPublisher();
+    }
+    
+    /**
+     * Requests rows in chunks and cancels after a number of rows.
+     */
+    private static final class ChunkSubscriber implements Flow.Subscriber<publisher1row> {
+	final List<publisher1row> rows = new ArrayList<>();
+	final CompletableFuture<List<publisher1row>> done = new CompletableFuture<>();
+	final int chunk;
+	final int cancelAfter;
+	Flow.Subscription subscription;
+	
+	ChunkSubscriber(int chunk, int cancelAfter) {
+	    this.chunk = chunk;
+	    this.cancelAfter = cancelAfter;
+	}
+	
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+	    this.subscription = subscription;
+	    subscription.request(chunk);
+	}
+	
+	@Override
+	public void onNext(publisher1row row) {
+	    rows.add(row);
+	    if (rows.size() == cancelAfter) {
+		subscription.cancel();
+		done.complete(rows);
+	    } else if (rows.size() % chunk == 0) {
+		subscription.request(chunk);
+	    }
+	}
+	
+	@Override
+	public void onError(Throwable ex) {
+	    done.completeExceptionally(ex);
+	}
+	
+	@Override
+	public void onComplete() {
+	    done.complete(rows);
+	}
+    }
+    
+    @Test
+    public void testPublisher() throws Exception {
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE PUBLISHER1 (ID INT, NAME VARCHAR(26))");
+	    for (int i = 0; i < 100; i++) {
+		stmt.executeUpdate("INSERT INTO PUBLISHER1 VALUES (" + i + ", 'name" + i + "')");
+	    }
+	}
+	JdbcNg.validateInterface(conn, publisher1getstmt.class);
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	publisher1getstmt bound = JdbcNg.bind(dataSource, publisher1getstmt.class);
+	ChunkSubscriber all = new ChunkSubscriber(7, -1);
+	bound.executeQueryPublisher().subscribe(all);
+	List<publisher1row> rows = all.done.get();
+	assertEquals(100, rows.size());
+	assertEquals("name" + rows.get(99).getId(), rows.get(99).getName());
+	
+	publisher1getstmt proxy = JdbcNg.generateProxy(conn, publisher1getstmt.class);
+	ChunkSubscriber some = new ChunkSubscriber(5, 12);
+	proxy.executeQueryPublisher().subscribe(some);
+	assertEquals(12, some.done.get().size());
+	
+	// A second subscription would run the query again on the same statement
+	CompletableFuture<Flow.Subscription> open = new CompletableFuture<>();
+	proxy.executeQueryPublisher().subscribe(new Flow.Subscriber<publisher1row>() {
+	    private Flow.Subscription subscription;
+	    
+	    @Override
+	    public void onSubscribe(Flow.Subscription subscription) {
+		this.subscription = subscription;
+		subscription.request(1);
+	    }
+	    
+	    @Override
+	    public void onNext(publisher1row row) {
+		open.complete(subscription);
+	    }
+	    
+	    @Override
+	    public void onError(Throwable ex) {
+		open.completeExceptionally(ex);
+	    }
+	    
+	    @Override
+	    public void onComplete() {
+	    }
+	});
+	Flow.Subscription first = open.get();
+	ChunkSubscriber second = new ChunkSubscriber(5, 12);
+	proxy.executeQueryPublisher().subscribe(second);
+	ExecutionException ex = assertThrows(ExecutionException.class, () -> second.done.get());
+	assertTrue(ex.getCause() instanceof IllegalStateException);
+	first.cancel();
+    }
+}
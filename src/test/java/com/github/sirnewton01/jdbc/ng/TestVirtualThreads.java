@@ -0,0 +1,113 @@
+package com.github.sirnewton01.jdbc.ng;
+
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+/**
+ * Tests of the asynchronous methods on virtual threads. They record with JFR,
+ *  so they're only compiled on Java 21 or later, see the before-jdk21 profile.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class TestVirtualThreads {
+    
+    private Connection conn;
+    
+    @BeforeAll
+    public void setup() throws ClassNotFoundException, InstantiationException, IllegalAccessException, SQLException {
+	String driver = "org.apache.derby.jdbc.EmbeddedDriver";
+	Class.forName(driver).newInstance();
+	
+	conn = DriverManager.getConnection("jdbc:derby:memory:myInMemDB;create=true", new Properties());
+    }
+    
+    private interface virtual1getstmt {
+	@Pos(1) public void setMinId(int minId);
+	public CompletableFuture<List<virtual1row>> executeQueryAsync();
+    }
+    
+    private interface virtual1row {
+	public int getId();
+	public String getName();
+    }
+    
+    @Test
+    public void testVirtualThreads() throws Exception {
+	assumeTrue(JdbcNg.useVirtualThreads(), "Virtual threads need Java 21 or later");
+	try (java.sql.Statement stmt = conn.createStatement()) {
+	    stmt.executeUpdate("CREATE TABLE VIRTUAL1 (ID INT, NAME VARCHAR(26))");
+	    stmt.executeUpdate("INSERT INTO VIRTUAL1 VALUES (1, 'name1'), (2, 'name2'), (3, 'name3')");
+	}
+	
+	EmbeddedDataSource dataSource = new EmbeddedDataSource();
+	dataSource.setDatabaseName("memory:myInMemDB");
+	JdbcNg.setAsyncConcurrency(virtual1getstmt.class, 32);
+	virtual1getstmt get = JdbcNg.bind(dataSource, virtual1getstmt.class);
+	
+	Path recordingFile = Files.createTempFile("jdbcng", ".jfr");
+	try (Recording recording = new Recording()) {
+	    recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+	    recording.start();
+	    
+	    // Rounds of queries that fit in the interface's queue
+	    for (int round = 0; round < 5; round++) {
+		List<CompletableFuture<List<virtual1row>>> futures = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+		    get.setMinId(i % 3 + 1);
+		    futures.add(get.executeQueryAsync());
+		}
+		for (int i = 0; i < futures.size(); i++) {
+		    assertEquals(3 - i % 3, futures.get(i).get().size());
+		}
+	    }
+	    
+	    recording.stop();
+	    recording.dump(recordingFile);
+	    
+	    // Every task runs below JDBC-NG's frames, and Derby has monitors of its
+	    //  own. So only JDBC-NG's code that parked, or that holds a monitor,
+	    //  must not show up in the stacks.
+	    for (RecordedEvent event: RecordingFile.readAllEvents(recordingFile)) {
+		if (event.getStackTrace() == null) {
+		    continue;
+		}
+		boolean parked = false;
+		for (RecordedFrame frame: event.getStackTrace().getFrames()) {
+		    String className = frame.getMethod().getType().getName();
+		    String method = className + "." + frame.getMethod().getName();
+		    boolean jdk = className.startsWith("java.") || className.startsWith("jdk.") || className.startsWith("sun.");
+		    boolean jdbcNg = className.startsWith(JdbcNg.class.getPackage().getName() + ".");
+		    
+		    if (!parked && !jdk) {
+			parked = true;
+			assertFalse(jdbcNg, "Virtual thread pinned while parked in " + method);
+		    }
+		    assertFalse(jdbcNg && Modifier.isSynchronized(frame.getMethod().getModifiers()),
+			    "Virtual thread pinned by the monitor of " + method);
+		}
+	    }
+	} finally {
+	    JdbcNg.setAsyncExecutor(null);
+	    Files.deleteIfExists(recordingFile);
+	}
+    }
+}
@@ -0,0 +1,3 @@
+SELECT
+    COUNT(*) AS TOTAL
+FROM BOUND1
\ No newline at end of file
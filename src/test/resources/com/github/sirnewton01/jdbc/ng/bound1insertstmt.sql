@@ -0,0 +1,4 @@
+INSERT INTO BOUND1
+    (ID, NAME)
+VALUES
+    (?, ?)
\ No newline at end of file
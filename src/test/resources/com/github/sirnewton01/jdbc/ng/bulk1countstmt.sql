@@ -0,0 +1,3 @@
+SELECT
+    COUNT(*) AS TOTAL
+FROM BULK1
\ No newline at end of file
@@ -0,0 +1,4 @@
+SELECT
+    ID, NAME
+FROM CACHE1
+WHERE ID = ?
\ No newline at end of file
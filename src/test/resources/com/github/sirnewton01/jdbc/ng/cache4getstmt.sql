@@ -0,0 +1,5 @@
+SELECT
+    ID, NAME
+FROM CACHE1
+WHERE ID IN (?)
+ORDER BY ID
\ No newline at end of file
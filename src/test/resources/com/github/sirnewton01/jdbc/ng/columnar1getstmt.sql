@@ -0,0 +1,3 @@
+SELECT
+    ID, AMOUNT, CATEGORY, SCORE, FLAG
+FROM COLUMNAR1
\ No newline at end of file
@@ -0,0 +1,4 @@
+SELECT
+    ID, NAME
+FROM FLIGHT1
+WHERE ID = ? AND FLIGHT1WAIT(ID) = 1
\ No newline at end of file
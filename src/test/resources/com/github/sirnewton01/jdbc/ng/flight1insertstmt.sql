@@ -0,0 +1 @@
+INSERT INTO FLIGHT1 (ID, NAME) VALUES (?, ?)
\ No newline at end of file
@@ -0,0 +1,3 @@
+SELECT
+    ID, NAME
+FROM FLYWEIGHT1
\ No newline at end of file
@@ -0,0 +1,5 @@
+SELECT
+    ID, NAME, AMOUNT
+FROM GENERATED1
+WHERE ID >= ?
+ORDER BY ID
\ No newline at end of file
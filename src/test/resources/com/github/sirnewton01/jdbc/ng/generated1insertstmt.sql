@@ -0,0 +1,4 @@
+INSERT INTO GENERATED1
+    (ID, NAME, AMOUNT)
+VALUES
+    (?, ?, ?)
\ No newline at end of file
@@ -0,0 +1,5 @@
+SELECT
+    ID, NAME
+FROM LIST1
+WHERE ID IN (?) AND NAME <> ?
+ORDER BY ID
\ No newline at end of file
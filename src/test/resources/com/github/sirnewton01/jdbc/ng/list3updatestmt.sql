@@ -0,0 +1 @@
+UPDATE LIST1 SET NAME = ? WHERE ID IN (?)
\ No newline at end of file
@@ -0,0 +1,4 @@
+SELECT
+    ID, NAME
+FROM LOADER1
+WHERE ID IN (?)
\ No newline at end of file
@@ -0,0 +1 @@
+SELECT ID, AMOUNT FROM ORDER1
\ No newline at end of file
@@ -0,0 +1 @@
+SELECT AMOUNT, ID FROM ORDER2
\ No newline at end of file
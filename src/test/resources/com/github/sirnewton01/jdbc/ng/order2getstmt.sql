@@ -0,0 +1 @@
+SELECT AMOUNT, ID FROM ORDER1
\ No newline at end of file
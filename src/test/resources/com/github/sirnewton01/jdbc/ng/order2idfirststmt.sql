@@ -0,0 +1 @@
+SELECT ID, AMOUNT FROM ORDER2
\ No newline at end of file
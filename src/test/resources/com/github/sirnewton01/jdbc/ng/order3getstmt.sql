@@ -0,0 +1 @@
+SELECT ID, AMOUNT FROM ORDER3
\ No newline at end of file
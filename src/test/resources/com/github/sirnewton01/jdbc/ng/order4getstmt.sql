@@ -0,0 +1 @@
+SELECT AMOUNT, ID FROM ORDER3
\ No newline at end of file
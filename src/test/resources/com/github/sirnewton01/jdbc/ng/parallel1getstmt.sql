@@ -0,0 +1,4 @@
+SELECT
+    ID, NAME
+FROM PARALLEL1
+ORDER BY ID
\ No newline at end of file
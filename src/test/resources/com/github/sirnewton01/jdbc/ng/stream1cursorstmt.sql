@@ -0,0 +1,3 @@
+SELECT
+    ID, NAME
+FROM STREAM1
\ No newline at end of file
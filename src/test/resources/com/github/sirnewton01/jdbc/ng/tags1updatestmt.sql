@@ -0,0 +1,3 @@
+UPDATE TAGS1
+SET NAME = ?
+WHERE ID = ?
\ No newline at end of file
@@ -0,0 +1,4 @@
+SELECT
+    ID, AMOUNT, RATIO, FLAG
+FROM TYPES1
+ORDER BY ID
\ No newline at end of file
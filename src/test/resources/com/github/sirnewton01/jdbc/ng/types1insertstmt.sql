@@ -0,0 +1,4 @@
+INSERT INTO TYPES1
+    (ID, AMOUNT, RATIO, FLAG)
+VALUES
+    (?, ?, ?, ?)
\ No newline at end of file
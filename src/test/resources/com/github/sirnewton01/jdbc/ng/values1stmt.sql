@@ -0,0 +1 @@
+VALUES 1
\ No newline at end of file
@@ -0,0 +1 @@
+VALUES 2
\ No newline at end of file
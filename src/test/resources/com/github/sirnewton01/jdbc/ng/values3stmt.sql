@@ -0,0 +1 @@
+SELECT CAST(? AS INT) AS VAL FROM SYSIBM.SYSDUMMY1
\ No newline at end of file